@@ -82,6 +82,11 @@ trait ActorRef extends ActorRefShared with java.lang.Comparable[ActorRef] { scal
   protected[akka] var _futureTimeout: Option[ScheduledFuture[AnyRef]] = None
   protected[akka] val guard = new ReentrantGuard
 
+  /**
+   * This actor as the 'sender' of the messages sent on its behalf, allocated once instead of with every message.
+   */
+  private[akka] val asSender: Some[ActorRef] = Some(this)
+
   /**
    * User overridable callback/setting.
    * <p/>
@@ -265,7 +270,7 @@ trait ActorRef extends ActorRefShared with java.lang.Comparable[ActorRef] { scal
    * </pre>
    * <p/>
    */
-  def sendOneWay(message: AnyRef, sender: ActorRef): Unit = this.!(message)(Option(sender))
+  def sendOneWay(message: AnyRef, sender: ActorRef): Unit = this.!(message)(if (sender eq null) None else sender.asSender)
 
   /**
    * Akka Java API
@@ -296,7 +301,7 @@ trait ActorRef extends ActorRefShared with java.lang.Comparable[ActorRef] { scal
    * to send a reply message to the original sender. If not then the sender will block until the timeout expires.
    */
   def sendRequestReply(message: AnyRef, timeout: Long, sender: ActorRef): AnyRef = {
-    !!(message, timeout)(Option(sender)).getOrElse(throw new ActorTimeoutException(
+    !!(message, timeout)(if (sender eq null) None else sender.asSender).getOrElse(throw new ActorTimeoutException(
       "Message [" + message +
       "]\n\tsent to [" + actorClassName +
       "]\n\tfrom [" + (if (sender ne null) sender.actorClassName else "nowhere") +
@@ -330,7 +335,7 @@ trait ActorRef extends ActorRefShared with java.lang.Comparable[ActorRef] { scal
    * If you are sending messages using <code>sendRequestReplyFuture</code> then you <b>have to</b> use <code>getContext().reply(..)</code>
    * to send a reply message to the original sender. If not then the sender will block until the timeout expires.
    */
-  def sendRequestReplyFuture(message: AnyRef, timeout: Long, sender: ActorRef): Future[_] = !!!(message, timeout)(Option(sender))
+  def sendRequestReplyFuture(message: AnyRef, timeout: Long, sender: ActorRef): Future[_] = !!!(message, timeout)(if (sender eq null) None else sender.asSender)
 
   /**
    * Akka Java API
@@ -338,7 +343,7 @@ trait ActorRef extends ActorRefShared with java.lang.Comparable[ActorRef] { scal
    */
   def forward(message: AnyRef, sender: ActorRef): Unit =
     if (sender eq null) throw new IllegalArgumentException("The 'sender' argument to 'forward' can't be null")
-    else forward(message)(Some(sender))
+    else forward(message)(sender.asSender)
 
   /**
    * Akka Java API
@@ -1484,8 +1489,7 @@ trait ScalaActorRef extends ActorRefShared { ref: ActorRef =>
       senderFuture.get completeWithResult message
       true
     } else if (sender.isDefined) {
-      //TODO: optimize away this allocation, perhaps by having implicit self: Option[ActorRef] in signature
-      sender.get.!(message)(Some(this))
+      sender.get.!(message)(asSender)
       true
     } else false
   }
@@ -1500,10 +1504,9 @@ trait ScalaActorRef extends ActorRefShared { ref: ActorRef =>
         def !(msg: Any) = future completeWithResult msg
       }
     } else if (sender.isDefined) {
-      val someSelf = Some(this)
       new Channel[Any] {
         val client = sender.get
-        def !(msg: Any) = client.!(msg)(someSelf)
+        def !(msg: Any) = client.!(msg)(asSender)
       }
     } else throw new IllegalActorStateException("No channel available")
   }
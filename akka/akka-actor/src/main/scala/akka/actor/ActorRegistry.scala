@@ -8,7 +8,7 @@ import scala.collection.mutable.{ListBuffer, Map}
 import scala.reflect.Manifest
 
 import java.util.concurrent.{ConcurrentSkipListSet, ConcurrentHashMap}
-import java.util.{Set => JSet}
+import java.util.concurrent.atomic.AtomicInteger
 
 import annotation.tailrec
 import akka.util.ReflectiveAccess._
@@ -39,13 +39,15 @@ case class ActorUnregistered(actor: ActorRef) extends ActorRegistryEvent
 object ActorRegistry extends ListenerManagement {
   private val actorsByUUID    = new ConcurrentHashMap[Uuid, ActorRef]
   private val actorsById      = new Index[String,ActorRef]
+  private val actorsByClass   = new Index[Class[_],ActorRef]
+  private val typeHierarchies = new ConcurrentHashMap[Class[_], List[Class[_]]]
   private val remoteActorSets = Map[Address, RemoteActorSet]()
   private val guard           = new ReadWriteGuard
 
   /**
    * Returns all actors in the system.
    */
-  def actors: Array[ActorRef] = filter(_ => true)
+  def actors: Array[ActorRef] = actorsByUUID.values.toArray(new Array[ActorRef](0))
 
   /**
    * Returns the number of actors in the system.
@@ -77,7 +79,7 @@ object ActorRegistry extends ListenerManagement {
    * Finds all actors that are subtypes of the class passed in as the Manifest argument and supproting passed message.
    */
   def actorsFor[T <: Actor](message: Any)(implicit manifest: Manifest[T] ): Array[ActorRef] =
-    filter(a => manifest.erasure.isAssignableFrom(a.actor.getClass) && a.isDefinedAt(message))
+    actorsFor[T](manifest.erasure.asInstanceOf[Class[T]]).filter(_.isDefinedAt(message))
 
   /**
    * Finds all actors that satisfy a predicate.
@@ -102,13 +104,12 @@ object ActorRegistry extends ListenerManagement {
    * Finds any actor that matches T.
    */
   def actorFor[T <: Actor](implicit manifest: Manifest[T]): Option[ActorRef] =
-    find({ case a: ActorRef if manifest.erasure.isAssignableFrom(a.actor.getClass) => a })
+    actorsByClass.findValue(manifest.erasure)(_ => true)
 
   /**
    * Finds all actors of type or sub-type specified by the class passed in as the Class argument.
    */
-  def actorsFor[T <: Actor](clazz: Class[T]): Array[ActorRef] =
-    filter(a => clazz.isAssignableFrom(a.actor.getClass))
+  def actorsFor[T <: Actor](clazz: Class[T]): Array[ActorRef] = actorsByClass values clazz
 
   /**
    * Finds all actors that has a specific id.
@@ -178,11 +179,14 @@ object ActorRegistry extends ListenerManagement {
    */
   def typedActorFor[T <: AnyRef](implicit manifest: Manifest[T]): Option[AnyRef] = {
     TypedActorModule.ensureEnabled
-    def predicate(proxy: AnyRef): Boolean = {
-      val actorRef = TypedActorModule.typedActorObjectInstance.get.actorFor(proxy)
-      actorRef.isDefined && manifest.erasure.isAssignableFrom(actorRef.get.actor.getClass)
+    val actorRefs = actorsByClass values manifest.erasure
+    var i = 0
+    while (i < actorRefs.length) {
+      val proxy = typedActorFor(actorRefs(i))
+      if (proxy.isDefined) return proxy
+      i += 1
     }
-    findTypedActor({ case a: Some[AnyRef] if predicate(a.get) => a })
+    None
   }
 
   /**
@@ -190,11 +194,8 @@ object ActorRegistry extends ListenerManagement {
    */
   def typedActorsFor[T <: AnyRef](clazz: Class[T]): Array[AnyRef] = {
     TypedActorModule.ensureEnabled
-    def predicate(proxy: AnyRef): Boolean = {
-      val actorRef = TypedActorModule.typedActorObjectInstance.get.actorFor(proxy)
-      actorRef.isDefined && clazz.isAssignableFrom(actorRef.get.actor.getClass)
-    }
-    filterTypedActors(predicate)
+    val actorRefs = actorsByClass values clazz
+    actorRefs.flatMap(typedActorFor(_))
   }
 
   /**
@@ -234,6 +235,9 @@ object ActorRegistry extends ListenerManagement {
     // UUID
     actorsByUUID.put(actor.uuid, actor)
 
+    // class and all its supertypes
+    typesOf(actor) foreach { actorsByClass.put(_, actor) }
+
     // notify listeners
     notifyListeners(ActorRegistered(actor))
   }
@@ -246,10 +250,37 @@ object ActorRegistry extends ListenerManagement {
 
     actorsById.remove(actor.id,actor)
 
+    typesOf(actor) foreach { actorsByClass.remove(_, actor) }
+
     // notify listeners
     notifyListeners(ActorUnregistered(actor))
   }
 
+  /**
+   * The class of the actor instance and all its superclasses and interfaces, the keys of the actor in 'actorsByClass'.
+   */
+  private def typesOf(actor: ActorRef): List[Class[_]] = {
+    val instance = actor.actor
+    if (instance eq null) Nil
+    else {
+      val clazz = instance.getClass
+      val cached = typeHierarchies get clazz
+      if (cached ne null) cached
+      else {
+        val types = new ListBuffer[Class[_]]
+        def collect(c: Class[_]): Unit = if ((c ne null) && !types.contains(c)) {
+          types += c
+          collect(c.getSuperclass)
+          c.getInterfaces foreach { collect(_) }
+        }
+        collect(clazz)
+        val hierarchy = types.toList
+        typeHierarchies.putIfAbsent(clazz, hierarchy)
+        hierarchy
+      }
+    }
+  }
+
   /**
    * Shuts down and unregisters all actors in the system.
    */
@@ -266,6 +297,7 @@ object ActorRegistry extends ListenerManagement {
     } else foreach(_.stop)
     actorsByUUID.clear
     actorsById.clear
+    actorsByClass.clear
     log.slf4j.info("All actors have been shut down and unregistered from ActorRegistry")
   }
 
@@ -303,54 +335,38 @@ object ActorRegistry extends ListenerManagement {
 
 /**
  * An implementation of a ConcurrentMultiMap
- * Adds/remove is serialized over the specified key
- * Reads are fully concurrent <-- el-cheapo
+ * Adds/remove are lock-free: each key maps to an entry holding its set of values and a count of them, which also
+ * counts the adds underway. Once the count drops to zero it is never raised again, so the entry can be removed while
+ * a concurrent add, seeing the zero, retries with a fresh entry instead of being lost
+ * Reads are fully concurrent
  *
  * @author Viktor Klang
  */
 class Index[K <: AnyRef,V <: AnyRef : Manifest] {
   private val Naught = Array[V]() //Nil for Arrays
-  private val container = new ConcurrentHashMap[K, JSet[V]]
-  private val emptySet = new ConcurrentSkipListSet[V]
+  private val container = new ConcurrentHashMap[K, IndexEntry[V]]
 
   /**
    * Associates the value of type V with the key of type K
    * @returns true if the value didn't exist for the key previously, and false otherwise
    */
   def put(key: K, value: V): Boolean = {
-    //Tailrecursive spin-locking put
+    //Tailrecursive lock-free put
     @tailrec def spinPut(k: K, v: V): Boolean = {
-      var retry = false
-      var added = false
-      val set = container get k
-
-      if (set ne null) {
-        set.synchronized {
-          if (set.isEmpty) retry = true //IF the set is empty then it has been removed, so signal retry
-          else { //Else add the value to the set and signal that retry is not needed
-            added = set add v
-            retry = false
-          }
-        }
-      } else {
-        val newSet = new ConcurrentSkipListSet[V]
-        newSet add v
-
-        // Parry for two simultaneous putIfAbsent(id,newSet)
-        val oldSet = container.putIfAbsent(k,newSet)
-        if (oldSet ne null) {
-          oldSet.synchronized {
-            if (oldSet.isEmpty) retry = true //IF the set is empty then it has been removed, so signal retry
-            else { //Else try to add the value to the set and signal that retry is not needed
-              added = oldSet add v
-              retry = false
-            }
-          }
-        } else added = true
+      val entry = container get k
+
+      if (entry eq null) {
+        // Parry for two simultaneous putIfAbsent(id,newEntry)
+        if (container.putIfAbsent(k, new IndexEntry(v)) eq null) true
+        else spinPut(k, v)
+      } else if (!entry.reserve) { //IF the entry is empty then it is being removed, so help removing it and retry
+        container.remove(k, entry)
+        spinPut(k, v)
+      } else { //Else add the value to the entry, and give back the reservation if it was there already
+        val added = entry.values add v
+        if (!added) release(k, entry)
+        added
       }
-
-      if (retry) spinPut(k, v)
-      else added
     }
 
     spinPut(key, value)
@@ -360,8 +376,8 @@ class Index[K <: AnyRef,V <: AnyRef : Manifest] {
    * @returns a _new_ array of all existing values for the given key at the time of the call
    */
   def values(key: K): Array[V] = {
-    val set: JSet[V] = container get key
-    val result = if (set ne null) set toArray Naught else Naught
+    val entry = container get key
+    val result = if (entry ne null) entry.values toArray Naught else Naught
     result.asInstanceOf[Array[V]]
   }
 
@@ -371,8 +387,8 @@ class Index[K <: AnyRef,V <: AnyRef : Manifest] {
    */
   def findValue(key: K)(f: (V) => Boolean): Option[V] = {
     import scala.collection.JavaConversions._
-    val set = container get key
-    if (set ne null) set.iterator.find(f)
+    val entry = container get key
+    if (entry ne null) entry.values.iterator.find(f)
     else None
   }
 
@@ -382,7 +398,7 @@ class Index[K <: AnyRef,V <: AnyRef : Manifest] {
   def foreach(fun: (K,V) => Unit) {
     import scala.collection.JavaConversions._
     container.entrySet foreach {
-      (e) => e.getValue.foreach(fun(e.getKey,_))
+      (e) => e.getValue.values.foreach(fun(e.getKey,_))
     }
   }
 
@@ -391,17 +407,11 @@ class Index[K <: AnyRef,V <: AnyRef : Manifest] {
    * @returns true if the value was disassociated from the key and false if it wasn't previously associated with the key
    */
   def remove(key: K, value: V): Boolean = {
-    val set = container get key
+    val entry = container get key
 
-    if (set ne null) {
-      set.synchronized {
-        if (set.remove(value)) { //If we can remove the value
-          if (set.isEmpty)       //and the set becomes empty
-            container.remove(key,emptySet) //We try to remove the key if it's mapped to an empty set
-
-          true //Remove succeeded
-        } else false //Remove failed
-      }
+    if ((entry ne null) && entry.values.remove(value)) { //If we can remove the value
+      release(key, entry)
+      true //Remove succeeded
     } else false //Remove failed
   }
 
@@ -414,4 +424,28 @@ class Index[K <: AnyRef,V <: AnyRef : Manifest] {
    *  Removes all keys and all values
    */
   def clear = foreach { case (k, v) => remove(k, v) }
+
+  //The last one to give back its reservation removes the entry, unless someone has already helped doing so
+  private def release(key: K, entry: IndexEntry[V]) {
+    if (entry.count.decrementAndGet == 0) container.remove(key, entry)
+  }
+}
+
+/**
+ * The values of a key of an Index, created with its first value.
+ */
+private[actor] class IndexEntry[V](first: V) {
+  val values = new ConcurrentSkipListSet[V]
+  values add first
+  val count = new AtomicInteger(1)
+
+  /**
+   * Reserves a place for one more value, unless the entry has become empty.
+   */
+  @tailrec final def reserve: Boolean = {
+    val current = count.get
+    if (current == 0) false
+    else if (count.compareAndSet(current, current + 1)) true
+    else reserve
+  }
 }
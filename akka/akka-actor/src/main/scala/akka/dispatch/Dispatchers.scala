@@ -55,7 +55,10 @@ object Dispatchers extends Logging {
   val MAILBOX_PUSH_TIME_OUT           = Duration(config.getInt("akka.actor.default-dispatcher.mailbox-push-timeout-time", 10), TIME_UNIT)
   val THROUGHPUT_DEADLINE_TIME        = Duration(config.getInt("akka.actor.throughput-deadline-time",-1), TIME_UNIT)
   val THROUGHPUT_DEADLINE_TIME_MILLIS = THROUGHPUT_DEADLINE_TIME.toMillis.toInt
-  val MAILBOX_TYPE: MailboxType       = if (MAILBOX_CAPACITY < 0) UnboundedMailbox() else BoundedMailbox()
+  val MAILBOX_MPSC                    = config.getBool("akka.actor.default-dispatcher.mailbox-mpsc", false)
+  val MAILBOX_TYPE: MailboxType       = if (MAILBOX_CAPACITY >= 0) BoundedMailbox()
+                                        else if (MAILBOX_MPSC) UnboundedMpscMailbox()
+                                        else UnboundedMailbox()
 
   lazy val defaultGlobalDispatcher = {
     config.getConfigMap("akka.actor.default-dispatcher").flatMap(from).getOrElse(globalExecutorBasedEventDrivenDispatcher)
@@ -127,6 +130,16 @@ object Dispatchers extends Logging {
     ThreadPoolConfigDispatcherBuilder(config =>
       new ExecutorBasedEventDrivenDispatcher(name, throughput, throughputDeadlineMs, mailboxType, config),ThreadPoolConfig())
 
+  /**
+   * Creates a executor-based event-driven dispatcher serving multiple (millions) of actors through a thread pool,
+   * which tunes the throughput of each actor to the cost of its messages.
+   * <p/>
+   * Has a fluent builder interface for configuring its semantics.
+   */
+  def newAdaptiveExecutorBasedEventDrivenDispatcher(name: String, adaptiveThroughput: AdaptiveThroughput, mailboxType: MailboxType = MAILBOX_TYPE) =
+    ThreadPoolConfigDispatcherBuilder(config =>
+      new ExecutorBasedEventDrivenDispatcher(name, THROUGHPUT, THROUGHPUT_DEADLINE_TIME_MILLIS, mailboxType, config, Some(adaptiveThroughput)),ThreadPoolConfig())
+
   /**
    * Creates a executor-based event-driven dispatcher with work stealing (TODO: better doc) serving multiple (millions) of actors through a thread pool.
    * <p/>
@@ -164,6 +177,12 @@ object Dispatchers extends Logging {
    *   allow-core-timeout = on     # Allow core threads to time out
    *   rejection-policy = "caller-runs" # abort, caller-runs, discard-oldest, discard
    *   throughput = 5              # Throughput for ExecutorBasedEventDrivenDispatcher
+   *   mailbox-capacity = -1       # If negative then an unbounded mailbox is used (default)
+   *   mailbox-mpsc = off          # Use an unbounded mailbox that doesn't allocate queue nodes
+   *   adaptive-throughput = off   # Tune the throughput of each actor for ExecutorBasedEventDrivenDispatcher,
+   *   target-run-time = 1000      # so that a run over its mailbox takes about this many microseconds,
+   *   min-throughput = 1          # within these bounds
+   *   max-throughput = 1000
    *   aggregate = off             # Aggregate on/off for HawtDispatchers
    * }
    * ex: from(config.getConfigMap(identifier).get)
@@ -197,10 +216,20 @@ object Dispatchers extends Logging {
     lazy val mailboxType: MailboxType = {
       val capacity = cfg.getInt("mailbox-capacity", MAILBOX_CAPACITY)
       // FIXME how do we read in isBlocking for mailbox? Now set to 'false'.
-      if (capacity < 0) UnboundedMailbox()
+      if (capacity < 0) { if (cfg.getBool("mailbox-mpsc", MAILBOX_MPSC)) UnboundedMpscMailbox() else UnboundedMailbox() }
       else BoundedMailbox(false, capacity, Duration(cfg.getInt("mailbox-push-timeout", MAILBOX_PUSH_TIME_OUT.toMillis.toInt), TIME_UNIT))
     }
 
+    lazy val adaptiveThroughput: Option[AdaptiveThroughput] =
+      if (!cfg.getBool("adaptive-throughput", false)) None
+      else {
+        val defaults = AdaptiveThroughput()
+        Some(AdaptiveThroughput(
+          cfg.getInt("target-run-time", defaults.targetRunTimeMicros),
+          cfg.getInt("min-throughput", defaults.minThroughput),
+          cfg.getInt("max-throughput", defaults.maxThroughput)))
+      }
+
     cfg.getString("type") map {
       case "ExecutorBasedEventDriven" =>
         configureThreadPool(threadPoolConfig => new ExecutorBasedEventDrivenDispatcher(
@@ -208,7 +237,8 @@ object Dispatchers extends Logging {
           cfg.getInt("throughput", THROUGHPUT),
           cfg.getInt("throughput-deadline", THROUGHPUT_DEADLINE_TIME_MILLIS),
           mailboxType,
-          threadPoolConfig)).build
+          threadPoolConfig,
+          adaptiveThroughput)).build
 
       case "ExecutorBasedEventDrivenWorkStealing" =>
         configureThreadPool(poolCfg => new ExecutorBasedEventDrivenWorkStealingDispatcher(name, mailboxType,poolCfg)).build
@@ -7,9 +7,9 @@ package akka.dispatch
 import akka.actor.{ActorRef, IllegalActorStateException}
 import akka.util.{ReflectiveAccess, Switch}
 
-import java.util.Queue
-import java.util.concurrent.atomic.AtomicReference
-import java.util.concurrent.{ExecutorService, RejectedExecutionException, ConcurrentLinkedQueue, LinkedBlockingQueue}
+import java.util.{Queue, ArrayList => JArrayList}
+import java.util.concurrent.atomic.{AtomicReference, AtomicLong}
+import java.util.concurrent.{ExecutorService, RejectedExecutionException, ConcurrentLinkedQueue, LinkedBlockingQueue, BlockingQueue}
 
 /**
  * Default settings are:
@@ -63,13 +63,17 @@ import java.util.concurrent.{ExecutorService, RejectedExecutionException, Concur
  *                   mailbox, without checking the mailboxes of other actors. Zero or negative means the dispatcher
  *                   always continues until the mailbox is empty.
  *                   Larger values (or zero or negative) increase througput, smaller values increase fairness
+ * @param adaptiveThroughput if defined, the throughput is only where each actor starts: from then on it is tuned per
+ *                   actor, so that a run over its mailbox takes about the target run time. Messages are then taken
+ *                   from the mailbox in batches, and the dispatcher keeps statistics of its runs.
  */
 class ExecutorBasedEventDrivenDispatcher(
   _name: String,
   val throughput: Int = Dispatchers.THROUGHPUT,
   val throughputDeadlineTime: Int = Dispatchers.THROUGHPUT_DEADLINE_TIME_MILLIS,
   _mailboxType: MailboxType = Dispatchers.MAILBOX_TYPE,
-  val config: ThreadPoolConfig = ThreadPoolConfig())
+  val config: ThreadPoolConfig = ThreadPoolConfig(),
+  val adaptiveThroughput: Option[AdaptiveThroughput] = None)
   extends MessageDispatcher {
 
   def this(_name: String, throughput: Int, throughputDeadlineTime: Int, mailboxType: MailboxType) =
@@ -93,6 +97,11 @@ class ExecutorBasedEventDrivenDispatcher(
   private[akka] val threadFactory = new MonitorableThreadFactory(name)
   private[akka] val executorService = new AtomicReference[ExecutorService](config.createLazyExecutorService(threadFactory))
 
+  /**
+   * Statistics of the runs over the mailboxes, only kept if 'adaptiveThroughput' is defined.
+   */
+  val stats = new DispatcherStats
+
   private[akka] def dispatch(invocation: MessageInvocation) = {
     val mbox = getMailbox(invocation.receiver)
     mbox enqueue invocation
@@ -104,7 +113,10 @@ class ExecutorBasedEventDrivenDispatcher(
    */
   private def getMailbox(receiver: ActorRef) = receiver.mailbox.asInstanceOf[MessageQueue with ExecutableMailbox]
 
-  override def mailboxSize(actorRef: ActorRef) = getMailbox(actorRef).size
+  override def mailboxSize(actorRef: ActorRef) = {
+    val mbox = getMailbox(actorRef)
+    mbox.size + mbox.pendingInBatch
+  }
 
   def createTransientMailbox(actorRef: ActorRef, mailboxType: TransientMailbox): AnyRef = mailboxType match {
     case UnboundedMailbox(blocking) => new DefaultUnboundedMessageQueue(blocking) with ExecutableMailbox {
@@ -115,6 +127,10 @@ class ExecutorBasedEventDrivenDispatcher(
       new DefaultBoundedMessageQueue(capacity, pushTimeOut, blocking) with ExecutableMailbox {
         def dispatcher = ExecutorBasedEventDrivenDispatcher.this
       }
+
+    case UnboundedMpscMailbox() => new DefaultMpscMessageQueue(actorRef) with ExecutableMailbox {
+      def dispatcher = ExecutorBasedEventDrivenDispatcher.this
+    }
   }
 
   /**
@@ -137,6 +153,7 @@ class ExecutorBasedEventDrivenDispatcher(
   private[akka] def registerForExecution(mbox: MessageQueue with ExecutableMailbox): Unit = if (active.isOn) {
     if (mbox.suspended.isOff && mbox.dispatcherLock.tryLock()) {
       try {
+        if (adaptiveThroughput.isDefined) mbox.scheduledAt = System.nanoTime
         executorService.get() execute mbox
       } catch {
         case e: RejectedExecutionException =>
@@ -161,6 +178,58 @@ class ExecutorBasedEventDrivenDispatcher(
   }
 }
 
+/**
+ * Settings of the adaptive throughput of an ExecutorBasedEventDrivenDispatcher: the throughput of each actor moves
+ * towards the number of its messages that can be processed in 'targetRunTimeMicros', within the given bounds.
+ */
+case class AdaptiveThroughput(
+  targetRunTimeMicros: Int = 1000,
+  minThroughput: Int       = 1,
+  maxThroughput: Int       = 1000) {
+  if (targetRunTimeMicros <= 0) throw new IllegalArgumentException("The target run time must be positive")
+  if (minThroughput <= 0 || maxThroughput < minThroughput) throw new IllegalArgumentException(
+    "The throughput bounds must satisfy 0 < minThroughput <= maxThroughput")
+
+  val targetRunTimeNanos = targetRunTimeMicros * 1000L
+
+  def bounded(throughput: Long): Int = math.min(maxThroughput, math.max(minThroughput, throughput)).toInt
+}
+
+/**
+ * Statistics of the runs of an ExecutorBasedEventDrivenDispatcher over the mailboxes of its actors.
+ */
+class DispatcherStats {
+  /** Runs over a mailbox */
+  val runs                 = new AtomicLong(0)
+  /** Messages processed */
+  val messages             = new AtomicLong(0)
+  /** Runs that ended with messages left in the mailbox, which is then scheduled again */
+  val reschedules          = new AtomicLong(0)
+  /** Nanoseconds between a mailbox being scheduled and its run starting, summed over all runs */
+  val scheduleLatencyNanos = new AtomicLong(0)
+
+  def messagesPerRun: Double = {
+    val numRuns = runs.get
+    if (numRuns == 0) 0.0 else messages.get.toDouble / numRuns
+  }
+
+  def averageScheduleLatencyNanos: Long = {
+    val numRuns = runs.get
+    if (numRuns == 0) 0 else scheduleLatencyNanos.get / numRuns
+  }
+
+  private[akka] def recordRun(processed: Int, rescheduled: Boolean, latencyNanos: Long) = {
+    runs.incrementAndGet
+    messages.addAndGet(processed)
+    if (rescheduled) reschedules.incrementAndGet
+    if (latencyNanos > 0) scheduleLatencyNanos.addAndGet(latencyNanos)
+  }
+
+  override def toString =
+    "DispatcherStats[runs=" + runs.get + ", messages=" + messages.get + ", reschedules=" + reschedules.get +
+    ", averageScheduleLatencyNanos=" + averageScheduleLatencyNanos + "]"
+}
+
 /**
  * This is the behavior of an ExecutorBasedEventDrivenDispatchers mailbox.
  */
@@ -168,13 +237,27 @@ trait ExecutableMailbox extends Runnable { self: MessageQueue =>
 
   def dispatcher: ExecutorBasedEventDrivenDispatcher
 
+  // state of the adaptive throughput, only used by the thread holding the dispatcherLock
+  private[akka] var scheduledAt = 0L
+  private var adaptedThroughput = 0
+  private var batch: JArrayList[MessageInvocation] = null
+  private var batchIndex = 0
+
+  /**
+   * The number of messages taken from the queue in a batch that haven't been processed yet.
+   */
+  def pendingInBatch: Int = {
+    val current = batch // may be released by the processing thread meanwhile
+    if (current eq null) 0 else current.size - batchIndex
+  }
+
   final def run = {
     val reschedule = try {
       try { processMailbox() } catch { case ie: InterruptedException => true }
     } finally {
       dispatcherLock.unlock()
     }
-    if (reschedule || !self.isEmpty)
+    if (reschedule || !self.isEmpty || pendingInBatch > 0)
       dispatcher.registerForExecution(this)
   }
 
@@ -186,6 +269,8 @@ trait ExecutableMailbox extends Runnable { self: MessageQueue =>
   final def processMailbox(): Boolean = {
     if (self.suspended.isOn)
       true
+    else if (dispatcher.adaptiveThroughput.isDefined)
+      processBatches(dispatcher.adaptiveThroughput.get)
     else {
       var nextMessage = self.dequeue
       if (nextMessage ne null) {
@@ -212,5 +297,65 @@ trait ExecutableMailbox extends Runnable { self: MessageQueue =>
       false
     }
   }
-}
 
+  /**
+   * Processes up to the adapted throughput of messages, taking them from the queue in batches, then adapts the
+   * throughput to the average time a message took.
+   */
+  private def processBatches(adaptive: AdaptiveThroughput): Boolean = {
+    val started = System.nanoTime
+    if (adaptedThroughput == 0) adaptedThroughput = adaptive.bounded(dispatcher.throughput)
+    val isDeadlineEnabled = dispatcher.throughputDeadlineTime > 0
+    val deadline = started + dispatcher.throughputDeadlineTime * 1000000L
+
+    var processed = 0
+    var reschedule = false
+    var done = false
+    while (!done) {
+      if (pendingInBatch == 0) takeBatch(adaptedThroughput - processed)
+      if (pendingInBatch == 0) done = true
+      else {
+        val message = batch.get(batchIndex)
+        batch.set(batchIndex, null)
+        batchIndex += 1
+        message.invoke
+        processed += 1
+
+        if (self.suspended.isOn) {
+          reschedule = true
+          done = true
+        } else if (processed >= adaptedThroughput || (isDeadlineEnabled && System.nanoTime - deadline >= 0)) {
+          reschedule = pendingInBatch > 0 || !self.isEmpty
+          done = true
+        }
+      }
+    }
+
+    // an idle mailbox doesn't hold on to a batch sized for its busiest run
+    if (pendingInBatch == 0) batch = null
+
+    if (processed > 0) {
+      val costNanos = math.max(1L, (System.nanoTime - started) / processed)
+      adaptedThroughput = (adaptedThroughput + adaptive.bounded(adaptive.targetRunTimeNanos / costNanos)) / 2
+    }
+    dispatcher.stats.recordRun(processed, reschedule, if (scheduledAt == 0) 0 else started - scheduledAt)
+    reschedule
+  }
+
+  /**
+   * Takes up to 'max' messages from the queue into the batch, under a single lock of the queue if it is a blocking one.
+   */
+  private def takeBatch(max: Int) = {
+    if (batch eq null) batch = new JArrayList[MessageInvocation](max)
+    batch.clear
+    batchIndex = 0
+    if (self.isInstanceOf[BlockingQueue[_]]) self.asInstanceOf[BlockingQueue[MessageInvocation]].drainTo(batch, max)
+    else {
+      var next = if (max > 0) self.dequeue else null
+      while (next ne null) {
+        batch.add(next)
+        next = if (batch.size < max) self.dequeue else null
+      }
+    }
+  }
+}
@@ -8,8 +8,8 @@ package akka.dispatch
 import akka.actor.{Actor, ActorRef, IllegalActorStateException}
 import akka.util.Switch
 
-import java.util.concurrent. {ExecutorService, CopyOnWriteArrayList}
-import java.util.concurrent.atomic.AtomicReference
+import java.util.concurrent. {ExecutorService, ConcurrentLinkedQueue}
+import java.util.concurrent.atomic.{AtomicReference, AtomicBoolean}
 
 import jsr166x.{Deque, ConcurrentLinkedDeque, LinkedBlockingDeque}
 
@@ -23,6 +23,9 @@ import jsr166x.{Deque, ConcurrentLinkedDeque, LinkedBlockingDeque}
  * <p/>
  * This dispatcher attempts to redistribute work between actors each time a message is dispatched on a busy actor. Work
  * will not be redistributed when actors are busy, but no new messages are dispatched.
+ * <p/>
+ * The actors that can take over work are those whose mailbox drained: they put themselves on a queue of idle actors,
+ * from which the busy actor takes its thief, so finding one doesn't depend on the number of actors in the pool.
  * TODO: it would be nice to be able to redistribute work even when no new messages are being dispatched, without impacting dispatching performance ?!
  * <p/>
  * The preferred way of creating dispatchers is to use
@@ -49,17 +52,38 @@ class ExecutorBasedEventDrivenWorkStealingDispatcher(
 
   /** Type of the actors registered in this dispatcher. */
   @volatile private var actorType: Option[Class[_]] = None
-  private val pooledActors = new CopyOnWriteArrayList[ActorRef]
+  /** Mailboxes of pooled actors that drained since they last donated to or stole from another actor */
+  private val idleMailboxes = new ConcurrentLinkedQueue[PooledMailbox]
   private[akka] val threadFactory = new MonitorableThreadFactory(name)
   private[akka] val executorService = new AtomicReference[ExecutorService](config.createLazyExecutorService(threadFactory))
 
-  /** The index in the pooled actors list which was last used to steal work */
-  @volatile private var lastThiefIndex = 0
+  /** How many idle actors that got busy or left the pool in the meantime are skipped before giving up on stealing */
+  private val MAX_THIEF_ATTEMPTS = 4
+
+  /**
+   * Mailbox of an actor in the pool. Knows whether its actor is on the idle queue, so it is queued at most once.
+   */
+  private trait PooledMailbox extends Deque[MessageInvocation] with MessageQueue with Runnable {
+    def owner: ActorRef
+    val queuedAsIdle = new AtomicBoolean(false)
+    @volatile var pooled = false
+
+    def enqueue(handle: MessageInvocation): Unit = this.add(handle)
+
+    def dequeue: MessageInvocation = this.poll()
+
+    def run = if (!tryProcessMailbox(this)) {
+      // we are not able to process our mailbox (another thread is busy with it), so lets donate some of our mailbox
+      // to another actor and then process his mailbox in stead.
+      val thief = findThief(owner)
+      if (thief ne null) tryDonateAndProcessMessages(owner, thief)
+    }
+  }
 
   /**
    * @return the mailbox associated with the actor
    */
-  private def getMailbox(receiver: ActorRef) = receiver.mailbox.asInstanceOf[Deque[MessageInvocation] with MessageQueue with Runnable]
+  private def getMailbox(receiver: ActorRef) = receiver.mailbox.asInstanceOf[PooledMailbox]
 
   override def mailboxSize(actorRef: ActorRef) = getMailbox(actorRef).size
 
@@ -75,7 +99,7 @@ class ExecutorBasedEventDrivenWorkStealingDispatcher(
    *
    * @return true if the mailbox was processed, false otherwise
    */
-  private def tryProcessMailbox(mailbox: MessageQueue): Boolean = {
+  private def tryProcessMailbox(mailbox: PooledMailbox): Boolean = {
     var mailboxWasProcessed = false
 
     // this do-wile loop is required to prevent missing new messages between the end of processing
@@ -90,6 +114,7 @@ class ExecutorBasedEventDrivenWorkStealingDispatcher(
       }
     } while ((mailboxWasProcessed && !mailbox.isEmpty))
 
+    if (mailboxWasProcessed) markIdle(mailbox)
     mailboxWasProcessed
   }
 
@@ -113,47 +138,42 @@ class ExecutorBasedEventDrivenWorkStealingDispatcher(
     case ie: InterruptedException => false
   }
 
-  private def findThief(receiver: ActorRef): Option[ActorRef] = {
-    // copy to prevent concurrent modifications having any impact
-    val actors = pooledActors.toArray(new Array[ActorRef](pooledActors.size))
-    val i = if ( lastThiefIndex > actors.size ) 0 else lastThiefIndex
-
-    // we risk to pick a thief which is unregistered from the dispatcher in the meantime, but that typically means
-    // the dispatcher is being shut down...
-    val (thief: Option[ActorRef], index: Int) = doFindThief(receiver, actors, i)
-    lastThiefIndex = (index + 1) % actors.size
-    thief
-  }
+  /**
+   * Puts the actor on the idle queue, unless it is on it already or has messages again.
+   */
+  private def markIdle(mailbox: PooledMailbox) =
+    if (mailbox.pooled && mailbox.isEmpty && mailbox.queuedAsIdle.compareAndSet(false, true)) idleMailboxes add mailbox
 
   /**
-   * Find a thief to process the receivers messages from the given list of actors.
+   * Takes a thief to process the receivers messages off the idle queue. Actors that got busy or left the pool since
+   * they were queued are dropped; they queue themselves again the next time their mailbox drains.
    *
-   * @param receiver original receiver of the message
-   * @param actors list of actors to find a thief in
-   * @param startIndex first index to start looking in the list (i.e. for round robin)
-   * @return the thief (or None) and the new index to start searching next time
+   * @return the mailbox of the thief, or null if no idle actor was found
    */
-  private def doFindThief(receiver: ActorRef, actors: Array[ActorRef], startIndex: Int): (Option[ActorRef], Int) = {
-    for (i <- 0 to actors.length) {
-      val index = (i + startIndex) % actors.length
-      val actor = actors(index)
-      if (actor != receiver && getMailbox(actor).isEmpty) return (Some(actor), index)
+  private def findThief(receiver: ActorRef): PooledMailbox = {
+    var attempts = 0
+    while (attempts < MAX_THIEF_ATTEMPTS) {
+      val mailbox = idleMailboxes.poll
+      if (mailbox eq null) return null
+      mailbox.queuedAsIdle.set(false)
+      if (mailbox.pooled && (mailbox.owner ne receiver) && mailbox.isEmpty) return mailbox
+      attempts += 1
     }
-    (None, startIndex) // nothing found, reuse same start index next time
+    null
   }
 
   /**
    * Try donating messages to the thief and processing the thiefs mailbox. Doesn't do anything if we can not acquire
    * the thiefs dispatching lock, because in that case another thread is already processing the thiefs mailbox.
    */
-  private def tryDonateAndProcessMessages(receiver: ActorRef, thief: ActorRef) = {
-    val mailbox = getMailbox(thief)
+  private def tryDonateAndProcessMessages(receiver: ActorRef, mailbox: PooledMailbox) = {
     if (mailbox.dispatcherLock.tryLock) {
       try {
-        while(donateMessage(receiver, thief)) processMailbox(mailbox)
+        while(donateMessage(receiver, mailbox.owner)) processMailbox(mailbox)
       } finally {
         mailbox.dispatcherLock.unlock
       }
+      markIdle(mailbox)
     }
   }
 
@@ -196,28 +216,16 @@ class ExecutorBasedEventDrivenWorkStealingDispatcher(
 
   private[akka] def createTransientMailbox(actorRef: ActorRef, mailboxType: TransientMailbox): AnyRef = mailboxType match {
     case UnboundedMailbox(blocking) => // FIXME make use of 'blocking' in work stealer ConcurrentLinkedDeque
-      new ConcurrentLinkedDeque[MessageInvocation] with MessageQueue with Runnable {
-        def enqueue(handle: MessageInvocation): Unit = this.add(handle)
-
-        def dequeue: MessageInvocation = this.poll()
-
-        def run = if (!tryProcessMailbox(this)) {
-          // we are not able to process our mailbox (another thread is busy with it), so lets donate some of our mailbox
-          // to another actor and then process his mailbox in stead.
-          findThief(actorRef).foreach( tryDonateAndProcessMessages(actorRef,_) )
-        }
+      new ConcurrentLinkedDeque[MessageInvocation] with PooledMailbox {
+        val owner = actorRef
       }
     case BoundedMailbox(blocking, capacity, pushTimeOut) =>
-      new LinkedBlockingDeque[MessageInvocation](capacity) with MessageQueue with Runnable {
-        def enqueue(handle: MessageInvocation): Unit = this.add(handle)
-
-        def dequeue: MessageInvocation = this.poll()
-
-        def run = if (!tryProcessMailbox(this)) {
-          // we are not able to process our mailbox (another thread is busy with it), so lets donate some of our mailbox
-          // to another actor and then process his mailbox in stead.
-          findThief(actorRef).foreach( tryDonateAndProcessMessages(actorRef, _) )
-        }
+      new LinkedBlockingDeque[MessageInvocation](capacity) with PooledMailbox {
+        val owner = actorRef
+      }
+    case UnboundedMpscMailbox() => // thieves take from the tail, which needs a deque
+      new ConcurrentLinkedDeque[MessageInvocation] with PooledMailbox {
+        val owner = actorRef
       }
   }
 
@@ -229,15 +237,23 @@ class ExecutorBasedEventDrivenWorkStealingDispatcher(
 
   private[akka] override def register(actorRef: ActorRef) = {
     verifyActorsAreOfSameType(actorRef)
-    pooledActors add actorRef
     super.register(actorRef)
+    val mailbox = getMailbox(actorRef)
+    mailbox.pooled = true
+    markIdle(mailbox)
   }
 
   private[akka] override def unregister(actorRef: ActorRef) = {
-    pooledActors remove actorRef
+    val mailbox = getMailbox(actorRef)
+    if (mailbox ne null) {
+      mailbox.pooled = false
+      if (mailbox.queuedAsIdle.compareAndSet(true, false)) idleMailboxes remove mailbox
+    }
     super.unregister(actorRef)
   }
 
+  private[akka] def idleMailboxCount: Int = idleMailboxes.size
+
   private def verifyActorsAreOfSameType(actorOfId: ActorRef) = {
     actorType match {
       case None => actorType = Some(actorOfId.actor.getClass)
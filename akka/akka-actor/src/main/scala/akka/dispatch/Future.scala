@@ -8,8 +8,9 @@ import akka.AkkaException
 import akka.actor.Actor.spawn
 import akka.routing.Dispatcher
 
-import java.util.concurrent.locks.ReentrantLock
+import java.util.concurrent.locks.LockSupport
 import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicReference
 import akka.japi.Procedure
 
 class FutureTimeoutException(message: String) extends AkkaException(message)
@@ -100,18 +101,35 @@ sealed trait Future[T] {
   /* Java API */
   def onComplete(proc: Procedure[Future[T]]): Future[T] = onComplete(f => proc(f))
 
+  /**
+   * Returns a future of 'f' applied to the result of this future, without waiting for it: 'f' runs on the
+   * thread that completes this future. An exception, of this future or thrown by 'f', fails the returned future.
+   */
   def map[O](f: (T) => O): Future[O] = {
-    val wrapped = this
-    new Future[O] {
-      def await = { wrapped.await; this }
-      def awaitBlocking = { wrapped.awaitBlocking; this }
-      def isCompleted = wrapped.isCompleted
-      def isExpired = wrapped.isExpired
-      def timeoutInNanos = wrapped.timeoutInNanos
-      def result: Option[O] = { wrapped.result map f }
-      def exception: Option[Throwable] = wrapped.exception
-      def onComplete(func: Future[O] => Unit): Future[O] = { wrapped.onComplete(_ => func(this)); this }
+    val future = new DefaultCompletableFuture[O](TimeUnit.NANOSECONDS.toMillis(timeoutInNanos))
+    onComplete { (completed: Future[T]) =>
+      val r = completed.result
+      if (r.isDefined) {
+        try { future completeWithResult f(r.get) }
+        catch { case e => future completeWithException e }
+      } else future completeWithException completed.exception.get
+    }
+    future
+  }
+
+  /**
+   * Returns a future of the future that 'f' returns for the result of this future, without waiting for either.
+   */
+  def flatMap[O](f: (T) => Future[O]): Future[O] = {
+    val future = new DefaultCompletableFuture[O](TimeUnit.NANOSECONDS.toMillis(timeoutInNanos))
+    onComplete { (completed: Future[T]) =>
+      val r = completed.result
+      if (r.isDefined) {
+        try { f(r.get) onComplete { (other: Future[O]) => future completeWith other } }
+        catch { case e => future completeWithException e }
+      } else future completeWithException completed.exception.get
     }
+    future
   }
 }
 
@@ -127,138 +145,120 @@ trait CompletableFuture[T] extends Future[T] {
   }
 }
 
-// Based on code from the actorom actor framework by Sergio Bossa [http://code.google.com/p/actorom/].
+object DefaultCompletableFuture {
+  private[dispatch] sealed trait State[T]
+  private[dispatch] case class Pending[T](listeners: List[Future[T] => Unit], waiters: List[Thread]) extends State[T]
+  private[dispatch] case class Completed[T](result: Option[T], exception: Option[Throwable]) extends State[T]
+}
+
+/**
+ * Future whose state is a single atomic reference: either pending, with the listeners and waiting threads
+ * registered so far, or completed. Completing and registering are compare-and-set loops; threads waiting
+ * for the result park until the completing thread unparks them.
+ */
 class DefaultCompletableFuture[T](timeout: Long) extends CompletableFuture[T] {
   import TimeUnit.{MILLISECONDS => TIME_UNIT}
+  import DefaultCompletableFuture._
 
   def this() = this(0)
 
   val timeoutInNanos = TIME_UNIT.toNanos(timeout)
-  private val _startTimeInNanos = currentTimeInNanos
-  private val _lock = new ReentrantLock
-  private val _signal = _lock.newCondition
-  private var _completed: Boolean = _
-  private var _result: Option[T] = None
-  private var _exception: Option[Throwable] = None
-  private var _listeners: List[Future[T] => Unit] = Nil
-
-  def await = try {
-    _lock.lock
-    var wait = timeoutInNanos - (currentTimeInNanos - _startTimeInNanos)
-    while (!_completed && wait > 0) {
-      var start = currentTimeInNanos
-      try {
-        wait = _signal.awaitNanos(wait)
-        if (wait <= 0) throw new FutureTimeoutException("Futures timed out after [" + timeout + "] milliseconds")
-      } catch {
-        case e: InterruptedException =>
-          wait = wait - (currentTimeInNanos - start)
-      }
-    }
+  private val _startTimeInNanos = System.nanoTime
+  private val _state = new AtomicReference[State[T]](Pending[T](Nil, Nil))
+
+  def await = {
+    val wait = timeoutInNanos - (System.nanoTime - _startTimeInNanos)
+    if (wait > 0 && !parkUntilCompleted(true, wait))
+      throw new FutureTimeoutException("Futures timed out after [" + timeout + "] milliseconds")
     this
-  } finally {
-    _lock.unlock
   }
 
-  def awaitBlocking = try {
-    _lock.lock
-    while (!_completed) {
-      _signal.await
-    }
+  def awaitBlocking = {
+    parkUntilCompleted(false, 0)
     this
-  } finally {
-    _lock.unlock
   }
 
-  def isCompleted: Boolean = try {
-    _lock.lock
-    _completed
-  } finally {
-    _lock.unlock
-  }
+  def isCompleted: Boolean = _state.get.isInstanceOf[Completed[_]]
 
-  def isExpired: Boolean = try {
-    _lock.lock
-    timeoutInNanos - (currentTimeInNanos - _startTimeInNanos) <= 0
-  } finally {
-    _lock.unlock
-  }
+  def isExpired: Boolean = timeoutInNanos - (System.nanoTime - _startTimeInNanos) <= 0
 
-  def result: Option[T] = try {
-    _lock.lock
-    _result
-  } finally {
-    _lock.unlock
+  def result: Option[T] = _state.get match {
+    case Completed(result, _) => result
+    case _                    => None
   }
 
-  def exception: Option[Throwable] = try {
-    _lock.lock
-    _exception
-  } finally {
-    _lock.unlock
+  def exception: Option[Throwable] = _state.get match {
+    case Completed(_, exception) => exception
+    case _                       => None
   }
 
   def completeWithResult(result: T) {
-    val notify = try {
-      _lock.lock
-      if (!_completed) {
-        _completed = true
-        _result = Some(result)
-        true
-      } else false
-    } finally {
-      _signal.signalAll
-      _lock.unlock
-    }
-
-    if (notify)
-      notifyListeners
+    complete(Completed(Some(result), None))
   }
 
   def completeWithException(exception: Throwable) {
-    val notify = try {
-      _lock.lock
-      if (!_completed) {
-        _completed = true
-        _exception = Some(exception)
-        true
-      } else false
-    } finally {
-      _signal.signalAll
-      _lock.unlock
-    }
-
-    if (notify)
-      notifyListeners
+    complete(Completed(None, Some(exception)))
   }
 
   def onComplete(func: Future[T] => Unit): CompletableFuture[T] = {
-    val notifyNow = try {
-      _lock.lock
-      if (!_completed) {
-        _listeners ::= func
-        false
-      }
-      else
-        true
-    } finally {
-      _lock.unlock
-    }
+    if (!addListener(func)) notifyListener(func)
+    this
+  }
 
-    if (notifyNow)
-      notifyListener(func)
+  private def complete(completed: Completed[T]): Unit = _state.get match {
+    case pending @ Pending(listeners, waiters) =>
+      if (_state.compareAndSet(pending, completed)) {
+        waiters.foreach(LockSupport.unpark(_))
+        listeners.foreach(notifyListener(_))
+      } else complete(completed)
+    case _ => ()
+  }
 
-    this
+  private def addListener(func: Future[T] => Unit): Boolean = _state.get match {
+    case pending @ Pending(listeners, waiters) =>
+      _state.compareAndSet(pending, Pending(func :: listeners, waiters)) || addListener(func)
+    case _ => false
+  }
+
+  private def addWaiter(thread: Thread): Boolean = _state.get match {
+    case pending @ Pending(listeners, waiters) =>
+      _state.compareAndSet(pending, Pending(listeners, thread :: waiters)) || addWaiter(thread)
+    case _ => false
   }
 
-  private def notifyListeners() {
-    for(l <- _listeners)
-      notifyListener(l)
+  private def removeWaiter(thread: Thread): Unit = _state.get match {
+    case pending @ Pending(listeners, waiters) =>
+      if (!_state.compareAndSet(pending, Pending(listeners, waiters.filter(_ ne thread)))) removeWaiter(thread)
+    case _ => ()
+  }
+
+  /**
+   * Parks the calling thread until the future is completed, or, if 'timed', until 'nanos' have passed.
+   * Returns whether the future has been completed. As before, an interrupt doesn't end a timed wait, while
+   * an untimed one throws an InterruptedException.
+   */
+  private def parkUntilCompleted(timed: Boolean, nanos: Long): Boolean = {
+    val thread = Thread.currentThread
+    if (!addWaiter(thread)) true
+    else {
+      val deadline = System.nanoTime + nanos
+      var left = nanos
+      while (!isCompleted && (!timed || left > 0)) {
+        if (timed) LockSupport.parkNanos(this, left)
+        else LockSupport.park(this)
+        if (Thread.interrupted && !timed) {
+          removeWaiter(thread)
+          throw new InterruptedException
+        }
+        left = deadline - System.nanoTime
+      }
+      val completed = isCompleted
+      if (!completed) removeWaiter(thread)
+      completed
+    }
   }
 
   private def notifyListener(func: Future[T] => Unit) {
     func(this)
   }
-
-  private def currentTimeInNanos: Long = TIME_UNIT.toNanos(System.currentTimeMillis)
 }
@@ -9,6 +9,7 @@ import akka.AkkaException
 
 import java.util.{Queue, List}
 import java.util.concurrent._
+import java.util.concurrent.atomic.{AtomicInteger, AtomicReference}
 import concurrent.forkjoin.LinkedTransferQueue
 import akka.util._
 
@@ -41,6 +42,12 @@ case class BoundedMailbox(
   if (pushTimeOut eq null) throw new IllegalArgumentException("The push time-out for BoundedMailbox can not be null")
 }
 
+/**
+ * An unbounded mailbox which doesn't allocate anything when a message is enqueued, see DefaultMpscMessageQueue.
+ * Dispatchers that can't make use of it give the actor an UnboundedMailbox instead.
+ */
+case class UnboundedMpscMailbox() extends TransientMailbox(false)
+
 case class DurableMailbox(mailboxImplClassname: String) extends MailboxType
 
 class DefaultUnboundedMessageQueue(blockDequeue: Boolean)
@@ -71,6 +78,59 @@ class DefaultBoundedMessageQueue(capacity: Int, pushTimeOut: Duration, blockDequ
     else this.poll()
 }
 
+/**
+ * An intrusive multiple producer single consumer queue, after Dmitry Vyukov's: the MessageInvocations are linked to
+ * each other, so enqueueing allocates no queue node. A single stub node, reused whenever the queue runs empty, keeps
+ * the queue from ever being without nodes.
+ * <p/>
+ * Any number of threads can enqueue concurrently, but only one thread at a time may dequeue, which the dispatcherLock
+ * of the mailbox takes care of. The dequeue returns null for a message whose sender hasn't finished linking it yet,
+ * while size and isEmpty already count it, so the dispatcher schedules the mailbox again.
+ */
+class DefaultMpscMessageQueue(owner: ActorRef) extends MessageQueue {
+  private val stub = new MessageInvocation(owner, null, None, None)
+  // the last enqueued node, swapped by the producers
+  private val head = new AtomicReference[MessageInvocation](stub)
+  // the next node to dequeue, only used by the consumer
+  private var tail = stub
+  private val count = new AtomicInteger(0)
+
+  final def enqueue(handle: MessageInvocation) {
+    count.incrementAndGet
+    push(handle)
+  }
+
+  final def dequeue(): MessageInvocation = {
+    var first = tail
+    var next = first.next
+    if (first eq stub) {
+      if (next eq null) return null
+      tail = next
+      first = next
+      next = next.next
+    }
+    if (next eq null) {
+      if (first ne head.get) return null // a producer hasn't linked its node to 'first' yet
+      push(stub)
+      next = first.next
+      if (next eq null) return null
+    }
+    tail = next
+    first.next = null
+    count.decrementAndGet
+    first
+  }
+
+  final def size: Int = count.get
+
+  final def isEmpty: Boolean = count.get == 0
+
+  private def push(node: MessageInvocation) {
+    node.next = null
+    head.getAndSet(node).next = node
+  }
+}
+
 /**
  *  @author <a href="http://jonasboner.com">Jonas Bon&#233;r</a>
  */
@@ -19,6 +19,9 @@ final class MessageInvocation(val receiver: ActorRef,
                               val senderFuture: Option[CompletableFuture[Any]]) {
   if (receiver eq null) throw new IllegalArgumentException("Receiver can't be null")
 
+  // link to the next message in a DefaultMpscMessageQueue
+  @volatile private[dispatch] var next: MessageInvocation = _
+
   def invoke = try {
     receiver.invoke(this)
   } catch {
@@ -27,9 +30,9 @@ final class MessageInvocation(val receiver: ActorRef,
   }
 
   override def hashCode(): Int = {
-    var result = HashCode.SEED
-    result = HashCode.hash(result, receiver.actor)
-    result = HashCode.hash(result, message.asInstanceOf[AnyRef])
+    val actor = receiver.actor
+    var result = HashCode.hash(HashCode.SEED, if (actor eq null) 0 else actor.hashCode)
+    result = HashCode.hash(result, if (message == null) 0 else message.hashCode)
     result
   }
 
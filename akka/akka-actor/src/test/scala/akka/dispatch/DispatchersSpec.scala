@@ -23,6 +23,10 @@ object DispatchersSpec {
   val rejectionpolicy    = "rejection-policy"   // abort, caller-runs, discard-oldest, discard
   val throughput         = "throughput"         // Throughput for ExecutorBasedEventDrivenDispatcher
   val aggregate          = "aggregate"          // Aggregate on/off for HawtDispatchers
+  val adaptivethroughput = "adaptive-throughput" // Adaptive throughput on/off for ExecutorBasedEventDrivenDispatcher
+  val targetruntime      = "target-run-time"
+  val minthroughput      = "min-throughput"
+  val maxthroughput      = "max-throughput"
 
   def instance(dispatcher: MessageDispatcher): (MessageDispatcher) => Boolean = _ == dispatcher
   def ofType[T <: MessageDispatcher : Manifest]: (MessageDispatcher) => Boolean = _.getClass == manifest[T].erasure
@@ -67,4 +71,17 @@ class DispatchersSpec extends JUnitSuite {
     assert(from(Config.fromMap(Map())).getOrElse(defaultGlobalDispatcher) == defaultGlobalDispatcher)
   }
 
+  @Test def shouldConfigureTheAdaptiveThroughput {
+    val plain = from(Config.fromMap(Map(tipe -> "ExecutorBasedEventDriven"))).get
+    assert(plain.asInstanceOf[ExecutorBasedEventDrivenDispatcher].adaptiveThroughput === None)
+
+    val adaptive = from(Config.fromMap(Map(
+      tipe               -> "ExecutorBasedEventDriven",
+      adaptivethroughput -> "on",
+      targetruntime      -> "200",
+      minthroughput      -> "2",
+      maxthroughput      -> "50"))).get
+    assert(adaptive.asInstanceOf[ExecutorBasedEventDrivenDispatcher].adaptiveThroughput === Some(AdaptiveThroughput(200, 2, 50)))
+  }
+
 }
@@ -3,7 +3,7 @@ package akka.actor.dispatch
 import java.util.concurrent.{CountDownLatch, TimeUnit}
 import org.scalatest.junit.JUnitSuite
 import org.junit.Test
-import akka.dispatch.{Dispatchers,ExecutorBasedEventDrivenDispatcher}
+import akka.dispatch.{Dispatchers,ExecutorBasedEventDrivenDispatcher,AdaptiveThroughput,ThreadPoolConfig}
 import akka.actor.Actor
 import Actor._
 import java.util.concurrent.atomic.{AtomicBoolean, AtomicInteger}
@@ -135,4 +135,64 @@ class ExecutorBasedEventDrivenDispatcherActorSpec extends JUnitSuite {
    start.countDown
    assert(latch.await(2,TimeUnit.SECONDS) === true)
  }
+
+ @Test def shouldProcessAllMessagesInOrderWithAdaptiveThroughput {
+   val adaptiveDispatcher = Dispatchers.
+                              newAdaptiveExecutorBasedEventDrivenDispatcher("ADAPTIVE", AdaptiveThroughput(1000, 1, 500)).
+                              setCorePoolSize(1).
+                              build
+   val count    = 10000
+   val next     = new AtomicInteger(0)
+   val inOrder  = new AtomicBoolean(true)
+   val latch    = new CountDownLatch(count)
+   val start    = new CountDownLatch(1)
+   val actor = actorOf(
+                 new Actor {
+                   self.dispatcher = adaptiveDispatcher
+                   def receive = {
+                     case "hogexecutor" => start.await
+                     case i: Int        => if (next.getAndIncrement != i) inOrder.set(false); latch.countDown
+                   }
+                 }).start
+
+   actor ! "hogexecutor"
+   (0 until count) foreach { i => actor ! i }
+   start.countDown
+   assert(latch.await(5, TimeUnit.SECONDS) === true)
+   actor.stop
+   assert(inOrder.get === true)
+   val stats = adaptiveDispatcher.asInstanceOf[ExecutorBasedEventDrivenDispatcher].stats
+   assert(stats.messages.get >= count + 1)
+   // cheap messages make the throughput grow way beyond the starting one
+   assert(stats.messagesPerRun > 50)
+ }
+
+ @Test def shouldKeepFairnessForExpensiveMessagesWithAdaptiveThroughput {
+   // starting at a throughput of 100, a run over the slow actor would hold the only thread for 500 ms
+   val adaptiveDispatcher = new ExecutorBasedEventDrivenDispatcher("ADAPTIVE", 100, -1, Dispatchers.MAILBOX_TYPE,
+                              ThreadPoolConfig(corePoolSize = 1, maxPoolSize = 1), Some(AdaptiveThroughput(1000, 1, 500)))
+   val slowDone = new AtomicInteger(0)
+   val latch    = new CountDownLatch(1)
+   val slowOne = actorOf(
+                   new Actor {
+                     self.dispatcher = adaptiveDispatcher
+                     def receive = { case "work" => Thread.sleep(5); slowDone.incrementAndGet; self.reply_?("done") }
+                   }).start
+   val fastOne = actorOf(
+                   new Actor {
+                     self.dispatcher = adaptiveDispatcher
+                     def receive = { case "ping" => latch.countDown }
+                   }).start
+
+   // every run halves the throughput of the slow actor towards the single message that fits the target run time
+   (1 to 10) foreach { _ => slowOne !! "work" }
+   val warmedUp = slowDone.get
+   (1 to 100) foreach { _ => slowOne ! "work" }
+   fastOne ! "ping"
+   assert(latch.await(2, TimeUnit.SECONDS) === true)
+   // the slow actor has given way long before working through its mailbox
+   assert(slowDone.get - warmedUp < 10)
+   slowOne.stop
+   fastOne.stop
+ }
 }
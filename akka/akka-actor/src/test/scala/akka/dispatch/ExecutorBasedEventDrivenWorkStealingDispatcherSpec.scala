@@ -14,6 +14,8 @@ object ExecutorBasedEventDrivenWorkStealingDispatcherSpec {
   val delayableActorDispatcher = Dispatchers.newExecutorBasedEventDrivenWorkStealingDispatcher("pooled-dispatcher").build
   val sharedActorDispatcher = Dispatchers.newExecutorBasedEventDrivenWorkStealingDispatcher("pooled-dispatcher").build
   val parentActorDispatcher = Dispatchers.newExecutorBasedEventDrivenWorkStealingDispatcher("pooled-dispatcher").build
+  val largePoolDispatcher = Dispatchers.newExecutorBasedEventDrivenWorkStealingDispatcher("pooled-dispatcher").build
+  val idleDispatcher = Dispatchers.newExecutorBasedEventDrivenWorkStealingDispatcher("pooled-dispatcher").build
 
   class DelayableActor(name: String, delay: Int, finishedCounter: CountDownLatch) extends Actor {
     self.dispatcher = delayableActorDispatcher
@@ -29,6 +31,24 @@ object ExecutorBasedEventDrivenWorkStealingDispatcherSpec {
     }
   }
 
+  class LargePoolActor(finishedCounter: CountDownLatch) extends Actor {
+    self.dispatcher = largePoolDispatcher
+    @volatile var invocationCount = 0
+
+    def receive = {
+      case x: Int => {
+        if (x == 0) Thread.sleep(1)
+        invocationCount += 1
+        finishedCounter.countDown
+      }
+    }
+  }
+
+  class IdleActor extends Actor {
+    self.dispatcher = idleDispatcher
+    def receive = {case _ => {}}
+  }
+
   class FirstActor extends Actor {
     self.dispatcher = sharedActorDispatcher
     def receive = {case _ => {}}
@@ -93,6 +113,26 @@ class ExecutorBasedEventDrivenWorkStealingDispatcherSpec extends JUnitSuite with
     fast.stop
   }
 
+  @Test def idleActorsOfALargePoolShouldStealFromTheBusyOne  {
+    val finishedCounter = new CountDownLatch(2000)
+    val actors = (1 to 1000).map(_ => actorOf(new LargePoolActor(finishedCounter)).start)
+
+    // all work goes to one slow actor, the others only get a message each to be dispatched on
+    for (i <- 1 to 1000) actors(0) ! 0
+    for (actor <- actors) actor ! 1
+
+    finishedCounter.await(10, TimeUnit.SECONDS) must be(true)
+    actors(0).actor.asInstanceOf[LargePoolActor].invocationCount must be < 1000
+    actors.foreach(_.stop)
+  }
+
+  @Test def stoppedActorsShouldLeaveTheIdleQueue  {
+    val actors = (1 to 10).map(_ => actorOf[IdleActor].start)
+    idleDispatcher.idleMailboxCount must be(10)
+    actors.foreach(_.stop)
+    idleDispatcher.idleMailboxCount must be(0)
+  }
+
   @Test def canNotUseActorsOfDifferentTypesInSameDispatcher(): Unit = {
     val first = actorOf[FirstActor]
     val second = actorOf[SecondActor]
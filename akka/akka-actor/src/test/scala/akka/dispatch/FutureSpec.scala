@@ -2,10 +2,11 @@ package akka.actor
 
 import org.scalatest.junit.JUnitSuite
 import org.junit.Test
-import akka.dispatch.Futures
+import akka.dispatch.{Futures, DefaultCompletableFuture, FutureTimeoutException}
 import Actor._
 import org.multiverse.api.latches.StandardLatch
 import java.util.concurrent.CountDownLatch
+import java.util.concurrent.atomic.AtomicInteger
 
 object FutureSpec {
   class TestActor extends Actor {
@@ -143,4 +144,82 @@ class FutureSpec extends JUnitSuite {
 
     assert(Futures.awaitMap(futures)(_.result.map(_.length).getOrElse(0)).sum === (latches.size * "World".length))
   }
+
+  @Test def shouldFutureMapAndFlatMapWithoutBlocking {
+    val future = new DefaultCompletableFuture[Int](1000)
+    val mapped = future map (_ * 2)
+    val flatMapped = future flatMap { x =>
+      val other = new DefaultCompletableFuture[String](1000)
+      other completeWithResult ("#" + x)
+      other
+    }
+    assert(mapped.isCompleted === false)
+    future completeWithResult 21
+    assert(mapped.result === Some(42))
+    assert(flatMapped.result === Some("#21"))
+  }
+
+  @Test def shouldFutureMapFailWhenFunctionThrows {
+    val future = new DefaultCompletableFuture[Int](1000)
+    val mapped = future map (x => x / 0)
+    future completeWithResult 1
+    assert(mapped.exception.get.isInstanceOf[ArithmeticException])
+  }
+
+  @Test def shouldFutureBeCompletedOnlyOnceWhenCompletedConcurrently {
+    val future = new DefaultCompletableFuture[Int](5000)
+    val notified = new AtomicInteger(0)
+    future onComplete { (f: akka.dispatch.Future[Int]) => notified.incrementAndGet }
+    val start = new CountDownLatch(1)
+    val threads = (1 to 8) map { i =>
+      val thread = new Thread(new Runnable {
+        def run = {
+          start.await
+          future completeWithResult i
+        }
+      })
+      thread.start
+      thread
+    }
+    start.countDown
+    future.await
+    threads foreach (_.join)
+    assert(notified.get === 1)
+    assert(future.result.isDefined)
+    var late = 0
+    future onComplete { (f: akka.dispatch.Future[Int]) => late = f.result.get }
+    assert(late === future.result.get)
+  }
+
+  @Test def shouldFutureAwaitUnparkWhenCompletedByAnotherThread {
+    val future = new DefaultCompletableFuture[String](5000)
+    val waiter = new Thread(new Runnable {
+      def run = {
+        Thread.sleep(100)
+        future completeWithResult "done"
+      }
+    })
+    waiter.start
+    assert(future.await.result === Some("done"))
+  }
+
+  @Test def shouldFutureAwaitBlockingBeInterruptible {
+    val future = new DefaultCompletableFuture[String](5000)
+    val interrupted = new CountDownLatch(1)
+    val waiter = new Thread(new Runnable {
+      def run = try { future.awaitBlocking } catch { case e: InterruptedException => interrupted.countDown }
+    })
+    waiter.start
+    Thread.sleep(100)
+    waiter.interrupt
+    assert(interrupted.await(1, java.util.concurrent.TimeUnit.SECONDS) === true)
+    assert(future.isCompleted === false)
+  }
+
+  @Test def shouldFutureAwaitTimeOut {
+    val future = new DefaultCompletableFuture[String](100)
+    intercept[FutureTimeoutException] { future.await }
+    assert(future.isExpired === true)
+    assert(future.isCompleted === false)
+  }
 }
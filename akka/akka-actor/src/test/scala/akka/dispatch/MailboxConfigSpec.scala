@@ -10,11 +10,71 @@ import akka.dispatch._
 import Actor._
 
 import java.util.concurrent.{BlockingQueue, CountDownLatch, TimeUnit}
-import java.util.concurrent.atomic.AtomicReference
+import java.util.concurrent.atomic.{AtomicReference, AtomicBoolean, AtomicInteger}
 
 class MailboxTypeSpec extends JUnitSuite {
   @Test def shouldDoNothing = assert(true)
 
+  @Test def shouldDequeueFromMpscQueueInOrderAndReuseItWhenEmpty = {
+    val testActor = actorOf( new Actor { def receive = { case _ => }} )
+    val mbox = new DefaultMpscMessageQueue(testActor)
+    assert(mbox.isEmpty)
+    assert(mbox.dequeue === null)
+    for (round <- 1 to 3) {
+      (1 to 100) foreach { i => mbox.enqueue(new MessageInvocation(testActor, i, None, None)) }
+      assert(mbox.size === 100)
+      (1 to 100) foreach { i => assert(mbox.dequeue.message === i) }
+      assert(mbox.dequeue === null)
+      assert(mbox.isEmpty)
+    }
+  }
+
+  @Test def shouldNotLoseMessagesOfConcurrentProducersInMpscQueue = {
+    val testActor = actorOf( new Actor { def receive = { case _ => }} )
+    val mbox      = new DefaultMpscMessageQueue(testActor)
+    val producers = 4
+    val perProducer = 20000
+    val start = new CountDownLatch(1)
+    (0 until producers) foreach { p =>
+      new Thread { override def run = {
+        start.await
+        (0 until perProducer) foreach { i => mbox.enqueue(new MessageInvocation(testActor, (p, i), None, None)) }
+      }}.start
+    }
+    start.countDown
+
+    val next     = new Array[Int](producers)
+    var received = 0
+    val deadline = System.currentTimeMillis + 10000
+    while (received < producers * perProducer && System.currentTimeMillis < deadline) {
+      val invocation = mbox.dequeue
+      if (invocation ne null) {
+        val (p, i) = invocation.message.asInstanceOf[(Int, Int)]
+        assert(i === next(p)) // the messages of each producer stay in order
+        next(p) += 1
+        received += 1
+      }
+    }
+    assert(received === producers * perProducer)
+    assert(mbox.isEmpty)
+  }
+
+  @Test def shouldDeliverAllMessagesInOrderThroughMpscMailbox = {
+    val mpscDispatcher = Dispatchers.newExecutorBasedEventDrivenDispatcher("MPSC", 5, UnboundedMpscMailbox()).build
+    val count   = 10000
+    val next    = new AtomicInteger(0)
+    val inOrder = new AtomicBoolean(true)
+    val latch   = new CountDownLatch(count)
+    val actor = actorOf(new Actor {
+      self.dispatcher = mpscDispatcher
+      def receive = { case i: Int => if (next.getAndIncrement != i) inOrder.set(false); latch.countDown }
+    }).start
+    (0 until count) foreach { i => actor ! i }
+    assert(latch.await(5, TimeUnit.SECONDS) === true)
+    assert(inOrder.get === true)
+    actor.stop
+  }
+
 /*
   private val unit = TimeUnit.MILLISECONDS
 
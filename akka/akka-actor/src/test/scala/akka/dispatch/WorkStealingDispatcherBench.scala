@@ -0,0 +1,51 @@
+package akka.actor.dispatch
+
+import java.util.concurrent.CountDownLatch
+
+import akka.actor.{Actor, ActorRef}
+import Actor._
+import akka.dispatch.Dispatchers
+
+/**
+ * Measures the throughput of a work stealing pool with many actors, where all the work is sent to a few of them
+ * and the others have to steal it.
+ * Run with: test:run-main akka.actor.dispatch.WorkStealingDispatcherBench [actors] [messages]
+ */
+object WorkStealingDispatcherBench {
+  val dispatcher = Dispatchers.newExecutorBasedEventDrivenWorkStealingDispatcher("bench-dispatcher").build
+
+  class Worker(done: CountDownLatch) extends Actor {
+    self.dispatcher = dispatcher
+
+    def receive = {
+      case work: Int =>
+        var i = 0
+        var sum = 0L
+        while (i < work) { sum += i; i += 1 }
+        done.countDown
+    }
+  }
+
+  def run(numActors: Int, numMessages: Int) = {
+    val done = new CountDownLatch(numMessages)
+    val actors = (1 to numActors).map(_ => actorOf(new Worker(done)).start).toArray
+    val start = System.nanoTime
+    var i = 0
+    while (i < numMessages) {
+      actors(i % 10) ! 10000 // only ten actors get messages
+      i += 1
+    }
+    done.await
+    val elapsed = System.nanoTime - start
+    actors.foreach(_.stop)
+    println("%d actors, %d messages: %d ms, %d messages/s".format(
+      numActors, numMessages, elapsed / 1000000, numMessages * 1000000000L / elapsed))
+  }
+
+  def main(args: Array[String]): Unit = {
+    val numActors = if (args.length > 0) args(0).toInt else 1000
+    val numMessages = if (args.length > 1) args(1).toInt else 1000000
+    run(numActors, numMessages / 10) // warm up
+    run(numActors, numMessages)
+  }
+}
@@ -16,6 +16,10 @@ object ActorRegistrySpec {
     }
   }
 
+  trait Pinged
+
+  class TestActor3 extends TestActor with Pinged
+
   class TestActor2 extends Actor {
     self.id = "MyID2"
     def receive = {
@@ -249,4 +253,49 @@ class ActorRegistrySpec extends JUnitSuite {
       assert(actors.size === 9000)
     }
   }
+
+  @Test def shouldGetActorsBySuperclassAndInterfaceFromActorRegistry {
+    ActorRegistry.shutdownAll
+    val actor1 = actorOf[TestActor].start
+    val actor2 = actorOf[TestActor3].start
+    val actor3 = actorOf[TestActor2].start
+    assert(ActorRegistry.actorsFor(classOf[TestActor]).toSet === Set(actor1, actor2))
+    assert(ActorRegistry.actorsFor(classOf[TestActor3]).toSet === Set(actor2))
+    assert(ActorRegistry.actorsFor(classOf[Actor]).toSet === Set(actor1, actor2, actor3))
+    assert(ActorRegistry.actorFor[TestActor3] === Some(actor2))
+    actor2.stop
+    assert(ActorRegistry.actorsFor(classOf[TestActor]).toSet === Set(actor1))
+    assert(ActorRegistry.actorFor[TestActor3] === None)
+    actor1.stop
+    actor3.stop
+    assert(ActorRegistry.actorsFor(classOf[Actor]).size === 0)
+  }
+
+  @Test def shouldNotLoseValuesOfAnIndexWhenAddingAndRemovingConcurrently {
+    val index   = new Index[String, String]
+    val threads = 4
+    val rounds  = 10000
+    val latch   = new CountDownLatch(threads)
+    val barrier = new CyclicBarrier(threads)
+    (1 to threads) foreach { t =>
+      new Thread {
+        override def run {
+          barrier.await
+          // every thread adds and removes values under the key over and over, so that its entry keeps being removed
+          // and created again, and halfway adds a value of its own that has to survive that
+          (1 to rounds) foreach { i =>
+            if (i == rounds / 2) index.put("key", "kept-" + t)
+            val value = "value-" + t + "-" + i
+            index.put("key", value)
+            index.remove("key", value)
+          }
+          latch.countDown
+        }
+      }.start
+    }
+    assert(latch.await(30, TimeUnit.SECONDS) === true)
+    assert(index.values("key").toSet === (1 to threads).map("kept-" + _).toSet)
+    (1 to threads) foreach { t => assert(index.remove("key", "kept-" + t)) }
+    assert(index.isEmpty)
+  }
 }
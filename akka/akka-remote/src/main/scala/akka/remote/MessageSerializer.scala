@@ -7,6 +7,7 @@ package akka.remote
 import akka.serialization.{Serializer, Serializable}
 import akka.remote.protocol.RemoteProtocol._
 import akka.util._
+import akka.config.Config.config
 
 import com.google.protobuf.{Message, ByteString}
 
@@ -17,16 +18,40 @@ object MessageSerializer extends Logging {
   private def SERIALIZER_SBINARY:    Serializer.SBinary   = Serializer.SBinary
   private def SERIALIZER_PROTOBUF:   Serializer.Protobuf  = Serializer.Protobuf
 
+  /**
+   * Messages sent with a serializer from the registry use the JAVA scheme and have a manifest of
+   * "serializer name" + REGISTRY_MANIFEST_SEPARATOR + "class name"; plain Java serialization has no manifest.
+   */
+  val REGISTRY_MANIFEST_SEPARATOR = ':'
+
+  lazy val registry = SerializerRegistry(config)
+
   def setClassLoader(cl: ClassLoader) = {
     val someCl = Some(cl)
     SERIALIZER_JAVA.classLoader       = someCl
     SERIALIZER_JAVA_JSON.classLoader  = someCl
     SERIALIZER_SCALA_JSON.classLoader = someCl
     SERIALIZER_SBINARY.classLoader    = someCl
+    registry.serializers.values.foreach(serializer => serializer.classLoader = someCl)
   }
 
   def deserialize(messageProtocol: MessageProtocol): Any = {
     messageProtocol.getSerializationScheme match {
+      case SerializationSchemeType.JAVA if messageProtocol.hasMessageManifest =>
+        val manifest = messageProtocol.getMessageManifest.toStringUtf8
+        val separator = manifest.indexOf(REGISTRY_MANIFEST_SEPARATOR)
+        if (separator < 0) throw new IllegalArgumentException(
+          "Can't deserialize message with malformed manifest [" + manifest + "], expected [serializer" +
+          REGISTRY_MANIFEST_SEPARATOR + "class]")
+        val name = manifest.substring(0, separator)
+        val className = manifest.substring(separator + 1)
+        val serializer = registry.serializers.getOrElse(name, throw new IllegalArgumentException(
+          "Can't deserialize message of class [" + className + "] with unknown serializer [" + name + "]"))
+        val clazz =
+          if (SERIALIZER_JAVA.classLoader.isDefined) SERIALIZER_JAVA.classLoader.get.loadClass(className)
+          else Class.forName(className)
+        unbox(serializer.fromBinary(messageProtocol.getMessage.toByteArray, Some(clazz)))
+
       case SerializationSchemeType.JAVA =>
         unbox(SERIALIZER_JAVA.fromBinary(messageProtocol.getMessage.toByteArray, None))
 
@@ -52,7 +77,14 @@ object MessageSerializer extends Logging {
 
   def serialize(message: Any): MessageProtocol = {
     val builder = MessageProtocol.newBuilder
-    if (message.isInstanceOf[Message]) {
+    val boxed = box(message)
+    val bound = if ((boxed eq null) || registry.isEmpty) None else registry.serializerFor(boxed.getClass)
+    if (bound.isDefined) {
+      val (name, serializer) = bound.get
+      builder.setSerializationScheme(SerializationSchemeType.JAVA)
+      builder.setMessage(ByteString.copyFrom(serializer.toBinary(boxed)))
+      builder.setMessageManifest(ByteString.copyFromUtf8(name + REGISTRY_MANIFEST_SEPARATOR + boxed.getClass.getName))
+    } else if (message.isInstanceOf[Message]) {
       val serializable = message.asInstanceOf[Message]
       builder.setSerializationScheme(SerializationSchemeType.PROTOBUF)
       builder.setMessage(ByteString.copyFrom(serializable.toByteArray))
@@ -69,7 +101,7 @@ object MessageSerializer extends Logging {
     } else {
       // default, e.g. if no protocol used explicitly then use Java serialization
       builder.setSerializationScheme(SerializationSchemeType.JAVA)
-      builder.setMessage(ByteString.copyFrom(SERIALIZER_JAVA.toBinary(box(message))))
+      builder.setMessage(ByteString.copyFrom(SERIALIZER_JAVA.toBinary(boxed)))
     }
     builder.build
   }
@@ -6,7 +6,7 @@ package akka.remote
 
 import akka.remote.protocol.RemoteProtocol.{ActorType => ActorTypeProtocol, _}
 import akka.actor.{Exit, Actor, ActorRef, ActorType, RemoteActorRef, IllegalActorStateException}
-import akka.dispatch.{DefaultCompletableFuture, CompletableFuture}
+import akka.dispatch.{DefaultCompletableFuture, CompletableFuture, FutureTimeoutException}
 import akka.actor.{Uuid,newUuid,uuidFrom}
 import akka.config.Config._
 import akka.serialization.RemoteActorSerialization._
@@ -208,6 +208,7 @@ class RemoteClient private[akka] (
 
   //FIXME Should these be clear:ed on postStop?
   private val futures = new ConcurrentHashMap[Uuid, CompletableFuture[_]]
+  private val replyTimeouts = new ConcurrentHashMap[Uuid, Timeout]
   private val supervisors = new ConcurrentHashMap[Uuid, ActorRef]
 
   private val remoteAddress = new InetSocketAddress(hostname, port)
@@ -226,6 +227,11 @@ class RemoteClient private[akka] (
 
   private[remote] def isRunning = runSwitch.isOn
 
+  /**
+   * Write batching counters of this client's connection, kept across reconnects.
+   */
+  val writeBatchStats = new WriteBatchStats
+
   private val reconnectionTimeWindow = Duration(config.getInt(
     "akka.remote.client.reconnection-time-window", 600), TIME_UNIT).toMillis
   @volatile
@@ -260,6 +266,7 @@ class RemoteClient private[akka] (
     notifyListeners(RemoteClientShutdown(this))
     timer.stop
     timer = null
+    failPendingReplies(new RemoteClientException("Remote client has been shut down before the reply arrived", this))
     openChannels.close.awaitUninterruptibly
     openChannels = null
     bootstrap.releaseExternalResources
@@ -315,7 +322,12 @@ class RemoteClient private[akka] (
       } else {
           val futureResult = if (senderFuture.isDefined) senderFuture.get
           else new DefaultCompletableFuture[T](request.getActorInfo.getTimeout)
-          futures.put(uuidFrom(request.getUuid.getHigh, request.getUuid.getLow), futureResult)
+          val uuid = uuidFrom(request.getUuid.getHigh, request.getUuid.getLow)
+          futures.put(uuid, futureResult)
+          val wheel = timer
+          if (wheel ne null)
+            replyTimeouts.put(uuid,
+              wheel.newTimeout(new ReplyTimeout(uuid, futureResult), futureResult.timeoutInNanos, TimeUnit.NANOSECONDS))
           connection.getChannel.write(request)
           Some(futureResult)
       }
@@ -327,6 +339,44 @@ class RemoteClient private[akka] (
     }
   }
 
+  /**
+   * Removes the future of a request that got no reply within its timeout from the pending replies and fails it,
+   * unless the reply won the race.
+   */
+  private class ReplyTimeout(uuid: Uuid, future: CompletableFuture[_]) extends TimerTask {
+    def run(timeout: Timeout) = {
+      replyTimeouts.remove(uuid, timeout)
+      if (futures.remove(uuid, future)) future.completeWithException(
+        new FutureTimeoutException("No reply from [" + remoteAddress + "] within the timeout of request [" + uuid + "]"))
+    }
+  }
+
+  /**
+   * Cancels the reply timeout of a request whose reply has arrived, so the timer does not hold on to its future.
+   */
+  private[remote] def cancelReplyTimeout(uuid: Uuid) = {
+    val timeout = replyTimeouts.remove(uuid)
+    if (timeout ne null) timeout.cancel
+  }
+
+  private def failPendingReplies(exception: Throwable) = {
+    val pending = futures.keySet.iterator
+    while (pending.hasNext) {
+      val future = futures.remove(pending.next)
+      if (future ne null) future.completeWithException(exception)
+    }
+    val timeouts = replyTimeouts.values.iterator
+    while (timeouts.hasNext) timeouts.next.cancel
+    replyTimeouts.clear
+  }
+
+  /**
+   * The number of requests waiting for a reply.
+   */
+  def pendingReplies: Int = futures.size
+
+  private[akka] def pendingReplyTimeouts: Int = replyTimeouts.size
+
   private[akka] def registerSupervisorForActor(actorRef: ActorRef) =
     if (!actorRef.supervisor.isDefined) throw new IllegalActorStateException(
       "Can't register supervisor for " + actorRef + " since it is not under supervision")
@@ -386,8 +436,13 @@ class RemoteClientPipelineFactory(
       case _ => (join(), join())
     }
 
+    val batch = if (RemoteServer.WRITE_BATCHING) join(new WriteBatchingHandler(
+      RemoteServer.WRITE_BATCHING_MAX_BATCH_SIZE, RemoteServer.WRITE_BATCHING_MAX_DELAY_MILLIS, client.writeBatchStats)) else join()
+
+    val dictionary = new RemoteDictionaryCodec(true, RemoteServer.DICTIONARY_COMPRESSION, RemoteServer.DICTIONARY_MAX_ENTRIES)
+
     val remoteClient = new RemoteClientHandler(name, futures, supervisors, bootstrap, remoteAddress, timer, client)
-    val stages = ssl ++ join(timeout) ++ dec ++ join(lenDec, protobufDec) ++ enc ++ join(lenPrep, protobufEnc, remoteClient)
+    val stages = ssl ++ join(timeout) ++ dec ++ join(lenDec, protobufDec) ++ enc ++ batch ++ join(lenPrep, protobufEnc, dictionary, remoteClient)
     new StaticChannelPipeline(stages: _*)
   }
 }
@@ -421,8 +476,12 @@ class RemoteClientHandler(
           val replyUuid = uuidFrom(reply.getActorInfo.getUuid.getHigh, reply.getActorInfo.getUuid.getLow)
           log.debug("Remote client received RemoteMessageProtocol[\n{}]",reply)
           val future = futures.remove(replyUuid).asInstanceOf[CompletableFuture[Any]]
+          if (future ne null) client.cancelReplyTimeout(replyUuid)
 
-          if (reply.hasMessage) {
+          if ((future eq null) && !reply.hasSupervisorUuid) {
+            // the request timed out, and its future has already been failed and removed
+            log.slf4j.debug("Dropping reply [{}] that arrived after its request timed out", replyUuid)
+          } else if (reply.hasMessage) {
             if (future eq null) throw new IllegalActorStateException("Future mapped to UUID " + replyUuid + " does not exist")
             val message = MessageSerializer.deserialize(reply.getMessage)
             future.completeWithResult(message)
@@ -438,7 +497,7 @@ class RemoteClientHandler(
               else supervisedActor.supervisor.get ! Exit(supervisedActor, exception)
             }
 
-            future.completeWithException(exception)
+            if (future ne null) future.completeWithException(exception)
           }
 
       case message =>
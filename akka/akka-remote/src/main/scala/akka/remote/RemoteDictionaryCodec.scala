@@ -0,0 +1,283 @@
+/**
+ * Copyright (C) 2009-2011 Scalable Solutions AB <http://scalablesolutions.se>
+ */
+
+package akka.remote
+
+import akka.remote.protocol.RemoteProtocol.{ActorType => ActorTypeProtocol, _}
+import akka.util.Logging
+
+import org.jboss.netty.channel._
+import com.google.protobuf.ByteString
+
+import java.util.{HashMap => JHashMap, ArrayList => JArrayList}
+
+/**
+ * The metadata keys used by the RemoteDictionaryCodec.
+ */
+object RemoteDictionaryCodec {
+  val HANDSHAKE = "akka.dictionary"
+  val OFFER     = "offer"
+  val ACCEPT    = "accept"
+  val REJECT    = "reject"
+  // the number of entries the dictionaries of the sending side can hold, sent along with an offer or accept
+  val MAX_ENTRIES = "akka.dictionary.max-entries"
+
+  // a capital letter defines an entry for the id, a small letter refers to it
+  val DEFINE_ACTOR_INFO = "@A"
+  val ACTOR_INFO        = "@a"
+  val DEFINE_MANIFEST   = "@M"
+  val MANIFEST          = "@m"
+  val DEFINE_SENDER     = "@S"
+  val SENDER            = "@s"
+
+  private val NO_UUID = UuidProtocol.newBuilder.setHigh(0).setLow(0).build
+
+  private[remote] def handshake(answer: String): RemoteMessageProtocol = RemoteMessageProtocol.newBuilder
+    .setUuid(NO_UUID)
+    .setActorInfo(stubActorInfo(NO_UUID))
+    .setOneWay(true)
+    .addMetadata(entry(HANDSHAKE, ByteString.copyFromUtf8(answer)))
+    .build
+
+  private[remote] def handshake(answer: String, maxEntries: Int): RemoteMessageProtocol =
+    handshake(answer).toBuilder.addMetadata(entry(MAX_ENTRIES, maxEntries)).build
+
+  /**
+   * The max entries sent with a handshake, if any; older nodes don't send it.
+   */
+  private[remote] def maxEntriesOf(message: RemoteMessageProtocol): Option[Int] = {
+    val entries = message.getMetadataList.iterator
+    while (entries.hasNext) {
+      val metadata = entries.next
+      if (metadata.getKey == MAX_ENTRIES) return Some(metadata.getValue.toStringUtf8.toInt)
+    }
+    None
+  }
+
+  private[remote] def isHandshake(message: RemoteMessageProtocol) =
+    message.getMetadataCount > 0 && message.getMetadata(0).getKey == HANDSHAKE
+
+  private def entry(key: String, value: ByteString) =
+    MetadataEntryProtocol.newBuilder.setKey(key).setValue(value).build
+
+  private def entry(key: String, id: Int): MetadataEntryProtocol = entry(key, ByteString.copyFromUtf8(id.toString))
+
+  private def stubActorInfo(uuid: UuidProtocol) = ActorInfoProtocol.newBuilder
+    .setUuid(uuid)
+    .setTarget("")
+    .setTimeout(0)
+    .setActorType(ActorTypeProtocol.SCALA_ACTOR)
+    .build
+
+  private val STUB_SENDER = RemoteActorRefProtocol.newBuilder
+    .setClassOrServiceName("")
+    .setActorClassname("")
+    .setHomeAddress(AddressProtocol.newBuilder.setHostname("").setPort(0).build)
+    .build
+}
+
+/**
+ * Sending side of a dictionary: hands out ids in order of first use, until it is full.
+ */
+private[remote] class EncodingDictionary[T](private var maxEntries: Int) {
+  private val ids = new JHashMap[T, Integer]
+
+  /**
+   * Never defines more entries than the receiving side can hold.
+   */
+  def limit(peerMaxEntries: Int) = maxEntries = math.min(maxEntries, peerMaxEntries)
+
+  def idFor(key: T): Option[Int] = {
+    val id = ids.get(key)
+    if (id eq null) None else Some(id.intValue)
+  }
+
+  def define(key: T): Option[Int] =
+    if (ids.size >= maxEntries) None
+    else {
+      val id = ids.size
+      ids.put(key, id)
+      Some(id)
+    }
+}
+
+/**
+ * Receiving side of a dictionary: holds at most 'maxEntries' entries, whatever the sending side defines.
+ */
+private[remote] class DecodingDictionary[T](maxEntries: Int) {
+  private val entries = new JArrayList[T]
+
+  /**
+   * Adds the entry, or returns false if the dictionary is full.
+   */
+  def define(id: Int, value: T): Boolean =
+    if (id >= maxEntries) false
+    else {
+      if (id != entries.size) throw new IllegalStateException(
+        "Dictionary entry [" + id + "] defined out of order, expected [" + entries.size + "]")
+      entries.add(value)
+      true
+    }
+
+  def lookup(id: Int): Option[T] =
+    if (id >= 0 && id < entries.size) Some(entries.get(id)) else None
+}
+
+/**
+ * Pipeline stage that replaces the parts of a RemoteMessageProtocol that repeat from message to message, the
+ * actor info (except its uuid), the sender and the message manifest, with small ids. The first message that
+ * carries a value defines its id; later messages only carry the id. The ids travel as metadata entries, so the
+ * protocol itself is unchanged, and the dictionaries live and die with the connection.
+ * <p/>
+ * The client offers dictionary compression when it connects; each side only compresses what it sends once it
+ * knows that the other side understands it: the server after the offer, the client after the server accepted.
+ * The offer and the accept carry the 'maxEntries' of their sender, and each side defines no more entries than the
+ * other side can hold. A message referring to an id that is unknown on the receiving side is dropped with an
+ * error, and the sender is told to send everything in full from then on. So is a sender that defines more
+ * entries than the receiving side can hold, which only a node that doesn't send its 'maxEntries' can do; the
+ * message defining the extra entry is still delivered.
+ * <p/>
+ * Sits between the protobuf codec and the remote client or server handler. One instance serves one channel.
+ */
+class RemoteDictionaryCodec(val isClient: Boolean, val enabled: Boolean, val maxEntries: Int)
+  extends SimpleChannelHandler with Logging {
+  import RemoteDictionaryCodec._
+
+  private val lock = new Object
+  @volatile private var compressing = false
+
+  private val actorInfoIds = new EncodingDictionary[ActorInfoProtocol](maxEntries)
+  private val manifestIds  = new EncodingDictionary[ByteString](maxEntries)
+  private val senderIds    = new EncodingDictionary[RemoteActorRefProtocol](maxEntries)
+
+  private val actorInfos = new DecodingDictionary[ActorInfoProtocol](maxEntries)
+  private val manifests  = new DecodingDictionary[ByteString](maxEntries)
+  private val senders    = new DecodingDictionary[RemoteActorRefProtocol](maxEntries)
+  private var overflowed = false
+
+  override def channelConnected(ctx: ChannelHandlerContext, event: ChannelStateEvent) = {
+    if (isClient && enabled) Channels.write(ctx, Channels.future(ctx.getChannel), handshake(OFFER, maxEntries))
+    super.channelConnected(ctx, event)
+  }
+
+  override def writeRequested(ctx: ChannelHandlerContext, event: MessageEvent) = event.getMessage match {
+    case message: RemoteMessageProtocol if compressing =>
+      // ids must reach the wire after the message that defines them
+      lock synchronized { Channels.write(ctx, event.getFuture, compress(message), event.getRemoteAddress) }
+    case _ => super.writeRequested(ctx, event)
+  }
+
+  override def messageReceived(ctx: ChannelHandlerContext, event: MessageEvent) = event.getMessage match {
+    case message: RemoteMessageProtocol if isHandshake(message) =>
+      handleHandshake(ctx, message.getMetadata(0).getValue.toStringUtf8, maxEntriesOf(message))
+    case message: RemoteMessageProtocol if message.getMetadataCount > 0 =>
+      val wasOverflowed = overflowed
+      expand(message) match {
+        case Some(expanded) => Channels.fireMessageReceived(ctx, expanded, event.getRemoteAddress)
+        case None =>
+          log.slf4j.error("Dropping remote message [{}] that refers to an unknown dictionary entry", message.getUuid)
+          Channels.write(ctx, Channels.future(ctx.getChannel), handshake(REJECT))
+      }
+      if (overflowed && !wasOverflowed) {
+        log.slf4j.warn("Remote side [{}] defined more than [{}] dictionary entries", ctx.getChannel.getRemoteAddress, maxEntries)
+        Channels.write(ctx, Channels.future(ctx.getChannel), handshake(REJECT))
+      }
+    case _ => super.messageReceived(ctx, event)
+  }
+
+  private def handleHandshake(ctx: ChannelHandlerContext, answer: String, peerMaxEntries: Option[Int]) = answer match {
+    case OFFER if enabled => lock synchronized {
+      peerMaxEntries.foreach(limitEncoding(_))
+      Channels.write(ctx, Channels.future(ctx.getChannel), handshake(ACCEPT, maxEntries))
+      compressing = true
+      log.slf4j.debug("Dictionary compression accepted for [{}]", ctx.getChannel.getRemoteAddress)
+    }
+    case OFFER => ()
+    case ACCEPT => lock synchronized {
+      peerMaxEntries.foreach(limitEncoding(_))
+      compressing = true
+    }
+    case REJECT =>
+      compressing = false
+      log.slf4j.warn("Dictionary compression turned off for [{}] by the remote side", ctx.getChannel.getRemoteAddress)
+    case other => log.slf4j.warn("Unknown dictionary handshake [{}]", other)
+  }
+
+  /**
+   * Limits the dictionaries of what this side sends to the entries the other side can hold.
+   */
+  private[remote] def limitEncoding(peerMaxEntries: Int) = {
+    actorInfoIds.limit(peerMaxEntries)
+    manifestIds.limit(peerMaxEntries)
+    senderIds.limit(peerMaxEntries)
+  }
+
+  private[remote] def compress(message: RemoteMessageProtocol): RemoteMessageProtocol = {
+    val builder = message.toBuilder
+
+    val actorInfo = message.getActorInfo
+    val actorInfoKey = actorInfo.toBuilder.clearUuid.buildPartial
+    actorInfoIds.idFor(actorInfoKey) match {
+      case Some(id) =>
+        builder.setActorInfo(stubActorInfo(actorInfo.getUuid))
+        builder.addMetadata(entry(ACTOR_INFO, id))
+      case None => actorInfoIds.define(actorInfoKey).foreach(id => builder.addMetadata(entry(DEFINE_ACTOR_INFO, id)))
+    }
+
+    if (message.hasSender) senderIds.idFor(message.getSender) match {
+      case Some(id) =>
+        builder.setSender(STUB_SENDER)
+        builder.addMetadata(entry(SENDER, id))
+      case None => senderIds.define(message.getSender).foreach(id => builder.addMetadata(entry(DEFINE_SENDER, id)))
+    }
+
+    if (message.hasMessage && message.getMessage.hasMessageManifest) {
+      val manifest = message.getMessage.getMessageManifest
+      manifestIds.idFor(manifest) match {
+        case Some(id) =>
+          builder.setMessage(message.getMessage.toBuilder.clearMessageManifest)
+          builder.addMetadata(entry(MANIFEST, id))
+        case None => manifestIds.define(manifest).foreach(id => builder.addMetadata(entry(DEFINE_MANIFEST, id)))
+      }
+    }
+    builder.build
+  }
+
+  /**
+   * Resolves and strips the dictionary entries of a message, or returns None if it refers to an unknown id.
+   * An entry that does not fit in the dictionary any more is not kept and marks the dictionary as overflowed.
+   */
+  private[remote] def expand(message: RemoteMessageProtocol): Option[RemoteMessageProtocol] = {
+    val builder = message.toBuilder.clearMetadata
+    val entries = message.getMetadataList.iterator
+    var resolved = true
+    while (entries.hasNext) {
+      val metadata = entries.next
+      def id = metadata.getValue.toStringUtf8.toInt
+      metadata.getKey match {
+        case DEFINE_ACTOR_INFO => definedOrOverflowed(actorInfos.define(id, message.getActorInfo.toBuilder.clearUuid.buildPartial))
+        case ACTOR_INFO => actorInfos.lookup(id) match {
+          case Some(actorInfo) => builder.setActorInfo(actorInfo.toBuilder.setUuid(message.getActorInfo.getUuid))
+          case None => resolved = false
+        }
+        case DEFINE_SENDER => definedOrOverflowed(senders.define(id, message.getSender))
+        case SENDER => senders.lookup(id) match {
+          case Some(sender) => builder.setSender(sender)
+          case None => resolved = false
+        }
+        case DEFINE_MANIFEST => definedOrOverflowed(manifests.define(id, message.getMessage.getMessageManifest))
+        case MANIFEST => manifests.lookup(id) match {
+          case Some(manifest) => builder.setMessage(message.getMessage.toBuilder.setMessageManifest(manifest))
+          case None => resolved = false
+        }
+        case _ => builder.addMetadata(metadata)
+      }
+    }
+    if (resolved) Some(builder.build) else None
+  }
+
+  private def definedOrOverflowed(defined: Boolean) = if (!defined) overflowed = true
+
+  private[remote] def isOverflowed = overflowed
+}
@@ -5,7 +5,7 @@
 package akka.remote
 
 import java.lang.reflect.InvocationTargetException
-import java.net.InetSocketAddress
+import java.net.{InetSocketAddress, SocketAddress}
 import java.util.concurrent.{ConcurrentHashMap, Executors}
 import java.util.{Map => JMap}
 
@@ -27,6 +27,7 @@ import org.jboss.netty.handler.codec.frame.{LengthFieldBasedFrameDecoder, Length
 import org.jboss.netty.handler.codec.protobuf.{ProtobufDecoder, ProtobufEncoder}
 import org.jboss.netty.handler.codec.compression.{ZlibEncoder, ZlibDecoder}
 import org.jboss.netty.handler.ssl.SslHandler
+import org.jboss.netty.handler.execution.ExecutionHandler
 
 import scala.collection.mutable.Map
 import scala.reflect.BeanProperty
@@ -91,6 +92,17 @@ object RemoteServer {
     level
   }
 
+  val WRITE_BATCHING                  = config.getBool("akka.remote.write-batching.enabled", false)
+  val WRITE_BATCHING_MAX_BATCH_SIZE   = config.getInt("akka.remote.write-batching.max-batch-size", 65536)
+  val WRITE_BATCHING_MAX_DELAY_MILLIS = config.getInt("akka.remote.write-batching.max-delay-millis", 1).toLong
+  val DICTIONARY_COMPRESSION          = config.getBool("akka.remote.dictionary-compression.enabled", false)
+  val DICTIONARY_MAX_ENTRIES          = config.getInt("akka.remote.dictionary-compression.max-entries", 1024)
+
+  val EXECUTION_POOL                  = config.getBool("akka.remote.server.execution-pool.enabled", false)
+  val EXECUTION_POOL_SIZE             = config.getInt("akka.remote.server.execution-pool.size", Runtime.getRuntime.availableProcessors * 2)
+  val EXECUTION_MAX_CHANNEL_MEMORY    = config.getInt("akka.remote.server.execution-pool.max-channel-memory-size", 0).toLong
+  val EXECUTION_MAX_TOTAL_MEMORY      = config.getInt("akka.remote.server.execution-pool.max-total-memory-size", 0).toLong
+
   val SECURE = {
     /*if (config.getBool("akka.remote.ssl.service",false)) {
       val properties = List(
@@ -210,6 +222,9 @@ class RemoteServer extends Logging with ListenerManagement {
   // group of open channels, used for clean-up
   private val openChannels: ChannelGroup = new DefaultChannelGroup("akka-remote-server")
 
+  // runs the server handler off the I/O threads, if 'akka.remote.server.execution-pool.enabled' is on
+  @volatile private[remote] var executor: Option[RemoteServerExecutor] = None
+
   def isRunning = _isRunning
 
   def start: RemoteServer =
@@ -237,6 +252,9 @@ class RemoteServer extends Logging with ListenerManagement {
         log.slf4j.info("Starting remote server at [{}:{}]", hostname, port)
         RemoteServer.register(hostname, port, this)
 
+        if (RemoteServer.EXECUTION_POOL) executor = Some(new RemoteServerExecutor(
+          RemoteServer.EXECUTION_POOL_SIZE, RemoteServer.EXECUTION_MAX_CHANNEL_MEMORY,
+          RemoteServer.EXECUTION_MAX_TOTAL_MEMORY, new ServerExecutionStats))
         val pipelineFactory = new RemoteServerPipelineFactory(name, openChannels, loader, this)
         bootstrap.setPipelineFactory(pipelineFactory)
         bootstrap.setOption("child.tcpNoDelay", true)
@@ -263,6 +281,8 @@ class RemoteServer extends Logging with ListenerManagement {
         openChannels.disconnect
         openChannels.close.awaitUninterruptibly
         bootstrap.releaseExternalResources
+        executor.foreach(_.shutdown)
+        executor = None
         notifyListeners(RemoteServerShutdown(this))
       } catch {
         case e: java.nio.channels.ClosedChannelException =>  {}
@@ -444,6 +464,25 @@ class RemoteServer extends Logging with ListenerManagement {
 
   protected override def manageLifeCycleOfListeners = false
 
+  /**
+   * The write batching counters of each connected client, empty unless 'akka.remote.write-batching.enabled' is on.
+   */
+  def writeBatchStats: scala.collection.immutable.Map[SocketAddress, WriteBatchStats] = {
+    var stats = scala.collection.immutable.Map[SocketAddress, WriteBatchStats]()
+    val channels = openChannels.iterator
+    while (channels.hasNext) {
+      val channel = channels.next
+      val handler = channel.getPipeline.get(classOf[WriteBatchingHandler])
+      if ((handler ne null) && (channel.getRemoteAddress ne null)) stats += channel.getRemoteAddress -> handler.stats
+    }
+    stats
+  }
+
+  /**
+   * The queue depths of the execution stage, None unless 'akka.remote.server.execution-pool.enabled' is on.
+   */
+  def executionStats: Option[ServerExecutionStats] = executor.map(_.stats)
+
   protected[akka] override def notifyListeners(message: => Any): Unit = super.notifyListeners(message)
 
 
@@ -480,6 +519,9 @@ class RemoteServerPipelineFactory(
     val server: RemoteServer) extends ChannelPipelineFactory {
   import RemoteServer._
 
+  // shared by all connections, the executor keeps the events of each connection in order
+  private val executionHandler = server.executor.map(new ExecutionHandler(_))
+
   def getPipeline: ChannelPipeline = {
     def join(ch: ChannelHandler*) = Array[ChannelHandler](ch:_*)
 
@@ -500,8 +542,16 @@ class RemoteServerPipelineFactory(
       case       _ => (join(), join())
     }
 
+    val batch       = if (RemoteServer.WRITE_BATCHING) join(new WriteBatchingHandler(
+      RemoteServer.WRITE_BATCHING_MAX_BATCH_SIZE, RemoteServer.WRITE_BATCHING_MAX_DELAY_MILLIS, new WriteBatchStats)) else join()
+
+    val dictionary  = new RemoteDictionaryCodec(false, RemoteServer.DICTIONARY_COMPRESSION, RemoteServer.DICTIONARY_MAX_ENTRIES)
+
+    val execution   = executionHandler.map(join(_)).getOrElse(join())
+
     val remoteServer = new RemoteServerHandler(name, openChannels, loader, server)
-    val stages = ssl ++ dec ++ join(lenDec, protobufDec) ++ enc ++ join(lenPrep, protobufEnc, remoteServer)
+    val stages = ssl ++ dec ++ join(lenDec, protobufDec) ++ enc ++ batch ++
+                 join(lenPrep, protobufEnc, dictionary) ++ execution ++ join(remoteServer)
     new StaticChannelPipeline(stages: _*)
   }
 }
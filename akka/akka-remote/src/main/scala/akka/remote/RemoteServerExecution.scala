@@ -0,0 +1,115 @@
+/**
+ * Copyright (C) 2009-2011 Scalable Solutions AB <http://scalablesolutions.se>
+ */
+
+package akka.remote
+
+import org.jboss.netty.channel.{Channel, ChannelFuture, ChannelFutureListener}
+import org.jboss.netty.handler.execution.{ChannelEventRunnable, OrderedMemoryAwareThreadPoolExecutor}
+
+import java.net.SocketAddress
+import java.util.concurrent.{ConcurrentHashMap, Executors, ThreadFactory, TimeUnit}
+import java.util.concurrent.atomic.{AtomicInteger, AtomicLong}
+
+/**
+ * Counters of the execution stage of a remote server.
+ */
+class ServerExecutionStats {
+  /** Events waiting for a pool thread, over all connections */
+  val queued     = new AtomicLong(0)
+  /** Highest number of events that were waiting at the same time */
+  val peakQueued = new AtomicLong(0)
+  /** Events handed to the remote server handler */
+  val executed   = new AtomicLong(0)
+
+  private val channelQueued = new ConcurrentHashMap[Channel, AtomicLong]
+
+  private[remote] def enqueued(channel: Channel) = {
+    val depth = queued.incrementAndGet
+    var peak = peakQueued.get
+    while (depth > peak && !peakQueued.compareAndSet(peak, depth)) peak = peakQueued.get
+    counterFor(channel).incrementAndGet
+  }
+
+  private[remote] def dequeued(channel: Channel) = {
+    queued.decrementAndGet
+    executed.incrementAndGet
+    counterFor(channel).decrementAndGet
+  }
+
+  /**
+   * The number of events waiting for each connected client.
+   */
+  def queuedByClient: Map[SocketAddress, Long] = {
+    var result = Map[SocketAddress, Long]()
+    val entries = channelQueued.entrySet.iterator
+    while (entries.hasNext) {
+      val entry = entries.next
+      val address = entry.getKey.getRemoteAddress
+      if (address ne null) result += address -> entry.getValue.get
+    }
+    result
+  }
+
+  private def counterFor(channel: Channel): AtomicLong = {
+    val counter = channelQueued.get(channel)
+    if (counter ne null) counter
+    else {
+      val newCounter = new AtomicLong(0)
+      val existing = channelQueued.putIfAbsent(channel, newCounter)
+      if (existing ne null) existing
+      else {
+        channel.getCloseFuture.addListener(new ChannelFutureListener {
+          def operationComplete(future: ChannelFuture) = channelQueued.remove(channel)
+        })
+        newCounter
+      }
+    }
+  }
+
+  override def toString =
+    "ServerExecutionStats[queued=" + queued.get + ", peakQueued=" + peakQueued.get + ", executed=" + executed.get + "]"
+}
+
+/**
+ * Thread pool that runs the remote server handler, so that deserializing and dispatching a message doesn't
+ * hold up the I/O thread, and with it every other connection served by that thread. Events of the same
+ * connection are handled one at a time, in the order they arrived. When the queued messages of a connection,
+ * or of all connections, exceed their memory limit, the I/O thread waits, which stops reading from the clients.
+ */
+class RemoteServerExecutor(
+    poolSize: Int,
+    maxChannelMemorySize: Long,
+    maxTotalMemorySize: Long,
+    val stats: ServerExecutionStats)
+  extends OrderedMemoryAwareThreadPoolExecutor(
+    poolSize, maxChannelMemorySize, maxTotalMemorySize, 60, TimeUnit.SECONDS, RemoteServerExecutorThreadFactory) {
+
+  override protected def doExecute(task: Runnable) = {
+    task match {
+      case event: ChannelEventRunnable => stats.enqueued(event.getEvent.getChannel)
+      case _ => ()
+    }
+    super.doExecute(task)
+  }
+
+  override protected def beforeExecute(thread: Thread, task: Runnable) = {
+    super.beforeExecute(thread, task)
+    task match {
+      case event: ChannelEventRunnable => stats.dequeued(event.getEvent.getChannel)
+      case _ => ()
+    }
+  }
+}
+
+private object RemoteServerExecutorThreadFactory extends ThreadFactory {
+  val threadFactory = Executors.defaultThreadFactory()
+  val counter = new AtomicInteger(0)
+
+  def newThread(r: Runnable): Thread = {
+    val thread = threadFactory.newThread(r)
+    thread.setName("akka:remote-server-execution-" + counter.incrementAndGet)
+    thread.setDaemon(true)
+    thread
+  }
+}
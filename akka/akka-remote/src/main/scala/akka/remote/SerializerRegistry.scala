@@ -0,0 +1,83 @@
+/**
+ * Copyright (C) 2009-2011 Scalable Solutions AB <http://scalablesolutions.se>
+ */
+
+package akka.remote
+
+import akka.serialization.Serializer
+import akka.config.ConfigurationException
+import akka.util.ReflectiveAccess
+
+import net.lag.configgy.ConfigMap
+
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Maps message classes to the serializer that is used to send them to remote actors. Configured in akka.conf:
+ * <pre>
+ * akka {
+ *   remote {
+ *     serializers {                  # "java", "java-json", "protobuf" and "compact" are always available
+ *       my-serializer = "com.example.MySerializer"  # a Serializer class, or object if it ends with $
+ *     }
+ *     serialization-bindings {
+ *       compact = ["com.example.Ping", "com.example.Pong"]
+ *       my-serializer = ["com.example.Snapshot"]
+ *     }
+ *   }
+ * }
+ * </pre>
+ * A message is bound if its class, or one of its superclasses or interfaces, is listed. Messages that aren't
+ * bound are serialized as before, by their type. Both ends of a connection need the same serializer names.
+ */
+class SerializerRegistry(val serializers: Map[String, Serializer], bindings: Map[String, String]) {
+  bindings.values.find(!serializers.contains(_)).foreach(name => throw new ConfigurationException(
+    "Serialization binding refers to unknown serializer [" + name + "]"))
+
+  private val resolved = new ConcurrentHashMap[Class[_], Option[String]]
+
+  def isEmpty = bindings.isEmpty
+
+  /**
+   * Returns the name of the serializer bound to the class, and the serializer itself.
+   */
+  def serializerFor(clazz: Class[_]): Option[(String, Serializer)] = {
+    var name = resolved.get(clazz)
+    if (name eq null) {
+      name = lookup(clazz)
+      resolved.put(clazz, name)
+    }
+    name.map(n => (n, serializers(n)))
+  }
+
+  private def lookup(clazz: Class[_]): Option[String] =
+    if (clazz eq null) None
+    else bindings.get(clazz.getName)
+      .orElse(lookup(clazz.getSuperclass))
+      .orElse(clazz.getInterfaces.toStream.flatMap(lookup(_)).headOption)
+}
+
+object SerializerRegistry {
+  val BUILT_IN_SERIALIZERS = Map[String, Serializer](
+    "java"      -> Serializer.Java,
+    "java-json" -> Serializer.JavaJSON,
+    "protobuf"  -> Serializer.Protobuf,
+    "compact"   -> Serializer.Compact)
+
+  def apply(config: ConfigMap): SerializerRegistry = {
+    val serializers = config.getConfigMap("akka.remote.serializers").map { section =>
+      section.keys.map(name => (name, load(section.getString(name, "")))).toList
+    }.getOrElse(Nil)
+    val bindings = config.getConfigMap("akka.remote.serialization-bindings").map { section =>
+      for (name <- section.keys.toList; className <- section.getList(name)) yield (className, name)
+    }.getOrElse(Nil)
+    new SerializerRegistry(BUILT_IN_SERIALIZERS ++ serializers, Map(bindings: _*))
+  }
+
+  private def load(fqn: String): Serializer = {
+    val serializer =
+      if (fqn.endsWith("$")) ReflectiveAccess.getObjectFor[Serializer](fqn)
+      else ReflectiveAccess.createInstance[Serializer](fqn, ReflectiveAccess.noParams, ReflectiveAccess.noArgs)
+    serializer.getOrElse(throw new ConfigurationException("Could not load serializer [" + fqn + "]"))
+  }
+}
@@ -0,0 +1,178 @@
+/**
+ * Copyright (C) 2009-2011 Scalable Solutions AB <http://scalablesolutions.se>
+ */
+
+package akka.remote
+
+import org.jboss.netty.buffer.{ChannelBuffer, ChannelBuffers}
+import org.jboss.netty.channel._
+
+import java.util.{ArrayList => JArrayList}
+import java.util.concurrent.{Executors, ThreadFactory, TimeUnit}
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+import akka.util.Logging
+
+/**
+ * Counters of the write batching of a remote connection.
+ */
+class WriteBatchStats {
+  /** Messages written through the batching stage */
+  val messages    = new AtomicLong(0)
+  /** Writes issued to the channel, each holding one or more messages */
+  val batches     = new AtomicLong(0)
+  /** Bytes written, before compression */
+  val bytes       = new AtomicLong(0)
+  /** Batches flushed because they reached the maximum batch size */
+  val sizeFlushes = new AtomicLong(0)
+  /** Batches flushed because their oldest message reached the maximum delay */
+  val timeFlushes = new AtomicLong(0)
+  /** Batches flushed because the connection had no write in flight */
+  val idleFlushes = new AtomicLong(0)
+
+  def messagesPerBatch: Double = {
+    val numBatches = batches.get
+    if (numBatches == 0) 0.0 else messages.get.toDouble / numBatches
+  }
+
+  override def toString =
+    "WriteBatchStats[messages=" + messages.get + ", batches=" + batches.get + ", bytes=" + bytes.get +
+    ", sizeFlushes=" + sizeFlushes.get + ", timeFlushes=" + timeFlushes.get + ", idleFlushes=" + idleFlushes.get + "]"
+}
+
+object WriteBatchingHandler {
+  /** Only fires the delayed flushes, which are handed to the flush pool */
+  private[remote] val timer = Executors.newSingleThreadScheduledExecutor(
+    new WriteBatchThreadFactory("akka:remote-write-batch-timer"))
+
+  /** Flushes batches outside of the I/O thread that completed the previous write, for all connections */
+  private[remote] val flushPool = Executors.newFixedThreadPool(Runtime.getRuntime.availableProcessors,
+    new WriteBatchThreadFactory("akka:remote-write-batch-flusher-"))
+}
+
+private class WriteBatchThreadFactory(name: String) extends ThreadFactory {
+  val threadFactory = Executors.defaultThreadFactory()
+  val counter = new AtomicInteger(0)
+
+  def newThread(r: Runnable): Thread = {
+    val thread = threadFactory.newThread(r)
+    thread.setName(if (name.endsWith("-")) name + counter.incrementAndGet else name)
+    thread.setDaemon(true)
+    thread
+  }
+}
+
+/**
+ * Downstream stage that coalesces the length-prefixed frames written to a remote connection into fewer, larger
+ * writes. It sits between the LengthFieldPrepender and the compression stage, so a batch is compressed and written
+ * to the socket as a whole, while the peer still sees the usual stream of frames; no protocol change is involved.
+ * <p/>
+ * A frame is written right away if the connection has no write in flight. Otherwise it waits for the write in
+ * flight to complete, for the batch to reach 'maxBatchSize' bytes or for 'maxDelayMillis' to pass, whichever comes
+ * first; a 'maxDelayMillis' of zero or less writes every frame right away. One instance serves one channel.
+ */
+class WriteBatchingHandler(
+  val maxBatchSize: Int,
+  val maxDelayMillis: Long,
+  val stats: WriteBatchStats) extends SimpleChannelDownstreamHandler with Logging {
+  import WriteBatchingHandler._
+
+  private val lock = new Object
+  private var pending = new JArrayList[ChannelBuffer]
+  private var pendingFutures = new JArrayList[ChannelFuture]
+  private var pendingBytes = 0
+  private var inFlight = 0
+  private var flushScheduled = false
+  private var context: ChannelHandlerContext = _
+
+  override def writeRequested(ctx: ChannelHandlerContext, event: MessageEvent) = event.getMessage match {
+    case buffer: ChannelBuffer => lock synchronized {
+      context = ctx
+      pending.add(buffer)
+      pendingFutures.add(event.getFuture)
+      pendingBytes += buffer.readableBytes
+      stats.messages.incrementAndGet
+      if (pendingBytes >= maxBatchSize) {
+        stats.sizeFlushes.incrementAndGet
+        flush(ctx)
+      } else if (inFlight == 0) {
+        stats.idleFlushes.incrementAndGet
+        flush(ctx)
+      } else if (maxDelayMillis <= 0) {
+        stats.timeFlushes.incrementAndGet
+        flush(ctx)
+      } else if (!flushScheduled) {
+        flushScheduled = true
+        timer.schedule(new Runnable {
+          def run = flushPool.execute(timeFlush)
+        }, maxDelayMillis, TimeUnit.MILLISECONDS)
+      }
+    }
+    case _ =>
+      lock synchronized { flush(ctx) }
+      super.writeRequested(ctx, event)
+  }
+
+  private val timeFlush = new Runnable {
+    def run = lock synchronized {
+      flushScheduled = false
+      if (!pending.isEmpty) {
+        stats.timeFlushes.incrementAndGet
+        flush(context)
+      }
+    }
+  }
+
+  override def disconnectRequested(ctx: ChannelHandlerContext, event: ChannelStateEvent) = {
+    lock synchronized { flush(ctx) }
+    super.disconnectRequested(ctx, event)
+  }
+
+  override def closeRequested(ctx: ChannelHandlerContext, event: ChannelStateEvent) = {
+    lock synchronized { flush(ctx) }
+    super.closeRequested(ctx, event)
+  }
+
+  /**
+   * Writes the pending frames as one buffer. Must be called holding the lock, which keeps the batches in order.
+   */
+  private def flush(ctx: ChannelHandlerContext) = if (!pending.isEmpty) {
+    val buffers = pending
+    val futures = pendingFutures
+    pending = new JArrayList[ChannelBuffer]
+    pendingFutures = new JArrayList[ChannelFuture]
+    stats.batches.incrementAndGet
+    stats.bytes.addAndGet(pendingBytes)
+    pendingBytes = 0
+    inFlight += 1
+
+    val batch =
+      if (buffers.size == 1) buffers.get(0)
+      else ChannelBuffers.wrappedBuffer(buffers.toArray(new Array[ChannelBuffer](buffers.size)): _*)
+    val future = Channels.future(ctx.getChannel)
+    future.addListener(new ChannelFutureListener {
+      def operationComplete(written: ChannelFuture) = {
+        val iterator = futures.iterator
+        while (iterator.hasNext) {
+          val messageFuture = iterator.next
+          if (written.isSuccess) messageFuture.setSuccess
+          else if (written.getCause ne null) messageFuture.setFailure(written.getCause)
+          else messageFuture.cancel
+        }
+        // may be notified by the I/O thread while it holds the channel's write lock, so the next batch
+        // is flushed from the flush pool instead of taking our lock here
+        flushPool.execute(new Runnable {
+          def run = lock synchronized {
+            inFlight -= 1
+            if (inFlight == 0 && !pending.isEmpty) {
+              stats.idleFlushes.incrementAndGet
+              flush(ctx)
+            }
+          }
+        })
+      }
+    })
+    Channels.write(ctx, future, batch)
+  }
+}
@@ -4,7 +4,11 @@
 
 package akka.serialization
 
-import java.io.{ObjectOutputStream, ByteArrayOutputStream, ObjectInputStream, ByteArrayInputStream}
+import java.io.{ObjectOutputStream, ByteArrayOutputStream, ObjectInputStream, ByteArrayInputStream,
+                DataOutputStream, DataInputStream}
+import java.lang.reflect.Constructor
+import java.util.concurrent.ConcurrentHashMap
+import java.util.{HashMap => JHashMap, ArrayList => JArrayList}
 
 import org.apache.commons.io.input.ClassLoaderObjectInputStream
 
@@ -33,6 +37,7 @@ class SerializerFactory {
   def getScalaJSON: ScalaJSON.type = ScalaJSON
   def getSBinary: SBinary.type = SBinary
   def getProtobuf: Protobuf.type = Protobuf
+  def getCompact: Compact.type = Compact
 }
 
 /**
@@ -41,6 +46,63 @@ class SerializerFactory {
 object Serializer {
   val ARRAY_OF_BYTE_ARRAY = Array[Class[_]](classOf[Array[Byte]])
 
+  /**
+   * Per-thread output buffers that are reset and reused instead of allocated for every message. A buffer
+   * that grew beyond MAX_POOLED_BUFFER_SIZE is dropped after use, so one large message doesn't pin its
+   * memory to the thread.
+   */
+  object OutputBuffers {
+    val INITIAL_BUFFER_SIZE    = 512
+    val MAX_POOLED_BUFFER_SIZE = 64 * 1024
+
+    private class PooledBuffer extends ByteArrayOutputStream(INITIAL_BUFFER_SIZE) {
+      var inUse = false
+      def capacity = buf.length
+    }
+
+    private val buffers = new ThreadLocal[PooledBuffer] {
+      override def initialValue = new PooledBuffer
+    }
+
+    /**
+     * Runs 'write' against an empty buffer and returns what it wrote. Nested calls, e.g. a serializer
+     * that delegates to another one, get a fresh buffer.
+     */
+    def withBuffer(write: ByteArrayOutputStream => Unit): Array[Byte] = {
+      val bos = buffers.get
+      if (bos.inUse) {
+        val fresh = new ByteArrayOutputStream(INITIAL_BUFFER_SIZE)
+        write(fresh)
+        fresh.toByteArray
+      } else {
+        bos.inUse = true
+        try {
+          write(bos)
+          bos.toByteArray
+        } finally {
+          bos.inUse = false
+          if (bos.capacity > MAX_POOLED_BUFFER_SIZE) buffers.remove
+          else bos.reset
+        }
+      }
+    }
+  }
+
+  private[serialization] def javaToBinary(obj: AnyRef): Array[Byte] = OutputBuffers.withBuffer { bos =>
+    val out = new ObjectOutputStream(bos)
+    out.writeObject(obj)
+    out.close
+  }
+
+  private[serialization] def javaFromBinary(bytes: Array[Byte], classLoader: Option[ClassLoader]): AnyRef = {
+    val in =
+      if (classLoader.isDefined) new ClassLoaderObjectInputStream(classLoader.get, new ByteArrayInputStream(bytes))
+      else new ObjectInputStream(new ByteArrayInputStream(bytes))
+    val obj = in.readObject
+    in.close
+    obj
+  }
+
   object NOOP extends NOOP
   class NOOP extends Serializer {
     def toBinary(obj: AnyRef): Array[Byte] = Array[Byte]()
@@ -52,22 +114,9 @@ object Serializer {
    */
   object Java extends Java
   trait Java extends Serializer {
-    def toBinary(obj: AnyRef): Array[Byte] = {
-      val bos = new ByteArrayOutputStream
-      val out = new ObjectOutputStream(bos)
-      out.writeObject(obj)
-      out.close
-      bos.toByteArray
-    }
+    def toBinary(obj: AnyRef): Array[Byte] = javaToBinary(obj)
 
-    def fromBinary(bytes: Array[Byte], clazz: Option[Class[_]]): AnyRef = {
-      val in =
-        if (classLoader.isDefined) new ClassLoaderObjectInputStream(classLoader.get, new ByteArrayInputStream(bytes))
-        else new ObjectInputStream(new ByteArrayInputStream(bytes))
-      val obj = in.readObject
-      in.close
-      obj
-    }
+    def fromBinary(bytes: Array[Byte], clazz: Option[Class[_]]): AnyRef = javaFromBinary(bytes, classLoader)
   }
 
   /**
@@ -100,12 +149,10 @@ object Serializer {
   trait JavaJSON extends Serializer {
     private val mapper = new ObjectMapper
 
-    def toBinary(obj: AnyRef): Array[Byte] = {
-      val bos = new ByteArrayOutputStream
+    def toBinary(obj: AnyRef): Array[Byte] = OutputBuffers.withBuffer { bos =>
       val out = new ObjectOutputStream(bos)
       mapper.writeValue(out, obj)
       out.close
-      bos.toByteArray
     }
 
     def fromBinary(bytes: Array[Byte], clazz: Option[Class[_]]): AnyRef = {
@@ -175,5 +222,201 @@ object Serializer {
 
     def fromBinary[T](array : Array[Byte], clazz: Option[Class[T]])(implicit bin : Reads[T]): T = fromByteArray[T](array)
   }
-}
 
+  /**
+   * A compact binary serializer for primitives, strings, byte arrays, lists and case classes, case objects,
+   * tuples and options made of those. Every value is a one byte tag followed by its data; a case class is
+   * written as its class name, sent once per message, and its fields, and is rebuilt through the constructor
+   * that takes all of them. Any other value is embedded using Java serialization.
+   * <p/>
+   * Case classes nested in a class, or with more than one parameter list, don't have such a constructor and
+   * are embedded using Java serialization too.
+   */
+  object Compact extends Compact
+  trait Compact extends Serializer {
+    import CompactFormat._
+
+    def toBinary(obj: AnyRef): Array[Byte] = OutputBuffers.withBuffer { bos =>
+      val out = new DataOutputStream(bos)
+      new CompactWriter(out).write(obj)
+      out.flush
+    }
+
+    def fromBinary(bytes: Array[Byte], clazz: Option[Class[_]]): AnyRef =
+      new CompactReader(new DataInputStream(new ByteArrayInputStream(bytes)), classLoader).read
+  }
+
+  private[serialization] object CompactFormat {
+    val NULL    = 0
+    val BOOLEAN = 1
+    val BYTE    = 2
+    val CHAR    = 3
+    val SHORT   = 4
+    val INT     = 5
+    val LONG    = 6
+    val FLOAT   = 7
+    val DOUBLE  = 8
+    val STRING  = 9
+    val BYTES   = 10
+    val LIST    = 11
+    val MODULE  = 12
+    val PRODUCT = 13
+    val JAVA    = 14
+
+    private val constructors = new ConcurrentHashMap[Class[_], Option[Constructor[_]]]
+
+    def constructorFor(clazz: Class[_], arity: Int): Option[Constructor[_]] = {
+      val cached = constructors.get(clazz)
+      if (cached ne null) cached
+      else {
+        val found = clazz.getConstructors.find(_.getParameterTypes.length == arity)
+        constructors.put(clazz, found)
+        found
+      }
+    }
+
+    private val modules = new ConcurrentHashMap[Class[_], java.lang.Boolean]
+
+    def isModule(clazz: Class[_]): Boolean = {
+      val cached = modules.get(clazz)
+      if (cached ne null) cached.booleanValue
+      else {
+        val module = clazz.getName.endsWith("$") && clazz.getDeclaredFields.exists(_.getName == "MODULE$")
+        modules.put(clazz, module)
+        module
+      }
+    }
+
+    class CompactWriter(out: DataOutputStream) {
+      private val classIds = new JHashMap[Class[_], Integer]
+
+      def write(value: Any): Unit = value match {
+        case null          => out.writeByte(NULL)
+        case v: Boolean    => out.writeByte(BOOLEAN); out.writeBoolean(v)
+        case v: Byte       => out.writeByte(BYTE);    out.writeByte(v)
+        case v: Char       => out.writeByte(CHAR);    out.writeChar(v)
+        case v: Short      => out.writeByte(SHORT);   out.writeShort(v)
+        case v: Int        => out.writeByte(INT);     writeVarInt(v)
+        case v: Long       => out.writeByte(LONG);    out.writeLong(v)
+        case v: Float      => out.writeByte(FLOAT);   out.writeFloat(v)
+        case v: Double     => out.writeByte(DOUBLE);  out.writeDouble(v)
+        case v: String     => out.writeByte(STRING);  writeString(v)
+        case v: Array[Byte] =>
+          out.writeByte(BYTES)
+          writeVarInt(v.length)
+          out.write(v)
+        case v: List[_] =>
+          out.writeByte(LIST)
+          writeVarInt(v.length)
+          v.foreach(write)
+        case v: Product if isModule(v.getClass) =>
+          out.writeByte(MODULE)
+          writeClass(v.getClass)
+        case v: Product if constructorFor(v.getClass, v.productArity).isDefined =>
+          out.writeByte(PRODUCT)
+          writeClass(v.getClass)
+          writeVarInt(v.productArity)
+          v.productIterator.foreach(write)
+        case v =>
+          val bytes = javaToBinary(v.asInstanceOf[AnyRef])
+          out.writeByte(JAVA)
+          writeVarInt(bytes.length)
+          out.write(bytes)
+      }
+
+      private def writeClass(clazz: Class[_]) = {
+        val id = classIds.get(clazz)
+        if (id ne null) writeVarInt(id.intValue + 1)
+        else {
+          classIds.put(clazz, classIds.size)
+          writeVarInt(0)
+          writeString(clazz.getName)
+        }
+      }
+
+      private def writeString(value: String) = {
+        val bytes = value.getBytes("UTF-8")
+        writeVarInt(bytes.length)
+        out.write(bytes)
+      }
+
+      private def writeVarInt(value: Int) = {
+        var v = (value << 1) ^ (value >> 31) // zig-zag, keeps small negative numbers short
+        while ((v & ~0x7F) != 0) {
+          out.writeByte((v & 0x7F) | 0x80)
+          v >>>= 7
+        }
+        out.writeByte(v)
+      }
+    }
+
+    class CompactReader(in: DataInputStream, classLoader: Option[ClassLoader]) {
+      private val classes = new JArrayList[Class[_]]
+
+      def read: AnyRef = in.readUnsignedByte match {
+        case NULL    => null
+        case BOOLEAN => java.lang.Boolean.valueOf(in.readBoolean)
+        case BYTE    => java.lang.Byte.valueOf(in.readByte)
+        case CHAR    => java.lang.Character.valueOf(in.readChar)
+        case SHORT   => java.lang.Short.valueOf(in.readShort)
+        case INT     => java.lang.Integer.valueOf(readVarInt)
+        case LONG    => java.lang.Long.valueOf(in.readLong)
+        case FLOAT   => java.lang.Float.valueOf(in.readFloat)
+        case DOUBLE  => java.lang.Double.valueOf(in.readDouble)
+        case STRING  => readString
+        case BYTES   => readBytes
+        case LIST =>
+          val size = readVarInt
+          val values = new Array[AnyRef](size)
+          for (i <- 0 until size) values(i) = read
+          values.toList
+        case MODULE =>
+          val field = readClass.getDeclaredField("MODULE$")
+          field.setAccessible(true)
+          field.get(null)
+        case PRODUCT =>
+          val clazz = readClass
+          val arity = readVarInt
+          val args = new Array[AnyRef](arity)
+          for (i <- 0 until arity) args(i) = read
+          val constructor = constructorFor(clazz, arity).getOrElse(throw new IllegalArgumentException(
+            "Can't deserialize [" + clazz.getName + "], it has no constructor taking " + arity + " arguments"))
+          constructor.newInstance(args: _*).asInstanceOf[AnyRef]
+        case JAVA => javaFromBinary(readBytes, classLoader)
+        case tag  => throw new IllegalArgumentException("Unknown compact serialization tag [" + tag + "]")
+      }
+
+      private def readClass: Class[_] = {
+        val id = readVarInt
+        if (id > 0) classes.get(id - 1)
+        else {
+          val name = readString
+          val clazz = if (classLoader.isDefined) classLoader.get.loadClass(name) else Class.forName(name)
+          classes.add(clazz)
+          clazz
+        }
+      }
+
+      private def readBytes: Array[Byte] = {
+        val bytes = new Array[Byte](readVarInt)
+        in.readFully(bytes)
+        bytes
+      }
+
+      private def readString: String = new String(readBytes, "UTF-8")
+
+      private def readVarInt: Int = {
+        var v = 0
+        var shift = 0
+        var b = in.readUnsignedByte
+        while ((b & 0x80) != 0) {
+          v |= (b & 0x7F) << shift
+          shift += 7
+          b = in.readUnsignedByte
+        }
+        v |= b << shift
+        (v >>> 1) ^ -(v & 1)
+      }
+    }
+  }
+}
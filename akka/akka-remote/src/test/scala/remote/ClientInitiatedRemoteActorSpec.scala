@@ -5,7 +5,7 @@ import org.scalatest.junit.JUnitSuite
 import org.junit.{Test, Before, After}
 
 import akka.remote.{RemoteServer, RemoteClient}
-import akka.dispatch.Dispatchers
+import akka.dispatch.{Dispatchers, FutureTimeoutException}
 import akka.actor.{ActorRef, Actor}
 import Actor._
 
@@ -33,6 +33,12 @@ object ClientInitiatedRemoteActorSpec {
     }
   }
 
+  class SilentActor extends Actor {
+    def receive = {
+      case _ => () // never replies
+    }
+  }
+
   class SendOneWayAndReplyReceiverActor extends Actor {
     def receive = {
       case "Hello" =>
@@ -132,6 +138,30 @@ class ClientInitiatedRemoteActorSpec extends JUnitSuite {
     actor.stop
   }
 
+  @Test
+  def shouldCancelReplyTimeoutWhenReplyArrives = {
+    val actor = actorOf[RemoteActorSpecActorBidirectional]
+    actor.makeRemote(HOSTNAME, PORT1)
+    actor.start
+    assert("World" === (actor !! "Hello").get.asInstanceOf[String])
+    assert(RemoteClient.clientFor(HOSTNAME, PORT1).pendingReplyTimeouts === 0)
+    actor.stop
+  }
+
+  @Test
+  def shouldFailAndForgetRequestThatGetsNoReplyWithinItsTimeout = {
+    val actor = actorOf[SilentActor]
+    actor.makeRemote(HOSTNAME, PORT1)
+    actor.timeout = 500
+    actor.start
+    val future = actor !!! "Hello"
+    Thread.sleep(1500)
+    assert(future.isCompleted)
+    assert(future.exception.get.isInstanceOf[FutureTimeoutException])
+    assert(RemoteClient.clientFor(HOSTNAME, PORT1).pendingReplies === 0)
+    actor.stop
+  }
+
   @Test
   def shouldSendBangBangMessageAndReceiveReplyConcurrently = {
     val actors = (1 to 10).
@@ -0,0 +1,88 @@
+package akka.remote
+
+import org.scalatest.junit.JUnitSuite
+import org.junit.Test
+
+import akka.remote.protocol.RemoteProtocol.{ActorType => ActorTypeProtocol, _}
+import com.google.protobuf.ByteString
+
+class RemoteDictionaryCodecSpec extends JUnitSuite {
+
+  private def uuid(n: Long) = UuidProtocol.newBuilder.setHigh(n).setLow(n).build
+
+  private def request(n: Long) = RemoteMessageProtocol.newBuilder
+    .setUuid(uuid(n))
+    .setActorInfo(ActorInfoProtocol.newBuilder
+      .setUuid(uuid(42))
+      .setId("dictionary-test-actor")
+      .setTarget("akka.actor.remote.SomeRemoteActorWithAVeryLongClassName")
+      .setTimeout(5000)
+      .setActorType(ActorTypeProtocol.SCALA_ACTOR)
+      .build)
+    .setOneWay(true)
+    .setMessage(MessageProtocol.newBuilder
+      .setSerializationScheme(SerializationSchemeType.PROTOBUF)
+      .setMessage(ByteString.copyFromUtf8("payload-" + n))
+      .setMessageManifest(ByteString.copyFromUtf8("akka.actor.remote.SomeMessageClassName"))
+      .build)
+    .setSender(RemoteActorRefProtocol.newBuilder
+      .setClassOrServiceName("uuid:sender")
+      .setActorClassname("akka.actor.remote.SomeSenderClassName")
+      .setHomeAddress(AddressProtocol.newBuilder.setHostname("localhost").setPort(9999).build)
+      .setTimeout(5000)
+      .build)
+    .build
+
+  @Test
+  def shouldSendRepeatedPartsAsIdsAfterFirstUse = {
+    val sender   = new RemoteDictionaryCodec(true, true, 16)
+    val receiver = new RemoteDictionaryCodec(false, true, 16)
+
+    val first = sender.compress(request(1))
+    assert(receiver.expand(first) === Some(request(1)))
+
+    val second = sender.compress(request(2))
+    assert(second.getSerializedSize < first.getSerializedSize)
+    assert(receiver.expand(second) === Some(request(2)))
+  }
+
+  @Test
+  def shouldDropMessagesReferringToUnknownIds = {
+    val sender = new RemoteDictionaryCodec(true, true, 16)
+    sender.compress(request(1))
+    val second = sender.compress(request(2))
+    assert(new RemoteDictionaryCodec(false, true, 16).expand(second) === None)
+  }
+
+  @Test
+  def shouldNotDefineMoreEntriesThanThePeerCanHold = {
+    val sender   = new RemoteDictionaryCodec(true, true, 16)
+    val receiver = new RemoteDictionaryCodec(false, true, 0)
+    sender.limitEncoding(RemoteDictionaryCodec.maxEntriesOf(RemoteDictionaryCodec.handshake(RemoteDictionaryCodec.ACCEPT, 0)).get)
+    assert(receiver.expand(sender.compress(request(1))) === Some(request(1)))
+    val second = sender.compress(request(2))
+    assert(second === request(2))
+    assert(receiver.expand(second) === Some(request(2)))
+    assert(!receiver.isOverflowed)
+  }
+
+  @Test
+  def shouldIgnoreDefinitionsPastItsMaximum = {
+    val dictionary = new DecodingDictionary[String](1)
+    assert(dictionary.define(0, "first"))
+    assert(!dictionary.define(1, "second"))
+    assert(!dictionary.define(2, "third"))
+    assert(dictionary.lookup(0) === Some("first"))
+    assert(dictionary.lookup(1) === None)
+  }
+
+  @Test
+  def shouldSendInFullWhenDictionaryIsFull = {
+    val sender   = new RemoteDictionaryCodec(true, true, 0)
+    val receiver = new RemoteDictionaryCodec(false, true, 0)
+    sender.compress(request(1))
+    val second = sender.compress(request(2))
+    assert(second === request(2))
+    assert(receiver.expand(second) === Some(request(2)))
+  }
+}
@@ -0,0 +1,56 @@
+package akka.actor.remote
+
+import org.scalatest.junit.JUnitSuite
+import org.junit.{Test, After}
+
+import org.jboss.netty.channel.{ChannelHandlerContext, MessageEvent, SimpleChannelUpstreamHandler}
+import org.jboss.netty.handler.codec.embedder.DecoderEmbedder
+import org.jboss.netty.handler.execution.ExecutionHandler
+
+import java.util.concurrent.{CountDownLatch, TimeUnit}
+
+import akka.remote.{RemoteServerExecutor, ServerExecutionStats}
+
+class RemoteServerExecutionSpec extends JUnitSuite {
+  val stats = new ServerExecutionStats
+  val executor = new RemoteServerExecutor(4, 0, 0, stats)
+
+  @After
+  def shutdown = executor.shutdownNow
+
+  class Collector(expected: Int) extends SimpleChannelUpstreamHandler {
+    val latch = new CountDownLatch(expected)
+    @volatile var received = List[Int]()
+    @volatile var ioThreadUsed = false
+    val ioThread = Thread.currentThread
+
+    override def messageReceived(ctx: ChannelHandlerContext, event: MessageEvent) = {
+      if (Thread.currentThread eq ioThread) ioThreadUsed = true
+      if (received.isEmpty) Thread.sleep(100) // let the queue build up behind the first message
+      received = event.getMessage.asInstanceOf[Int] :: received
+      latch.countDown
+    }
+  }
+
+  @Test
+  def shouldHandleMessagesOfAConnectionInOrderOffTheIOThread = {
+    val collector = new Collector(100)
+    val embedder = new DecoderEmbedder[AnyRef](new ExecutionHandler(executor), collector)
+    for (i <- 1 to 100) embedder.offer(i)
+    assert(collector.latch.await(5, TimeUnit.SECONDS))
+    assert(collector.received.reverse === (1 to 100).toList)
+    assert(!collector.ioThreadUsed)
+  }
+
+  @Test
+  def shouldTrackQueueDepth = {
+    val collector = new Collector(100)
+    val embedder = new DecoderEmbedder[AnyRef](new ExecutionHandler(executor), collector)
+    for (i <- 1 to 100) embedder.offer(i)
+    assert(stats.queued.get > 0)
+    assert(stats.queuedByClient.values.sum > 0)
+    assert(collector.latch.await(5, TimeUnit.SECONDS))
+    assert(stats.peakQueued.get >= 50)
+    assert(stats.executed.get >= 100)
+  }
+}
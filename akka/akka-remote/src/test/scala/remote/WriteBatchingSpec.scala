@@ -0,0 +1,75 @@
+package akka.actor.remote
+
+import org.scalatest.junit.JUnitSuite
+import org.junit.Test
+
+import org.jboss.netty.buffer.{ChannelBuffer, ChannelBuffers}
+import org.jboss.netty.handler.codec.embedder.{EncoderEmbedder, DecoderEmbedder}
+import org.jboss.netty.handler.codec.frame.{LengthFieldBasedFrameDecoder, LengthFieldPrepender}
+
+import akka.remote.{WriteBatchingHandler, WriteBatchStats}
+
+class WriteBatchingSpec extends JUnitSuite {
+
+  // the embedder never completes write futures, so after the first write every frame waits for a size flush
+  // or for the delay, which is too long to pass during a test
+  private def embedder(stats: WriteBatchStats, maxDelayMillis: Long = 60000) =
+    new EncoderEmbedder[ChannelBuffer](new WriteBatchingHandler(100, maxDelayMillis, stats), new LengthFieldPrepender(4))
+
+  private def frame(i: Int) = ChannelBuffers.wrappedBuffer(Array.fill[Byte](10)(i.toByte))
+
+  @Test
+  def shouldWriteFirstFrameOfIdleConnectionRightAway = {
+    val stats = new WriteBatchStats
+    val encoder = embedder(stats)
+    encoder.offer(frame(0))
+    assert(encoder.size === 1)
+    assert(encoder.poll.readableBytes === 14)
+    assert(stats.idleFlushes.get === 1)
+  }
+
+  @Test
+  def shouldCoalesceFramesIntoOneWriteUntilBatchSizeIsReached = {
+    val stats = new WriteBatchStats
+    val encoder = embedder(stats)
+    encoder.offer(frame(0))
+    encoder.poll
+    for (i <- 1 to 7) encoder.offer(frame(i))
+    assert(encoder.size === 0)
+    encoder.offer(frame(8))
+    assert(encoder.size === 1)
+    assert(stats.sizeFlushes.get === 1)
+    assert(stats.batches.get === 2)
+    assert(stats.messages.get === 9)
+
+    // the peer still sees the individual frames, in order
+    val decoder = new DecoderEmbedder[ChannelBuffer](new LengthFieldBasedFrameDecoder(1024, 0, 4, 0, 4))
+    decoder.offer(encoder.poll)
+    assert(decoder.size === 8)
+    for (i <- 1 to 8) assert(decoder.poll === frame(i))
+  }
+
+  @Test
+  def shouldWriteEveryFrameRightAwayWithoutDelay = {
+    val stats = new WriteBatchStats
+    val encoder = embedder(stats, 0)
+    for (i <- 0 to 2) encoder.offer(frame(i))
+    assert(encoder.size === 3)
+    assert(stats.batches.get === 3)
+    assert(stats.timeFlushes.get === 2)
+  }
+
+  @Test
+  def shouldFlushPendingFramesOnClose = {
+    val stats = new WriteBatchStats
+    val encoder = embedder(stats)
+    encoder.offer(frame(0))
+    encoder.offer(frame(1))
+    encoder.offer(frame(2))
+    assert(encoder.size === 1)
+    encoder.finish
+    assert(encoder.size === 2)
+    encoder.poll
+    assert(encoder.poll.readableBytes === 28)
+  }
+}
@@ -0,0 +1,93 @@
+package akka.serialization
+
+import org.scalatest.junit.JUnitSuite
+import org.junit.Test
+
+import akka.remote.{MessageSerializer, SerializerRegistry}
+import akka.remote.protocol.RemoteProtocol.{MessageProtocol, SerializationSchemeType}
+import com.google.protobuf.ByteString
+
+object CompactSerializerSpec {
+  case class Ping(id: Int, from: String, payload: Array[Byte])
+  case class Envelope(to: String, message: Any, hops: List[String], deadline: Option[Long])
+  case object Tick
+  class NotAProduct(val value: String) extends java.io.Serializable {
+    override def equals(other: Any) = other match {
+      case that: NotAProduct => that.value == value
+      case _                 => false
+    }
+  }
+  trait Command
+  case class Stop(reason: String) extends Command
+}
+
+class CompactSerializerSpec extends JUnitSuite {
+  import CompactSerializerSpec._
+
+  private def roundTrip(value: AnyRef) = Serializer.Compact.fromBinary(Serializer.Compact.toBinary(value), None)
+
+  @Test
+  def shouldRoundTripPrimitivesAndStrings = {
+    for (value <- List[AnyRef](null, true: java.lang.Boolean, 7.toByte: java.lang.Byte, 'x': java.lang.Character,
+                               3.toShort: java.lang.Short, -42: java.lang.Integer, Long.MaxValue: java.lang.Long,
+                               1.5f: java.lang.Float, 2.5d: java.lang.Double, "héllo"))
+      assert(roundTrip(value) === value)
+  }
+
+  @Test
+  def shouldRoundTripNestedCaseClassesAndCaseObjects = {
+    val envelope = Envelope("somewhere", (Tick, Stop("done")), List("a", "b"), Some(10L))
+    assert(roundTrip(envelope) === envelope)
+    assert(roundTrip(Envelope("nowhere", Tick, Nil, None)) === Envelope("nowhere", Tick, Nil, None))
+  }
+
+  @Test
+  def shouldRoundTripByteArrays = {
+    val ping = roundTrip(Ping(1, "me", Array[Byte](1, 2, 3))).asInstanceOf[Ping]
+    assert(ping.id === 1)
+    assert(ping.payload.toList === List[Byte](1, 2, 3))
+  }
+
+  @Test
+  def shouldFallBackToJavaSerialization = {
+    val value = Envelope("x", new NotAProduct("y"), Nil, None)
+    assert(roundTrip(value) === value)
+  }
+
+  @Test
+  def shouldBeSmallerThanJavaSerialization = {
+    val envelope = Envelope("somewhere", Stop("done"), List("a", "b"), Some(10L))
+    assert(Serializer.Compact.toBinary(envelope).length < Serializer.Java.toBinary(envelope).length / 2)
+  }
+
+  @Test
+  def shouldReuseOutputBuffersWithoutMixingUpMessages = {
+    val first  = Serializer.Java.toBinary("first")
+    val second = Serializer.Java.toBinary("second")
+    assert(Serializer.Java.fromBinary(first, None) === "first")
+    assert(Serializer.Java.fromBinary(second, None) === "second")
+  }
+
+  @Test
+  def shouldFindSerializersBoundToSuperTypes = {
+    val registry = new SerializerRegistry(SerializerRegistry.BUILT_IN_SERIALIZERS,
+      Map(classOf[Command].getName -> "compact", classOf[String].getName -> "java"))
+    assert(registry.serializerFor(classOf[Stop]).map(_._1) === Some("compact"))
+    assert(registry.serializerFor(classOf[String]).map(_._1) === Some("java"))
+    assert(registry.serializerFor(classOf[Ping]) === None)
+  }
+
+  @Test(expected = classOf[akka.config.ConfigurationException])
+  def shouldRejectBindingsToUnknownSerializers = {
+    new SerializerRegistry(SerializerRegistry.BUILT_IN_SERIALIZERS, Map("com.example.Foo" -> "unknown"))
+  }
+
+  @Test(expected = classOf[IllegalArgumentException])
+  def shouldRejectManifestWithoutSerializerName = {
+    MessageSerializer.deserialize(MessageProtocol.newBuilder
+      .setSerializationScheme(SerializationSchemeType.JAVA)
+      .setMessage(ByteString.copyFrom(Serializer.Compact.toBinary(Tick)))
+      .setMessageManifest(ByteString.copyFromUtf8(Tick.getClass.getName))
+      .build)
+  }
+}
@@ -0,0 +1,103 @@
+package akka.serialization
+
+import scala.reflect.BeanProperty
+import akka.actor.ProtobufProtocol
+
+/**
+ * Compares the time and size of the serializers on a few representative messages. The JSON and SBinary
+ * serializers need a JavaBean or a type class format, so they are measured on an item message only.
+ * Run with: test:run-main akka.serialization.SerializerBench [iterations]
+ */
+object SerializerBench {
+  case class Ping(sequence: Long, from: String)
+  case class Order(id: Int, customer: String, lines: List[(String, Int)], discount: Option[Double])
+  case class Item(name: String, price: Int, quantity: Int)
+
+  /** the JavaJSON serializer maps JavaBeans */
+  class ItemBean {
+    @BeanProperty var name: String = _
+    @BeanProperty var price: Int = _
+    @BeanProperty var quantity: Int = _
+  }
+
+  object ItemJsonProtocol {
+    import sjson.json.DefaultProtocol._
+    implicit val ItemFormat: sjson.json.Format[Item] =
+      asProduct3("name", "price", "quantity")(Item)(Item.unapply(_).get)
+  }
+
+  object ItemBinaryProtocol {
+    import sbinary._
+    import sbinary.Operations._
+    import sbinary.DefaultProtocol._
+    implicit object ItemFormat extends Format[Item] {
+      def reads(in: Input) = Item(read[String](in), read[Int](in), read[Int](in))
+      def writes(out: Output, value: Item) = {
+        write[String](out, value.name)
+        write[Int](out, value.price)
+        write[Int](out, value.quantity)
+      }
+    }
+  }
+
+  val messages = List[(String, AnyRef)](
+    "string" -> "a short string message",
+    "ping"   -> Ping(42L, "node-1"),
+    "order"  -> Order(7, "ACME", List(("widget", 3), ("gadget", 12), ("sprocket", 1)), Some(0.15)),
+    "bytes"  -> new Array[Byte](1024))
+
+  val serializers = List[(String, Serializer)](
+    "java"    -> Serializer.Java,
+    "compact" -> Serializer.Compact)
+
+  def time(iterations: Int)(body: => Unit): Long = {
+    val start = System.nanoTime
+    var i = 0
+    while (i < iterations) {
+      body
+      i += 1
+    }
+    (System.nanoTime - start) / iterations
+  }
+
+  def bench(name: String, serializerName: String, serializer: Serializer, message: AnyRef,
+            clazz: Option[Class[_]], iterations: Int): Unit =
+    benchWith(name, serializerName, serializer.toBinary(message), serializer.fromBinary(_, clazz), iterations)
+
+  def benchWith(name: String, serializerName: String, toBinary: => Array[Byte], fromBinary: Array[Byte] => Any,
+            iterations: Int): Unit = {
+    val bytes = toBinary
+    time(iterations)(fromBinary(toBinary)) // warm up
+    val write = time(iterations)(toBinary)
+    val read = time(iterations)(fromBinary(bytes))
+    println("%-10s %-10s %8d bytes %10d ns/write %10d ns/read".format(name, serializerName, bytes.length, write, read))
+  }
+
+  def main(args: Array[String]): Unit = {
+    val iterations = if (args.length > 0) args(0).toInt else 100000
+    for ((name, message) <- messages; (serializerName, serializer) <- serializers)
+      bench(name, serializerName, serializer, message, None, iterations)
+
+    val counter = ProtobufProtocol.Counter.newBuilder.setCount(42).build
+    bench("counter", "protobuf", Serializer.Protobuf, counter, Some(counter.getClass), iterations)
+
+    val bean = new ItemBean
+    bean.name = "widget"
+    bean.price = 1999
+    bean.quantity = 3
+    bench("item", "javajson", Serializer.JavaJSON, bean, Some(classOf[ItemBean]), iterations)
+
+    val item = Item("widget", 1999, 3)
+    for ((serializerName, serializer) <- serializers)
+      bench("item", serializerName, serializer, item, None, iterations)
+
+    {
+      import ItemJsonProtocol._
+      benchWith("item", "scalajson", Serializer.ScalaJSON.tobinary(item), Serializer.ScalaJSON.frombinary[Item](_), iterations)
+    }
+    {
+      import ItemBinaryProtocol._
+      benchWith("item", "sbinary", Serializer.SBinary.toBinary(item), Serializer.SBinary.fromBinary[Item](_, None), iterations)
+    }
+  }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2010 LinkedIn
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.etl;
+
+import java.io.IOException;
+
+import kafka.message.Message;
+
+/**
+ * Map-side aggregation of messages that fall into the same time bucket.
+ * 
+ * When an aggregator is configured (see
+ * {@link KafkaETLCommons#AGGREGATOR_CLASS}), KafkaETLMapper folds messages
+ * into one partial aggregate per bucket before they are collected,
+ * KafkaETLCombiner merges partial aggregates before the shuffle and
+ * KafkaETLReducer merges them once more per bucket. Aggregates must therefore
+ * be associative: merging in any grouping has to give the same result.
+ * 
+ * @param <A> in-memory representation of an aggregate
+ */
+public interface KafkaETLAggregator<A> {
+
+	/**
+	 * Create an empty aggregate for the bucket of the given key.
+	 */
+	A create(KafkaETLKey key);
+
+	/**
+	 * Fold one raw message into the aggregate and return the result.
+	 */
+	A add(A aggregate, Message message) throws IOException;
+
+	/**
+	 * Merge two partial aggregates and return the result.
+	 */
+	A merge(A aggregate, A other) throws IOException;
+
+	/**
+	 * Serialize an aggregate to be shipped as map output.
+	 */
+	byte[] toBytes(A aggregate) throws IOException;
+
+	/**
+	 * Deserialize an aggregate written by {@link #toBytes}.
+	 */
+	A fromBytes(byte[] bytes, int offset, int length) throws IOException;
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2010 LinkedIn
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.etl;
+
+import java.io.IOException;
+import java.util.Iterator;
+
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reducer;
+import org.apache.hadoop.mapred.Reporter;
+
+/**
+ * KafkaETL combiner merges partial aggregates of the same time bucket on the
+ * map side so that only one value per bucket goes through the shuffle.
+ * 
+ * input -- key: KafkaETLKey (bucket, bucket start time) value: serialized
+ * aggregate
+ * 
+ * output -- same key, one merged aggregate
+ */
+@SuppressWarnings("deprecation")
+public class KafkaETLCombiner implements
+		Reducer<KafkaETLKey, BytesWritable, KafkaETLKey, BytesWritable> {
+
+	protected Props _props;
+	protected String _topic;
+	protected KafkaETLAggregator<Object> _aggregator;
+
+	@Override
+	public void reduce(KafkaETLKey key, Iterator<BytesWritable> values,
+			OutputCollector<KafkaETLKey, BytesWritable> collector,
+			Reporter reporter) throws IOException {
+
+		Object aggregate = _aggregator.create(key);
+		long count = 0;
+		while (values.hasNext()) {
+			BytesWritable value = values.next();
+			aggregate = _aggregator.merge(aggregate,
+					_aggregator.fromBytes(value.getBytes(), 0, value.getLength()));
+			count++;
+		}
+		collector.collect(key, new BytesWritable(_aggregator.toBytes(aggregate)));
+
+		reporter.incrCounter(_topic, "combiner-input", count);
+		reporter.incrCounter(_topic, "combiner-output", 1);
+	}
+
+	@Override
+	public void configure(JobConf conf) {
+		try {
+			_props = KafkaETLUtils.getPropsFromJob(conf);
+			_topic = KafkaETLCommons.getTopic(_props);
+			_aggregator = KafkaETLCommons.getAggregator(_props);
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+		if (_aggregator == null)
+			throw new UndefinedPropertyException("Missing required property '"
+					+ KafkaETLCommons.AGGREGATOR_CLASS + "'");
+	}
+
+	@Override
+	public void close() throws IOException {
+	}
+
+}
@@ -39,6 +39,10 @@ public class KafkaETLCommons {
 	final static int DEFAULT_TIMEOUT = 60000; // one minute
 	public static final String IGNORE_ERRORS = "ignore.errors";
 
+	public static final String AGGREGATOR_CLASS = "kafka.etl.aggregator.class";
+	public static final String AGGREGATOR_MAX_BUCKETS = "kafka.etl.aggregator.max.buckets";
+	final static int DEFAULT_AGGREGATOR_MAX_BUCKETS = 10000;
+
 	/**
 	 * get time granularity property
 	 */
@@ -104,6 +108,36 @@ public class KafkaETLCommons {
 		return props.getInt(CLIENT_TIMEOUT, DEFAULT_TIMEOUT);
 	}
 
+	/**
+	 * get map-side aggregator, or null if the job doesn't aggregate
+	 * @throws Exception 
+	 * 
+	 */
+	@SuppressWarnings("unchecked")
+	public static KafkaETLAggregator<Object> getAggregator(Props props)
+			throws Exception {
+		String className = props.getProperty(AGGREGATOR_CLASS);
+		if (className == null || className.trim().length() == 0)
+			return null;
+		return (KafkaETLAggregator<Object>) Class.forName(className.trim())
+				.newInstance();
+	}
+
+	public static void setAggregatorClass(Props props, String str) {
+		props.setProperty(AGGREGATOR_CLASS, str);
+	}
+
+	/**
+	 * get the maximum number of buckets a mapper keeps in memory before
+	 * flushing its partial aggregates
+	 * @throws Exception 
+	 * 
+	 */
+	public static int getAggregatorMaxBuckets(Props props) throws Exception {
+		return props.getInt(AGGREGATOR_MAX_BUCKETS,
+				DEFAULT_AGGREGATOR_MAX_BUCKETS);
+	}
+
 	public static String getOffsetRoot(Props props) {
 		return props.getProperty(OFFSET_ROOT);
 	}
@@ -189,6 +189,19 @@ public abstract class KafkaETLJob {
 	@SuppressWarnings("rawtypes")
 	abstract protected Class getReducerClass();
 
+	/**
+	 * Get combiner class. By default a KafkaETLCombiner is used if an
+	 * aggregator is configured and no combiner otherwise.
+	 * @return
+	 * @throws Exception
+	 */
+	@SuppressWarnings("rawtypes")
+	protected Class getCombinerClass() throws Exception {
+		if (KafkaETLCommons.getAggregator(_props) != null)
+			return KafkaETLCombiner.class;
+		return null;
+	}
+
 	/**
 	 * Get the number of reducers
 	 * @return
@@ -216,6 +229,11 @@ public abstract class KafkaETLJob {
 		_conf.setMapperClass(getMapperClass());
 		_conf.setReducerClass(getReducerClass());
 
+		@SuppressWarnings("rawtypes")
+		Class combinerClass = getCombinerClass();
+		if (combinerClass != null)
+			_conf.setCombinerClass(combinerClass);
+
 		_conf.setJarByClass(this.getClass());
 
 		_conf.setMapOutputKeyClass(KafkaETLKey.class);
@@ -25,6 +25,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 
 import kafka.api.FetchRequest;
 import kafka.api.MultiFetchResponse;
@@ -55,6 +56,10 @@ import static kafka.api.OffsetRequest.*;
  * key: KafkaETLKey (timestamp, partition) value: BytesWritable
  * 2. final output: offsets in the following format node:topic:partition:offset
  * 
+ * If an aggregator is configured, messages of the same time bucket are folded
+ * into one partial aggregate and the intermediate output is key: KafkaETLKey
+ * (bucket, bucket start time) value: serialized aggregate.
+ * 
  */
 @SuppressWarnings("deprecation")
 public abstract class KafkaETLMapper implements
@@ -87,6 +92,11 @@ public abstract class KafkaETLMapper implements
 
 	protected DateUtils.TimeGranularity _granularity;
 
+	protected KafkaETLAggregator<Object> _aggregator = null;
+	protected Map<KafkaETLKey, Object> _aggregates = null;
+	protected KafkaETLKey _aggregateKey = new KafkaETLKey();
+	protected int _maxBuckets;
+
 	public static enum Status {
 		OUTPUT_AND_CONTINUE, OUTPUT_AND_BREAK, CONTINUE, BREAK
 	};
@@ -251,11 +261,15 @@ public abstract class KafkaETLMapper implements
 					case OUTPUT_AND_CONTINUE:
 					case OUTPUT_AND_BREAK:
 						tempTime = System.currentTimeMillis();
-						ByteBuffer buffer = message.payload();
-						byte[] bytes = new byte[buffer.remaining()];
-						buffer.get(bytes, buffer.position(), bytes.length);
-						collector.collect(new KafkaETLKey(_timestamp,
-								_granularity), new BytesWritable(bytes));
+						if (_aggregator != null) {
+							aggregate(message, collector, reporter);
+						} else {
+							ByteBuffer buffer = message.payload();
+							byte[] bytes = new byte[buffer.remaining()];
+							buffer.get(bytes, buffer.position(), bytes.length);
+							collector.collect(new KafkaETLKey(_timestamp,
+									_granularity), new BytesWritable(bytes));
+						}
 						outputTime += (System.currentTimeMillis() - tempTime);
 
 					}
@@ -276,6 +290,10 @@ public abstract class KafkaETLMapper implements
 			}
 		}
 		_consumer.close();
+
+		tempTime = System.currentTimeMillis();
+		flushAggregates(collector, reporter);
+		outputTime += (System.currentTimeMillis() - tempTime);
 		long endTime = System.currentTimeMillis();
 
 		// output offsets
@@ -318,6 +336,51 @@ public abstract class KafkaETLMapper implements
 
 	}
 
+	/**
+	 * Called by the default implementation of {@link #map} to fold a message
+	 * into the partial aggregate of its time bucket. Partial aggregates are
+	 * flushed once more than _maxBuckets buckets are held in memory.
+	 */
+	protected void aggregate(Message message,
+			OutputCollector<KafkaETLKey, BytesWritable> collector,
+			Reporter reporter) throws IOException {
+		_aggregateKey.set(KafkaETLUtils.getPartition(_timestamp, _granularity),
+				KafkaETLUtils.getStartTime(_timestamp, _granularity));
+
+		Object aggregate = _aggregates.get(_aggregateKey);
+		if (aggregate == null) {
+			if (_aggregates.size() >= _maxBuckets)
+				flushAggregates(collector, reporter);
+			KafkaETLKey key = new KafkaETLKey();
+			key.set(_aggregateKey.getPartition(), _aggregateKey.getTimestamp());
+			aggregate = _aggregator.add(_aggregator.create(key), message);
+			_aggregates.put(key, aggregate);
+		} else {
+			Object updated = _aggregator.add(aggregate, message);
+			if (updated != aggregate)
+				_aggregates.put(_aggregateKey, updated);
+		}
+	}
+
+	/**
+	 * Called by the default implementation of {@link #map} to collect all
+	 * partial aggregates held in memory. Does nothing if no aggregator is
+	 * configured.
+	 */
+	protected void flushAggregates(
+			OutputCollector<KafkaETLKey, BytesWritable> collector,
+			Reporter reporter) throws IOException {
+		if (_aggregator == null || _aggregates.isEmpty())
+			return;
+
+		for (Entry<KafkaETLKey, Object> entry : _aggregates.entrySet()) {
+			collector.collect(entry.getKey(), new BytesWritable(_aggregator
+					.toBytes(entry.getValue())));
+		}
+		reporter.incrCounter(_topic, "aggregated-buckets", _aggregates.size());
+		_aggregates.clear();
+	}
+
 	/**
 	 * Called by the default implementation of {@link #map} to check error code
 	 * to determine whether to continue.
@@ -440,6 +503,15 @@ public abstract class KafkaETLMapper implements
 			_ignoreErrors = _props.getBoolean(KafkaETLCommons.IGNORE_ERRORS,
 					false);
 
+			_aggregator = KafkaETLCommons.getAggregator(_props);
+			if (_aggregator != null) {
+				_maxBuckets = KafkaETLCommons.getAggregatorMaxBuckets(_props);
+				_aggregates = new HashMap<KafkaETLKey, Object>();
+				System.out.println("aggregator="
+						+ _aggregator.getClass().getName() + " maxBuckets="
+						+ _maxBuckets);
+			}
+
 		} catch (Exception e) {
 			throw new RuntimeException(e);
 		}
@@ -32,6 +32,10 @@ import org.apache.hadoop.mapred.Reporter;
  * 
  * input -- key: KafkaETLKey (timestamp, partition) value: BytesWritable
  * 
+ * If an aggregator is configured, the values are partial aggregates which are
+ * merged into one aggregate per time bucket and handed to
+ * {@link #processAggregate}.
+ * 
  */
 @SuppressWarnings("deprecation")
 public abstract class KafkaETLReducer<K, V> implements
@@ -40,6 +44,7 @@ public abstract class KafkaETLReducer<K, V> implements
 	protected Props _props;
 	protected String _topic;
 	protected DateUtils.TimeGranularity _granularity;
+	protected KafkaETLAggregator<Object> _aggregator;
 
 	@Override
 	public void reduce(KafkaETLKey key, Iterator<BytesWritable> values,
@@ -48,16 +53,26 @@ public abstract class KafkaETLReducer<K, V> implements
 
 		reset(key, collector, reporter);
 
-		while (values.hasNext()) {
-			byte[] bytes = values.next().get();
-
-			Message message = new Message(bytes);
-
-			if (!filter(key, message, reporter))
-				collector.collect(generateOutputKey(key, message),
-						generateOutputValue(key, message));
-
-			process(key, message, collector, reporter);
+		if (_aggregator != null) {
+			Object aggregate = _aggregator.create(key);
+			while (values.hasNext()) {
+				BytesWritable value = values.next();
+				aggregate = _aggregator.merge(aggregate, _aggregator.fromBytes(
+						value.getBytes(), 0, value.getLength()));
+			}
+			processAggregate(key, aggregate, collector, reporter);
+		} else {
+			while (values.hasNext()) {
+				byte[] bytes = values.next().get();
+
+				Message message = new Message(bytes);
+
+				if (!filter(key, message, reporter))
+					collector.collect(generateOutputKey(key, message),
+							generateOutputValue(key, message));
+
+				process(key, message, collector, reporter);
+			}
 		}
 
 		processGroup(key, collector, reporter);
@@ -89,6 +104,25 @@ public abstract class KafkaETLReducer<K, V> implements
 	throws IOException{
 	}
 
+	/**
+	 * Called by the default implementation of {@link #reduce} to process the
+	 * merged aggregate of a time bucket when an aggregator is configured. The
+	 * default implementation wraps the serialized aggregate into a message and
+	 * passes it through {@link #filter}, the output generators and
+	 * {@link #process}.
+	 */
+	protected void processAggregate(KafkaETLKey key, Object aggregate,
+			OutputCollector<K, V> collector, Reporter reporter)
+			throws IOException {
+		Message message = new Message(_aggregator.toBytes(aggregate));
+
+		if (!filter(key, message, reporter))
+			collector.collect(generateOutputKey(key, message),
+					generateOutputValue(key, message));
+
+		process(key, message, collector, reporter);
+	}
+
 	/**
 	 * Called by the default implementation of {@link #reduce} to process after
 	 * iterating all values. The default implementation does nothing.
@@ -117,6 +151,11 @@ public abstract class KafkaETLReducer<K, V> implements
 		_props = KafkaETLUtils.getPropsFromJob(conf);
 		_topic = KafkaETLCommons.getTopic(_props);
 		_granularity = KafkaETLCommons.getGranularity(_props);
+		try {
+			_aggregator = KafkaETLCommons.getAggregator(_props);
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
 	}
 
 	@Override
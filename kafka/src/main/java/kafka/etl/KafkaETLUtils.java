@@ -18,7 +18,6 @@ package kafka.etl;
 
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
 import java.io.FileWriter;
 import java.io.IOException;
@@ -182,35 +181,59 @@ public class KafkaETLUtils {
 		fs.moveFromLocalFile(src, outPath);
 	}
 
+	public static final String PROPS_KEY = "kafka.etl.props";
+	public static final String COMPACT_PROPS_KEY = "kafka.etl.props.compact";
+
+	/* the props of the last configuration seen in this JVM; mappers, 
+	 * combiners and reducers of a task (and reused JVMs) share them */
+	private static String _cachedPropsString = null;
+	private static Props _cachedProps = null;
+
+	/**
+	 * Get the job properties from a job configuration. The returned props are
+	 * frozen and shared by all callers that pass the same configuration.
+	 */
 	public static Props getPropsFromJob(Configuration conf) {
-		String propsString = conf.get("kafka.etl.props");
+		// read raw, since expanding ${var} would break the lengths in the compact string
+		String propsString = conf.getRaw(COMPACT_PROPS_KEY);
+		boolean compact = propsString != null;
+		if (!compact)
+			propsString = conf.get(PROPS_KEY);
 		if (propsString == null)
 			throw new UndefinedPropertyException(
-					"The required property kafka.etl.props was not found in the Configuration.");
-		try {
-			ByteArrayInputStream input = new ByteArrayInputStream(
-					propsString.getBytes("UTF-8"));
-			Properties properties = new Properties();
-			properties.load(input);
-			return new Props(properties);
-		} catch (IOException e) {
-			throw new RuntimeException("This is not possible!", e);
+					"The required property " + PROPS_KEY + " was not found in the Configuration.");
+
+		synchronized (KafkaETLUtils.class) {
+			if (propsString.equals(_cachedPropsString))
+				return _cachedProps;
 		}
+
+		Props props;
+		if (compact) {
+			props = Props.fromCompactString(propsString);
+		} else {
+			try {
+				ByteArrayInputStream input = new ByteArrayInputStream(
+						propsString.getBytes("UTF-8"));
+				Properties properties = new Properties();
+				properties.load(input);
+				props = new Props(properties);
+			} catch (IOException e) {
+				throw new RuntimeException("This is not possible!", e);
+			}
+		}
+		props = props.freeze();
+
+		synchronized (KafkaETLUtils.class) {
+			_cachedPropsString = propsString;
+			_cachedProps = props;
+		}
+		return props;
 	}
 
-	 public static void setPropsInJob(Configuration conf, Props props)
-	  {
-	    ByteArrayOutputStream output = new ByteArrayOutputStream();
-	    try
-	    {
-	      props.store(output);
-	      conf.set("kafka.etl.props", new String(output.toByteArray(), "UTF-8"));
-	    }
-	    catch (IOException e)
-	    {
-	      throw new RuntimeException("This is not possible!", e);
-	    }
-	  }
+	public static void setPropsInJob(Configuration conf, Props props) {
+		conf.set(COMPACT_PROPS_KEY, props.toCompactString());
+	}
 	 
 	public static Props readProps(String file) throws IOException {
 		Path path = new Path(file);
@@ -32,12 +32,20 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import org.apache.log4j.Logger;
 
 public class Props extends Properties {
 
 	private static final long serialVersionUID = 1L;
 	private static Logger logger = Logger.getLogger(Props.class);
+
+	private static final char COMPACT_LENGTH_DELIM = ':';
+
+	/* set by freeze(); a frozen Props rejects updates and caches parsed values */
+	private transient boolean _frozen = false;
+	private transient Map<String, Object> _parsed = null;
 	
 	/**
 	 * default constructor
@@ -137,6 +145,7 @@ public class Props extends Properties {
 	 * 
 	 */
 	public void put(Properties properties) {
+		checkNotFrozen();
 		for (String propName : properties.stringPropertyNames()) {
 			super.put(propName, properties.getProperty(propName));
 		}
@@ -205,11 +214,15 @@ public class Props extends Properties {
 			if (value.getClass().isInstance(defaultValue)) {
 				return (T)value;
 			} else if (value instanceof String) {
+				Object cached = getParsed(key, defaultValue.getClass());
+				if (cached != null)
+					return (T) cached;
 				// call constructor(String) to initialize it
 				@SuppressWarnings("rawtypes")
 				Constructor ct = defaultValue.getClass().getConstructor(String.class);
 				String v = ((String)value).trim();
 				Object ret = ct.newInstance(v);
+				putParsed(key, ret);
 				return (T) ret;
 			}
 			else throw new UndefinedPropertyException ("Property " + key + 
@@ -230,11 +243,15 @@ public class Props extends Properties {
 			if (value.getClass().equals(mclass)) {
 				return (T)value;
 			} else if (value instanceof String) {
+				Object cached = getParsed(key, mclass);
+				if (cached != null)
+					return (T) cached;
 				// call constructor(String) to initialize it
 				@SuppressWarnings("rawtypes")
 				Constructor ct = mclass.getConstructor(String.class);
 				String v = ((String)value).trim();
 				Object ret = ct.newInstance(v);
+				putParsed(key, ret);
 				return (T) ret;
 			}
 			else throw new UndefinedPropertyException ("Property " + key + 
@@ -247,6 +264,22 @@ public class Props extends Properties {
 		}
 	}
 
+	/**
+	 * get the cached parsed value of "key" if this Props is frozen and the
+	 * value has been parsed to the given type before
+	 */
+	private Object getParsed(String key, Class<?> mclass) {
+		if (_parsed == null)
+			return null;
+		Object cached = _parsed.get(key);
+		return mclass.isInstance(cached) ? cached : null;
+	}
+
+	private void putParsed(String key, Object value) {
+		if (_parsed != null)
+			_parsed.put(key, value);
+	}
+
 	/**
 	 * get boolean value
 	 * @param key
@@ -456,5 +489,104 @@ public class Props extends Properties {
 		return new Props(p);
 	}
 
+	/**
+	 * get a frozen snapshot of this Props. A frozen Props can be shared
+	 * between threads and tasks: it rejects updates, and the values parsed by
+	 * the typed getters are cached so each value is parsed only once.
+	 * @return
+	 */
+	public Props freeze() {
+		if (_frozen)
+			return this;
+		Props frozen = new Props(this);
+		frozen._parsed = new ConcurrentHashMap<String, Object>();
+		frozen._frozen = true;
+		return frozen;
+	}
+
+	/**
+	 * whether this Props is a frozen snapshot
+	 * @return
+	 */
+	public boolean isFrozen() {
+		return _frozen;
+	}
+
+	private void checkNotFrozen() {
+		if (_frozen)
+			throw new UnsupportedOperationException(
+					"Cannot modify frozen props");
+	}
+
+	@Override
+	public synchronized Object put(Object key, Object value) {
+		checkNotFrozen();
+		return super.put(key, value);
+	}
+
+	@Override
+	public synchronized Object remove(Object key) {
+		checkNotFrozen();
+		return super.remove(key);
+	}
+
+	@Override
+	public synchronized void clear() {
+		checkNotFrozen();
+		super.clear();
+	}
+
+	/**
+	 * serialize all properties into a compact string. Keys are sorted and each
+	 * key and value is written as length:string, so no escaping is needed and
+	 * parsing is a single pass.
+	 * @return
+	 */
+	public String toCompactString() {
+		StringBuilder builder = new StringBuilder();
+		for (String key : new TreeSet<String>(getKeySet())) {
+			appendCompact(builder, key);
+			appendCompact(builder, super.getProperty(key));
+		}
+		return builder.toString();
+	}
+
+	private static void appendCompact(StringBuilder builder, String str) {
+		builder.append(str.length()).append(COMPACT_LENGTH_DELIM).append(str);
+	}
+
+	/**
+	 * build props from a string generated by {@link #toCompactString}
+	 * @param str
+	 * @return
+	 */
+	public static Props fromCompactString(String str) {
+		Props props = new Props();
+		int pos = 0;
+		String key = null;
+		while (pos < str.length()) {
+			int delim = str.indexOf(COMPACT_LENGTH_DELIM, pos);
+			if (delim < 0)
+				throw new IllegalArgumentException(
+						"Invalid compact props at position " + pos);
+			int end = delim + 1 + Integer.parseInt(str.substring(pos, delim));
+			if (end > str.length())
+				throw new IllegalArgumentException(
+						"Invalid compact props at position " + pos);
+			String token = str.substring(delim + 1, end);
+			if (key == null) {
+				key = token;
+			} else {
+				props.setProperty(key, token);
+				key = null;
+			}
+			pos = end;
+		}
+		if (key != null)
+			throw new IllegalArgumentException("Missing value for property '"
+					+ key + "'");
+		return props;
+	}
+
 
 }
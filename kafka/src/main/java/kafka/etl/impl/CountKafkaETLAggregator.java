@@ -0,0 +1,63 @@
+/*
+ * Copyright 2010 LinkedIn
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.etl.impl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import kafka.etl.KafkaETLAggregator;
+import kafka.etl.KafkaETLKey;
+import kafka.message.Message;
+
+/**
+ * Aggregator that counts messages per time bucket. The aggregate is a
+ * one-element array so that it can be updated in place.
+ */
+public class CountKafkaETLAggregator implements KafkaETLAggregator<long[]> {
+
+	@Override
+	public long[] create(KafkaETLKey key) {
+		return new long[1];
+	}
+
+	@Override
+	public long[] add(long[] aggregate, Message message) {
+		aggregate[0]++;
+		return aggregate;
+	}
+
+	@Override
+	public long[] merge(long[] aggregate, long[] other) {
+		aggregate[0] += other[0];
+		return aggregate;
+	}
+
+	@Override
+	public byte[] toBytes(long[] aggregate) {
+		return ByteBuffer.allocate(8).putLong(aggregate[0]).array();
+	}
+
+	@Override
+	public long[] fromBytes(byte[] bytes, int offset, int length)
+			throws IOException {
+		if (length != 8)
+			throw new IOException("Invalid count aggregate of " + length
+					+ " bytes");
+		return new long[] { ByteBuffer.wrap(bytes, offset, length).getLong() };
+	}
+
+}
@@ -18,10 +18,11 @@ package kafka.etl.impl;
 
 import java.io.IOException;
 import java.net.URI;
-import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
 
 import kafka.etl.KafkaETLCommons;
 import kafka.etl.KafkaETLUtils;
@@ -29,10 +30,30 @@ import kafka.etl.Props;
 import kafka.message.ByteBufferMessageSet;
 import kafka.message.Message;
 import kafka.producer.SimpleProducer;
+import kafka.utils.Throttler;
 
 /**
  * Use this class to produce test events to Kafka server. Each event contains a
- * random timestamp in text format.
+ * random timestamp in text format, optionally padded with spaces to the
+ * configured message size.
+ * 
+ * Events are generated by a number of threads, each with its own producers,
+ * and sent in batches as they are generated, so the whole data set is never
+ * held in memory. Supported properties besides kafka.etl.topic, event.count
+ * and kafka.nodes:
+ * 
+ * generator.threads -- number of producing threads (default 1)
+ * generator.batch.size -- number of messages per produce request (default 200)
+ * generator.rate -- total messages per second, 0 for unthrottled (default 0)
+ * generator.topics -- comma separated topics to spread events over (default
+ * kafka.etl.topic)
+ * generator.partitions -- number of partitions per topic to address directly,
+ * 0 to let the broker pick a random partition (default 0)
+ * generator.key.skew -- zipf exponent of the key distribution used to pick the
+ * topic and partition of a batch, 0 for uniform (default 0)
+ * generator.message.size.min/max -- payload size range in bytes (default: the
+ * timestamp text only)
+ * generator.message.size.distribution -- uniform or gaussian (default uniform)
  */
 public class DataGenerator {
 
@@ -40,9 +61,21 @@ public class DataGenerator {
 			System.currentTimeMillis());
 
 	protected Props _props;
-	protected List<SimpleProducer> _producers = null;
+	protected List<URI> _nodes = null;
+	protected List<String> _topics;
 	protected String _topic;
 	protected int _count;
+	protected int _numThreads;
+	protected int _batchSize;
+	protected int _numPartitions;
+	protected int _minSize;
+	protected int _maxSize;
+	protected boolean _gaussian;
+	protected double[] _keyDistribution;
+	protected Throttler _throttler = null;
+	protected AtomicLong _sentMessages = new AtomicLong(0);
+	protected AtomicLong _sentBytes = new AtomicLong(0);
+
 	protected final int TCP_BUFFER_SIZE = 300 * 1000;
 	protected final int CONNECT_TIMEOUT = 20000; // ms
 	protected final int RECONNECT_INTERVAL = Integer.MAX_VALUE; // ms
@@ -50,44 +83,164 @@ public class DataGenerator {
 	public DataGenerator(String id, Props props) throws Exception {
 		_props = props;
 		_topic = props.getProperty("kafka.etl.topic");
-		System.out.println("topics=" + _topic);
+		_topics = props.getStringList("generator.topics", Arrays.asList(_topic));
+		System.out.println("topics=" + _topics);
 		_count = props.getInt("event.count");
 
-		// initialize kafka producer to generate count events
+		_numThreads = props.getInt("generator.threads", 1);
+		_batchSize = props.getInt("generator.batch.size", 200);
+		_numPartitions = props.getInt("generator.partitions", 0);
+		_minSize = props.getInt("generator.message.size.min", 0);
+		_maxSize = props.getInt("generator.message.size.max", _minSize);
+		_gaussian = "gaussian".equalsIgnoreCase(props.getProperty(
+				"generator.message.size.distribution", "uniform"));
+		if (_numThreads < 1 || _batchSize < 1 || _maxSize < _minSize)
+			throw new IllegalArgumentException(
+					"Invalid generator.threads, generator.batch.size or generator.message.size settings");
+
+		int numKeys = _topics.size() * Math.max(_numPartitions, 1);
+		_keyDistribution = zipf(numKeys, props.getDouble("generator.key.skew", 0));
+
+		double rate = props.getDouble("generator.rate", 0);
+		if (rate > 0)
+			_throttler = new Throttler(rate);
+
+		// initialize the addresses of the kafka servers; producers are
+		// created per thread
 		String nodePath = KafkaETLCommons.getNodesPath(_props);
 		System.out.println("node path=" + nodePath);
 		Props nodesProps = KafkaETLUtils.readProps(nodePath);
-		_producers = new ArrayList<SimpleProducer>();
+		_nodes = new ArrayList<URI>();
 		for (String key : nodesProps.stringPropertyNames()) {
 			URI uri = nodesProps.getUri(key);
 			System.out.println("server uri:" + uri.toString());
-			_producers.add(new SimpleProducer(uri.getHost(), uri.getPort(),
-					TCP_BUFFER_SIZE, CONNECT_TIMEOUT, RECONNECT_INTERVAL));
+			_nodes.add(uri);
+		}
+	}
+
+	/**
+	 * cumulative zipf distribution over n keys with exponent s; s = 0 gives
+	 * the uniform distribution
+	 */
+	protected static double[] zipf(int n, double s) {
+		double[] cdf = new double[n];
+		double sum = 0;
+		for (int i = 0; i < n; i++) {
+			sum += 1.0 / Math.pow(i + 1, s);
+			cdf[i] = sum;
+		}
+		for (int i = 0; i < n; i++)
+			cdf[i] /= sum;
+		return cdf;
+	}
+
+	protected int nextKey(Random random) {
+		int index = Arrays.binarySearch(_keyDistribution, random.nextDouble());
+		if (index < 0)
+			index = -index - 1;
+		return Math.min(index, _keyDistribution.length - 1);
+	}
+
+	protected int nextSize(Random random) {
+		if (_maxSize == _minSize)
+			return _minSize;
+		int range = _maxSize - _minSize;
+		if (_gaussian) {
+			double size = _minSize + range / 2.0 + random.nextGaussian() * range
+					/ 6.0;
+			return (int) Math.max(_minSize, Math.min(_maxSize, size));
 		}
+		return _minSize + random.nextInt(range + 1);
 	}
 
-	public void run() throws IOException, URISyntaxException {
+	protected Message nextMessage(Random random) throws IOException {
+		long timestamp = random.nextLong();
+		if (timestamp < 0) timestamp = -timestamp;
+		byte[] text = Long.toString(timestamp).getBytes("UTF8");
+		int size = Math.max(text.length, nextSize(random));
+		byte[] bytes = new byte[size];
+		System.arraycopy(text, 0, bytes, 0, text.length);
+		Arrays.fill(bytes, text.length, size, (byte) ' ');
+		return new Message(bytes);
+	}
+
+	/**
+	 * generate and send count events from one thread
+	 */
+	protected void generate(int threadId, int count) throws IOException {
+		Random random = new Random(RANDOM.nextLong());
+		List<SimpleProducer> producers = new ArrayList<SimpleProducer>();
+		for (URI uri : _nodes)
+			producers.add(new SimpleProducer(uri.getHost(), uri.getPort(),
+					TCP_BUFFER_SIZE, CONNECT_TIMEOUT, RECONNECT_INTERVAL));
+
+		try {
+			List<Message> batch = new ArrayList<Message>(_batchSize);
+			int producerId = threadId % producers.size();
+			for (int sent = 0; sent < count; sent += batch.size()) {
+				batch.clear();
+				int batchSize = Math.min(_batchSize, count - sent);
+				for (int i = 0; i < batchSize; i++)
+					batch.add(nextMessage(random));
 
-		int producerId = RANDOM.nextInt() % _producers.size();
-		SimpleProducer producer = _producers.get(producerId);
+				int key = nextKey(random);
+				String topic = _topics.get(key % _topics.size());
+				ByteBufferMessageSet messages = new ByteBufferMessageSet(batch);
+				SimpleProducer producer = producers.get(producerId);
+				producerId = (producerId + 1) % producers.size();
+				if (_numPartitions > 0)
+					producer.send(topic, key / _topics.size(), messages);
+				else
+					producer.send(topic, messages);
 
-		List<Message> list = new ArrayList<Message>();
-		for (int i = 0; i < _count; i++) {
-			Long timestamp = RANDOM.nextLong();
-			if (timestamp < 0) timestamp = -timestamp;
-			byte[] bytes = timestamp.toString().getBytes("UTF8");
-			Message message = new Message(bytes);
-			list.add(message);
+				_sentMessages.addAndGet(batchSize);
+				_sentBytes.addAndGet(messages.sizeInBytes());
+				if (_throttler != null)
+					_throttler.maybeThrottle(batchSize);
+			}
+		} finally {
+			// close all producers
+			for (SimpleProducer p : producers) {
+				p.close();
+			}
 		}
-		// send events
-		System.out.println(" send " + list.size() + " " + _topic
-				+ " count events to " + producerId);
-		producer.send(_topic, new ByteBufferMessageSet(list));
-
-		// close all producers
-		for (SimpleProducer p : _producers) {
-			p.close();
+	}
+
+	public void run() throws Exception {
+		final List<Exception> errors = new ArrayList<Exception>();
+		List<Thread> threads = new ArrayList<Thread>();
+		long startTime = System.currentTimeMillis();
+
+		for (int i = 0; i < _numThreads; i++) {
+			final int threadId = i;
+			final int count = _count / _numThreads
+					+ (i < _count % _numThreads ? 1 : 0);
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						generate(threadId, count);
+					} catch (Exception e) {
+						synchronized (errors) {
+							errors.add(e);
+						}
+					}
+				}
+			}, "data-generator-" + i);
+			thread.start();
+			threads.add(thread);
 		}
+		for (Thread thread : threads)
+			thread.join();
+
+		double secs = Math.max(System.currentTimeMillis() - startTime, 1) / 1000.0;
+		System.out.println(" sent " + _sentMessages.get() + " events ("
+				+ _sentBytes.get() + " bytes) to " + _topics + " in " + secs
+				+ " seconds: " + (_sentMessages.get() / secs) + " events/sec, "
+				+ (_sentBytes.get() / secs / (1024 * 1024)) + " MB/sec");
+
+		if (!errors.isEmpty())
+			throw errors.get(0);
 	}
 
 	public static void main(String[] args) throws Exception {
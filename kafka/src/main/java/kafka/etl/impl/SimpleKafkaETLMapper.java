@@ -23,7 +23,7 @@ import kafka.message.Message;
 
 /**
  * Simple implementation of KafkaETLMapper. It assumes that 
- * input data are text timestamp (long).
+ * input data are text timestamp (long), optionally padded with spaces.
  */
 public class SimpleKafkaETLMapper extends KafkaETLMapper {
 
@@ -34,7 +34,8 @@ public class SimpleKafkaETLMapper extends KafkaETLMapper {
 		byte[] array = new byte[buf.limit()];
 		buf.get(array);
 		
-		String text = new String(array, "UTF8");
+		// generated events may be padded with spaces
+		String text = new String(array, "UTF8").trim();
 		return Long.valueOf(text);
 	}
 
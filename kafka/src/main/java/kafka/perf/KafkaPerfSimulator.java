@@ -1,8 +1,15 @@
 package kafka.perf;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.management.ManagementFactory;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
+import java.util.Properties;
 import java.util.Random;
 
 import javax.management.MBeanServer;
@@ -13,6 +20,8 @@ import joptsimple.OptionSet;
 
 import kafka.perf.consumer.SimplePerfConsumer;
 import kafka.perf.jmx.BrokerJmxClient;
+import kafka.perf.jmx.BrokerStats;
+import kafka.perf.local.LocalKafkaCluster;
 import kafka.perf.producer.Producer;
 
 
@@ -29,6 +38,13 @@ public class KafkaPerfSimulator implements KafkaSimulatorMXBean
   private static final String MSG_SIZE = "msgSize";
   private static final String FETCH_SIZE = "fetchSize";
   private static final String XAXIS = "xaxis";
+  private static final String WARMUP = "warmup";
+  private static final String RAMP_UP = "rampUp";
+  private static final String REPORT_INTERVAL = "reportInterval";
+  private static final String SCENARIO = "scenario";
+  private static final String LOCAL_BROKERS = "localBrokers";
+  private static final String LOCAL_ZK_PORT = "localZkPort";
+  private static final String LOCAL_BROKER_PORT = "localBrokerPort";
   
   /* Default values */
   private static int numProducer = 20;
@@ -36,6 +52,12 @@ public class KafkaPerfSimulator implements KafkaSimulatorMXBean
   private static int numParts = 10;
   private static int numConsumers = 10;
   private static long timeToRunMs = 60000L * 1; 
+  private static long warmupMs = 0L;
+  private static long rampUpMs = 0L;
+  private static long reportIntervalMs = 10000L;
+  private static int localBrokers = 0;
+  private static int localZkPort = 2181;
+  private static int localBrokerPort = 9092;
 
   private static String kafkaServersURL = "";
   private final static int kafkaServerPort = 9092;
@@ -53,6 +75,7 @@ public class KafkaPerfSimulator implements KafkaSimulatorMXBean
   
   private Producer [] producers;
   private SimplePerfConsumer [] consumers;
+  private final LatencyHistogram latency = new LatencyHistogram();
 
   public void startProducers() throws UnknownHostException
   {
@@ -73,13 +96,27 @@ public class KafkaPerfSimulator implements KafkaSimulatorMXBean
       else
         kafkaServerURL = hosts[random.nextInt(hosts.length)];
 
-      producers[i] = new Producer(topic,kafkaServerURL, kafkaServerPort, kafkaProducerBufferSize, connectionTimeOut, reconnectInterval,
+      producers[i] = new Producer(topic, hostOf(kafkaServerURL), portOf(kafkaServerURL), kafkaProducerBufferSize, connectionTimeOut, reconnectInterval,
                                   messageSize, InetAddress.getLocalHost().getHostAddress()+ producerName +i, batchSize, numParts);
     }
 
-    // Start the threads
+    // Start the threads, spread evenly over the ramp up period
     for(int i = 0; i < numProducer; i++)
+    {
       producers[i].start();
+      if(rampUpMs > 0 && i < numProducer - 1)
+      {
+        try
+        {
+          Thread.sleep(rampUpMs / numProducer);
+        }
+        catch (InterruptedException e)
+        {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    }
 
   }
   
@@ -102,8 +139,9 @@ public class KafkaPerfSimulator implements KafkaSimulatorMXBean
       else
         kafkaServerURL = hosts[random.nextInt(hosts.length)];
 
-      consumers[i] = new SimplePerfConsumer(topic,kafkaServerURL, kafkaServerPort, kafkaProducerBufferSize, connectionTimeOut, reconnectInterval,
-                                  fetchSize, InetAddress.getLocalHost().getHostAddress()+ consumerName +i, this.numParts);
+      consumers[i] = new SimplePerfConsumer(topic, hostOf(kafkaServerURL), portOf(kafkaServerURL), kafkaProducerBufferSize, connectionTimeOut, reconnectInterval,
+                                  fetchSize, InetAddress.getLocalHost().getHostAddress()+ consumerName +i, this.numParts,
+                                  latency);
     }
 
     // Start the threads
@@ -111,13 +149,91 @@ public class KafkaPerfSimulator implements KafkaSimulatorMXBean
       consumers[i].start();
   }
 
+  /**
+   * @param url host or host:port of a broker
+   */
+  private static String hostOf(String url)
+  {
+    int colon = url.indexOf(':');
+    return colon < 0 ? url : url.substring(0, colon);
+  }
+
+  private static int portOf(String url)
+  {
+    int colon = url.indexOf(':');
+    return colon < 0 ? kafkaServerPort : Integer.parseInt(url.substring(colon + 1));
+  }
+
   public KafkaPerfSimulator() throws UnknownHostException
   {
-    startProducers();
+    // start consumers first so that they see the first produced messages
     startConsumers();
+    startProducers();
  
   }
 
+  /**
+   * Discard everything measured so far, e.g. at the end of the warmup phase
+   */
+  public void resetStats()
+  {
+    for(Producer producer : producers)
+      producer.resetStats();
+    for(SimplePerfConsumer consumer : consumers)
+      consumer.resetStats();
+    latency.reset();
+  }
+
+  public void shutdown()
+  {
+    for(Producer producer : producers)
+      producer.shutdown();
+    for(SimplePerfConsumer consumer : consumers)
+      consumer.shutdown();
+  }
+
+  public LatencyHistogram getLatency()
+  {
+    return latency;
+  }
+
+  public long getTotalMessagesSent()
+  {
+    long total = 0;
+    for(Producer producer : producers)
+      total += producer.getMessagesSent();
+    return total;
+  }
+
+  public long getTotalBytesSent()
+  {
+    long total = 0;
+    for(Producer producer : producers)
+      total += producer.getBytesSent();
+    return total;
+  }
+
+  public long getTotalMessagesRec()
+  {
+    long total = 0;
+    for(SimplePerfConsumer consumer : consumers)
+      total += consumer.getMessagesRec();
+    return total;
+  }
+
+  public long getTotalBytesRec()
+  {
+    long total = 0;
+    for(SimplePerfConsumer consumer : consumers)
+      total += consumer.getBytesRec();
+    return total;
+  }
+
+  public String getLatencyPercentiles()
+  {
+    return LatencyHistogram.csvHeader("") + "\n" + latency.toCsv();
+  }
+
 
   public String getMBytesSentPs()
   {
@@ -269,7 +385,7 @@ public class KafkaPerfSimulator implements KafkaSimulatorMXBean
   {
     OptionParser parser = new OptionParser();
     /* required arguments */
-    parser.accepts(KAFKA_SERVER, "kafka server url").withRequiredArg().ofType(String.class);
+    parser.accepts(KAFKA_SERVER, "comma separated kafka servers as host or host:port").withRequiredArg().ofType(String.class);
     parser.accepts(REPORT_FILE, "report file name").withRequiredArg().ofType(String.class);
     parser.accepts(XAXIS, "report xaxis").withRequiredArg().ofType(String.class);
 
@@ -281,6 +397,13 @@ public class KafkaPerfSimulator implements KafkaSimulatorMXBean
     parser.accepts(TEST_TIME, "time to run tests").withOptionalArg().ofType(Integer.class);
     parser.accepts(MSG_SIZE, "message size").withOptionalArg().ofType(Integer.class);
     parser.accepts(FETCH_SIZE, "fetch size").withOptionalArg().ofType(Integer.class);
+    parser.accepts(WARMUP, "seconds to run before measuring").withOptionalArg().ofType(Integer.class);
+    parser.accepts(RAMP_UP, "seconds over which producers are started").withOptionalArg().ofType(Integer.class);
+    parser.accepts(REPORT_INTERVAL, "seconds between time series samples").withOptionalArg().ofType(Integer.class);
+    parser.accepts(SCENARIO, "properties file of option=value; command line options take precedence").withRequiredArg().ofType(String.class);
+    parser.accepts(LOCAL_BROKERS, "number of brokers to run in this JVM instead of using kafkaServer").withOptionalArg().ofType(Integer.class);
+    parser.accepts(LOCAL_ZK_PORT, "zookeeper port of the local brokers").withOptionalArg().ofType(Integer.class);
+    parser.accepts(LOCAL_BROKER_PORT, "port of the first local broker").withOptionalArg().ofType(Integer.class);
 
 
     return parser;
@@ -290,7 +413,7 @@ public class KafkaPerfSimulator implements KafkaSimulatorMXBean
   {
     OptionSet options = parser.parse(args);
 
-    if(!(options.hasArgument(KAFKA_SERVER) || options.hasArgument(REPORT_FILE) 
+    if(!((options.hasArgument(KAFKA_SERVER) || options.hasArgument(LOCAL_BROKERS)) || options.hasArgument(REPORT_FILE) 
          ||  options.hasArgument(XAXIS)))
       printUsage();
       
@@ -320,10 +443,61 @@ public class KafkaPerfSimulator implements KafkaSimulatorMXBean
    
     if(options.hasArgument(FETCH_SIZE))
       fetchSize = ((Integer)options.valueOf(FETCH_SIZE)).intValue();
+
+    if(options.hasArgument(WARMUP))
+      warmupMs = ((Integer)options.valueOf(WARMUP)).intValue() * 1000L;
+
+    if(options.hasArgument(RAMP_UP))
+      rampUpMs = ((Integer)options.valueOf(RAMP_UP)).intValue() * 1000L;
+
+    if(options.hasArgument(REPORT_INTERVAL))
+      reportIntervalMs = ((Integer)options.valueOf(REPORT_INTERVAL)).intValue() * 1000L;
+
+    if(options.hasArgument(LOCAL_BROKERS))
+      localBrokers = ((Integer)options.valueOf(LOCAL_BROKERS)).intValue();
+
+    if(options.hasArgument(LOCAL_ZK_PORT))
+      localZkPort = ((Integer)options.valueOf(LOCAL_ZK_PORT)).intValue();
+
+    if(options.hasArgument(LOCAL_BROKER_PORT))
+      localBrokerPort = ((Integer)options.valueOf(LOCAL_BROKER_PORT)).intValue();
     
     System.out.println("numTopic: " + numTopic);
   }
   
+  /**
+   * Add the options of the scenario file, if any, that are not given on the
+   * command line
+   */
+  private static String[] withScenario(OptionParser parser, String[] args) throws IOException
+  {
+    OptionSet options = parser.parse(args);
+    if(!options.hasArgument(SCENARIO))
+      return args;
+
+    Properties scenario = new Properties();
+    InputStream input = new FileInputStream((String)options.valueOf(SCENARIO));
+    try
+    {
+      scenario.load(input);
+    }
+    finally
+    {
+      input.close();
+    }
+
+    List<String> merged = new ArrayList<String>(Arrays.asList(args));
+    for(String key : scenario.stringPropertyNames())
+    {
+      if(!options.has(key))
+      {
+        merged.add("--" + key);
+        merged.add(scenario.getProperty(key).trim());
+      }
+    }
+    return merged.toArray(new String[merged.size()]);
+  }
+
   private static void printUsage()
   {
     System.out.println("kafka server name is requied");
@@ -333,15 +507,35 @@ public class KafkaPerfSimulator implements KafkaSimulatorMXBean
   public static void main(String[] args) throws Exception {
 
     //create parser and get options
-    getOptions(createParser(), args);
+    OptionParser parser = createParser();
+    getOptions(parser, withScenario(parser, args));
     
-    BrokerJmxClient brokerStats = new BrokerJmxClient(kafkaServersURL, 9999, timeToRunMs);
+    BrokerStats brokerStats;
+    final LocalKafkaCluster cluster;
+    if(localBrokers > 0)
+    {
+      cluster = new LocalKafkaCluster(localBrokers, localZkPort, localBrokerPort, numParts, new Properties());
+      Runtime.getRuntime().addShutdownHook(new Thread()
+      {
+        public void run()
+        {
+          cluster.shutdown();
+        }
+      });
+      cluster.startup();
+      kafkaServersURL = cluster.getBrokerList();
+      brokerStats = cluster;
+    }
+    else
+      brokerStats = new BrokerJmxClient(kafkaServersURL, 9999, timeToRunMs);
+
     KafkaPerfSimulator sim = new KafkaPerfSimulator();
-    PerfTimer timer = new PerfTimer( brokerStats, sim, numConsumers, numProducer,numParts, numTopic, timeToRunMs,reportFileName);
+    PerfTimer timer = new PerfTimer( brokerStats, sim, numConsumers, numProducer,numParts, numTopic, timeToRunMs,reportFileName,
+                                     warmupMs, reportIntervalMs);
     timer.start();
     MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
     ObjectName mbeanName = new ObjectName("kafka.perf:type=Simulator");
     mbs.registerMBean(sim, mbeanName);
-    while(true);
+    timer.join();
   }
 }
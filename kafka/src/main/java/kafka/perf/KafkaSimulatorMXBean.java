@@ -8,4 +8,5 @@ public interface KafkaSimulatorMXBean
   public String getMBytesRecPs();
   public String getMessagesRecPs();
   public String getConsumers();
+  public String getLatencyPercentiles();
 }
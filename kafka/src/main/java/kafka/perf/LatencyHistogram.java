@@ -0,0 +1,143 @@
+package kafka.perf;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock free histogram of latencies in microseconds. Values below 64 are
+ * counted exactly, larger values fall into one of 32 buckets per power of
+ * two, so reported percentiles are within about 3% of the recorded value.
+ * Snapshots of the cumulative counts can be subtracted to get the histogram
+ * of an interval.
+ */
+public class LatencyHistogram
+{
+  private static final int SUB_BUCKETS = 32;
+  private static final int LINEAR_LIMIT = 2 * SUB_BUCKETS;
+  private static final int NUM_BUCKETS = LINEAR_LIMIT + (63 - 6) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts;
+  private final AtomicLong count = new AtomicLong(0L);
+  private final AtomicLong max = new AtomicLong(0L);
+
+  public LatencyHistogram()
+  {
+    counts = new AtomicLongArray(NUM_BUCKETS);
+  }
+
+  private LatencyHistogram(long[] values, long total, long maxValue)
+  {
+    counts = new AtomicLongArray(values);
+    count.set(total);
+    max.set(maxValue);
+  }
+
+  private static int bucketFor(long value)
+  {
+    if(value < LINEAR_LIMIT)
+      return (int)Math.max(value, 0L);
+    int exp = 63 - Long.numberOfLeadingZeros(value);
+    int sub = (int)(value >>> (exp - 5));
+    return LINEAR_LIMIT + (exp - 6) * SUB_BUCKETS + (sub - SUB_BUCKETS);
+  }
+
+  private static long upperBound(int bucket)
+  {
+    if(bucket < LINEAR_LIMIT)
+      return bucket;
+    int exp = (bucket - LINEAR_LIMIT) / SUB_BUCKETS + 6;
+    long sub = (bucket - LINEAR_LIMIT) % SUB_BUCKETS + SUB_BUCKETS;
+    return ((sub + 1) << (exp - 5)) - 1;
+  }
+
+  public void record(long latencyUs)
+  {
+    counts.incrementAndGet(bucketFor(latencyUs));
+    count.incrementAndGet();
+    long current = max.get();
+    while(latencyUs > current && !max.compareAndSet(current, latencyUs))
+      current = max.get();
+  }
+
+  public long getCount()
+  {
+    return count.get();
+  }
+
+  public long getMax()
+  {
+    return max.get();
+  }
+
+  /**
+   * @return the latency in microseconds below which the given percentage of
+   *         the recorded values fall, or 0 if nothing has been recorded
+   */
+  public long getPercentile(double percent)
+  {
+    long total = 0;
+    for(int i = 0; i < NUM_BUCKETS; i++)
+      total += counts.get(i);
+    if(total == 0)
+      return 0;
+    long rank = Math.max(1L, (long)Math.ceil(total * percent / 100.0));
+    long seen = 0;
+    for(int i = 0; i < NUM_BUCKETS; i++)
+    {
+      seen += counts.get(i);
+      if(seen >= rank)
+        return Math.min(upperBound(i), max.get());
+    }
+    return max.get();
+  }
+
+  public LatencyHistogram snapshot()
+  {
+    long[] values = new long[NUM_BUCKETS];
+    long total = 0;
+    for(int i = 0; i < NUM_BUCKETS; i++)
+    {
+      values[i] = counts.get(i);
+      total += values[i];
+    }
+    return new LatencyHistogram(values, total, max.get());
+  }
+
+  /**
+   * @return the histogram of the values recorded between an earlier
+   *         snapshot and this one. The max is that of this histogram.
+   */
+  public LatencyHistogram minus(LatencyHistogram earlier)
+  {
+    long[] values = new long[NUM_BUCKETS];
+    long total = 0;
+    for(int i = 0; i < NUM_BUCKETS; i++)
+    {
+      values[i] = counts.get(i) - earlier.counts.get(i);
+      total += values[i];
+    }
+    return new LatencyHistogram(values, total, max.get());
+  }
+
+  public void reset()
+  {
+    for(int i = 0; i < NUM_BUCKETS; i++)
+      counts.set(i, 0L);
+    count.set(0L);
+    max.set(0L);
+  }
+
+  /**
+   * @return p50, p90, p99, p99.9 and max in milliseconds as comma separated values
+   */
+  public String toCsv()
+  {
+    return getPercentile(50) / 1000.0 + "," + getPercentile(90) / 1000.0 + "," +
+           getPercentile(99) / 1000.0 + "," + getPercentile(99.9) / 1000.0 + "," + getMax() / 1000.0;
+  }
+
+  public static String csvHeader(String prefix)
+  {
+    return prefix + "p50-ms," + prefix + "p90-ms," + prefix + "p99-ms," + prefix + "p99.9-ms," + prefix + "max-ms";
+  }
+}
@@ -4,20 +4,24 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 
-import kafka.perf.jmx.BrokerJmxClient;
+import kafka.perf.jmx.BrokerStats;
 
 public class PerfTimer extends Thread
 {
   private final long timeToRun;
-  private final BrokerJmxClient brokerStats;
+  private final BrokerStats brokerStats;
   private final KafkaPerfSimulator perfSim;
   private final int numConsumers, numProducer,numParts, numTopic;
   private final String reportFile;
-  public PerfTimer(BrokerJmxClient brokerStats,
+  private final long warmupMs;
+  private final long reportIntervalMs;
+  public PerfTimer(BrokerStats brokerStats,
                    KafkaPerfSimulator perfSim, int numConsumers, 
                    int numProducer, int numParts, int numTopic,
                    long timeToRun,
-                   String fileName)
+                   String fileName,
+                   long warmupMs,
+                   long reportIntervalMs)
   {
     this.timeToRun = timeToRun;
     this.brokerStats = brokerStats;
@@ -27,6 +31,8 @@ public class PerfTimer extends Thread
     this.numParts = numParts;
     this.numTopic = numTopic;
     reportFile = fileName;
+    this.warmupMs = warmupMs;
+    this.reportIntervalMs = reportIntervalMs;
   }
 
   public void printMBDataStats() throws Exception
@@ -61,31 +67,97 @@ public class PerfTimer extends Thread
     fstream.close();
   }
 
-  
+  public void printLatencyStats() throws Exception
+  {
+    File file = new File(reportFile + "/Latency.csv");
+    boolean witeHeader = !file.exists();
+    FileWriter fstream = new FileWriter(file, true);
+    BufferedWriter writer = new BufferedWriter(fstream);
+    if(witeHeader)
+      writer.write(perfSim.getXaxisLabel() + "," + LatencyHistogram.csvHeader("latency-") + "\n");
+    writer.write(perfSim.getXAxisVal() + "," + perfSim.getLatency().toCsv());
+
+    writer.newLine();
+    writer.close();
+    fstream.close();
+  }
+
   public void printReport() throws Exception
   {
     String header = "#consumers, #of producers, #of partitions, #of topic, " +
-          "consumer mess/sec,consumer MB/sec, producer mess/sec,producer MB/sec, broker MB write/sec, broker MB read/sec";
+          "consumer mess/sec,consumer MB/sec, producer mess/sec,producer MB/sec, " +
+          LatencyHistogram.csvHeader("latency-") + ", broker MB write/sec, broker MB read/sec";
     String data = numConsumers+ "," + numProducer + "," + numParts+ "," + numTopic + "," +
                        perfSim.getAvgMessagesRecPs() + "," +
                        perfSim.getAvgMBytesRecPs() + "," +
                        perfSim.getAvgMessagesSentPs() + "," +
                        perfSim.getAvgMBytesSentPs() + "," +
+                       perfSim.getLatency().toCsv() + "," +
                        brokerStats.getBrokerStats();
     
     System.out.println(header);
     System.out.println(data);
     printMessageDataStats();
     printMBDataStats();
+    printLatencyStats();
 
   }
 
+  /**
+   * Sample the simulator every reportIntervalMs until timeToRun has passed
+   * and append one row per interval to TimeSeries.csv
+   */
+  public void runTimeSeries() throws Exception
+  {
+    File file = new File(reportFile + "/TimeSeries.csv");
+    boolean witeHeader = !file.exists();
+    BufferedWriter writer = new BufferedWriter(new FileWriter(file, true));
+    if(witeHeader)
+      writer.write(perfSim.getXaxisLabel() + ",elapsed-sec,producer-messages/sec,producer-MB/sec," +
+                   "consumer-messages/sec,consumer-MB/sec," + LatencyHistogram.csvHeader("latency-") + "\n");
+
+    long startMs = System.currentTimeMillis();
+    long lastMs = startMs;
+    long lastSent = perfSim.getTotalMessagesSent(), lastBytesSent = perfSim.getTotalBytesSent();
+    long lastRec = perfSim.getTotalMessagesRec(), lastBytesRec = perfSim.getTotalBytesRec();
+    LatencyHistogram lastLatency = perfSim.getLatency().snapshot();
+    while(lastMs - startMs < timeToRun)
+    {
+      Thread.sleep(Math.min(reportIntervalMs, timeToRun - (lastMs - startMs)));
+
+      long nowMs = System.currentTimeMillis();
+      long sent = perfSim.getTotalMessagesSent(), bytesSent = perfSim.getTotalBytesSent();
+      long rec = perfSim.getTotalMessagesRec(), bytesRec = perfSim.getTotalBytesRec();
+      LatencyHistogram latency = perfSim.getLatency().snapshot();
+      double secs = Math.max(nowMs - lastMs, 1) / 1000.0;
+      writer.write(perfSim.getXAxisVal() + "," + (nowMs - startMs) / 1000.0 + "," +
+                   (sent - lastSent) / secs + "," + (bytesSent - lastBytesSent) / secs / (1024 * 1024) + "," +
+                   (rec - lastRec) / secs + "," + (bytesRec - lastBytesRec) / secs / (1024 * 1024) + "," +
+                   latency.minus(lastLatency).toCsv());
+      writer.newLine();
+      writer.flush();
+
+      lastMs = nowMs;
+      lastSent = sent;
+      lastBytesSent = bytesSent;
+      lastRec = rec;
+      lastBytesRec = bytesRec;
+      lastLatency = latency;
+    }
+    writer.close();
+  }
+
   public void run() {
     try
     {
-      Thread.sleep(timeToRun);
+      if(warmupMs > 0)
+      {
+        Thread.sleep(warmupMs);
+        perfSim.resetStats();
+      }
+      runTimeSeries();
     }
-    catch (InterruptedException e)
+    catch (Exception e)
     {
       e.printStackTrace();
     }
@@ -98,6 +170,7 @@ public class PerfTimer extends Thread
     {
       e.printStackTrace();
     }
+    perfSim.shutdown();
     System.exit(0);
   }
 }
\ No newline at end of file
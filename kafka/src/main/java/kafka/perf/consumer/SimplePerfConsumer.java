@@ -1,5 +1,6 @@
 package kafka.perf.consumer;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
@@ -8,12 +9,18 @@ import scala.collection.Iterator;
 
 import kafka.api.FetchRequest;
 import kafka.api.MultiFetchResponse;
+import kafka.api.OffsetRequest;
+import kafka.common.ErrorMapping;
 import kafka.consumer.SimpleConsumer;
 import kafka.message.ByteBufferMessageSet;
 import kafka.message.Message;
+import kafka.perf.LatencyHistogram;
+import kafka.perf.producer.Producer;
 
 public class SimplePerfConsumer extends Thread
 {
+  private static final long EMPTY_FETCH_BACKOFF_MS = 10;
+
   private SimpleConsumer simpleConsumer;
   private String topic;
   private String consumerName;
@@ -22,12 +29,14 @@ public class SimplePerfConsumer extends Thread
   private AtomicLong messagesRec;
   private AtomicLong lastReportMessageRec;
   private AtomicLong lastReportBytesRec;
-  private long offset = 0;
+  private final long[] offsets;
   private final int numParts;
+  private final LatencyHistogram latency;
+  private volatile boolean running = true;
 
   public SimplePerfConsumer(String topic, String kafkaServerURL, int kafkaServerPort,
                             int kafkaProducerBufferSize, int connectionTimeOut, int reconnectInterval,
-                            int fetchSize, String name, int numParts)
+                            int fetchSize, String name, int numParts, LatencyHistogram latency)
   {
     simpleConsumer = new SimpleConsumer(kafkaServerURL,
                                         kafkaServerPort,
@@ -41,32 +50,101 @@ public class SimplePerfConsumer extends Thread
     lastReportMessageRec = new AtomicLong(System.currentTimeMillis());
     lastReportBytesRec = new AtomicLong(System.currentTimeMillis());
     this.numParts = numParts;
+    this.offsets = new long[numParts];
+    this.latency = latency;
+  }
+
+  private long latestOffset(int partition)
+  {
+    long[] latest = simpleConsumer.getOffsetsBefore(topic, partition, OffsetRequest.LATEST_TIME(), 1);
+    return latest.length > 0 ? latest[0] : 0L;
   }
 
   public void run() {
-    while(true)
+    // only measure messages produced during this run
+    for(int i = 0; i < numParts; i++)
+      offsets[i] = latestOffset(i);
+
+    while(running)
     {
       List<FetchRequest> list = new ArrayList<FetchRequest>();
       for(int i=0 ; i < numParts; i++)
       {
-        FetchRequest req = new FetchRequest(topic, i, offset, fetchSize);
+        FetchRequest req = new FetchRequest(topic, i, offsets[i], fetchSize);
         list.add(req);
       }
       MultiFetchResponse response = simpleConsumer.multifetch(list);
-      if(response.hasNext())
+      long bytesFetched = 0;
+      // responses come back in the order of the requests
+      for(int i = 0; i < numParts && response.hasNext(); i++)
       {
         ByteBufferMessageSet messages = response.next();
-        offset+= messages.validBytes();
-        bytesRec.getAndAdd(messages.sizeInBytes());
-        
+        if(messages.errorCOde() == ErrorMapping.OFFSET_OUT_OF_RANGE_CODE())
+        {
+          offsets[i] = latestOffset(i);
+          continue;
+        }
+        else if(messages.errorCOde() != ErrorMapping.NO_ERROR())
+          continue;
+
+        long now = System.nanoTime();
         Iterator<Message> it =  messages.iterator();
         while(it.hasNext())
         {
-          it.next();
+          ByteBuffer payload = it.next().payload();
+          if(payload.remaining() >= Producer.TIMESTAMP_SIZE)
+            latency.record((now - payload.getLong(payload.position())) / 1000);
           messagesRec.getAndIncrement();
         }
+        offsets[i] += messages.validBytes();
+        bytesRec.getAndAdd(messages.validBytes());
+        bytesFetched += messages.validBytes();
+      }
+
+      if(bytesFetched == 0)
+      {
+        try
+        {
+          Thread.sleep(EMPTY_FETCH_BACKOFF_MS);
+        }
+        catch (InterruptedException e)
+        {
+          return;
+        }
       }
     }
+    simpleConsumer.close();
+  }
+
+  public void shutdown()
+  {
+    running = false;
+  }
+
+  /**
+   * Restart the rate measurements, e.g. at the end of the warmup phase
+   */
+  public void resetStats()
+  {
+    bytesRec.set(0L);
+    messagesRec.set(0L);
+    lastReportMessageRec.set(System.currentTimeMillis());
+    lastReportBytesRec.set(System.currentTimeMillis());
+  }
+
+  public long getMessagesRec()
+  {
+    return messagesRec.get();
+  }
+
+  public long getBytesRec()
+  {
+    return bytesRec.get();
+  }
+
+  public long getOffset(int partition)
+  {
+    return offsets[partition];
   }
 
   public double getMessagesRecPs()
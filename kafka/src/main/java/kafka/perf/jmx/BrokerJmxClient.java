@@ -9,7 +9,7 @@ import javax.management.remote.JMXServiceURL;
 
 import kafka.network.SocketServerStatsMBean;
 
-public class BrokerJmxClient
+public class BrokerJmxClient implements BrokerStats
 {
   private final String host;
   private final int port;
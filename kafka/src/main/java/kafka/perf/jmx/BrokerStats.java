@@ -0,0 +1,12 @@
+package kafka.perf.jmx;
+
+/**
+ * Source of the broker side numbers in the perf report
+ */
+public interface BrokerStats
+{
+  /**
+   * @return broker MB written/sec and MB read/sec as comma separated values
+   */
+  public String getBrokerStats() throws Exception;
+}
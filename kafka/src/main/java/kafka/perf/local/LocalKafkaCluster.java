@@ -0,0 +1,139 @@
+package kafka.perf.local;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.log4j.Logger;
+import org.apache.zookeeper.server.NIOServerCnxn;
+import org.apache.zookeeper.server.ZooKeeperServer;
+
+import kafka.network.SocketServerStatsMBean;
+import kafka.perf.jmx.BrokerStats;
+import kafka.server.KafkaConfig;
+import kafka.server.KafkaServer;
+import kafka.utils.Utils;
+
+/**
+ * A ZooKeeper server and a number of Kafka brokers running inside this JVM
+ * on temporary directories, so perf runs don't need EC2, SSH or remote JMX.
+ * Broker stats are read from the brokers' SocketServerStats directly since
+ * all in-process brokers register their MBean under the same name.
+ */
+public class LocalKafkaCluster implements BrokerStats
+{
+  private static final Logger logger = Logger.getLogger(LocalKafkaCluster.class);
+
+  private final int numBrokers;
+  private final int zkPort;
+  private final int firstBrokerPort;
+  private final int numParts;
+  private final Properties brokerOverrides;
+  private final List<File> dirs = new ArrayList<File>();
+  private final List<KafkaServer> servers = new ArrayList<KafkaServer>();
+  private NIOServerCnxn.Factory zkFactory = null;
+
+  /**
+   * @param brokerOverrides broker properties applied to every broker, e.g.
+   *        log.flush.interval; may be empty
+   */
+  public LocalKafkaCluster(int numBrokers, int zkPort, int firstBrokerPort, int numParts,
+                           Properties brokerOverrides)
+  {
+    this.numBrokers = numBrokers;
+    this.zkPort = zkPort;
+    this.firstBrokerPort = firstBrokerPort;
+    this.numParts = numParts;
+    this.brokerOverrides = brokerOverrides;
+  }
+
+  private File tempDir(String prefix) throws IOException
+  {
+    File dir = File.createTempFile(prefix, "");
+    if(!dir.delete() || !dir.mkdirs())
+      throw new IOException("Could not create temporary directory " + dir);
+    dirs.add(dir);
+    return dir;
+  }
+
+  public void startup() throws Exception
+  {
+    logger.info("Starting local ZooKeeper on port " + zkPort);
+    ZooKeeperServer zookeeper = new ZooKeeperServer(tempDir("kafka-perf-zk-snapshot"),
+                                                    tempDir("kafka-perf-zk-log"), 200);
+    zkFactory = new NIOServerCnxn.Factory(new InetSocketAddress(zkPort));
+    zkFactory.startup(zookeeper);
+
+    for(int i = 0; i < numBrokers; i++)
+    {
+      Properties props = new Properties();
+      props.put("brokerid", Integer.toString(i));
+      props.put("port", Integer.toString(firstBrokerPort + i));
+      props.put("log.dir", tempDir("kafka-perf-logs-" + i).getAbsolutePath());
+      props.put("num.partitions", Integer.toString(numParts));
+      props.put("zk.connect", "localhost:" + zkPort);
+      props.putAll(brokerOverrides);
+
+      logger.info("Starting local broker " + i + " on port " + (firstBrokerPort + i));
+      KafkaServer server = new KafkaServer(new KafkaConfig(props));
+      server.startup();
+      servers.add(server);
+    }
+  }
+
+  public void shutdown()
+  {
+    for(KafkaServer server : servers)
+    {
+      try
+      {
+        server.shutdown();
+      }
+      catch (Exception e)
+      {
+        logger.warn("Error shutting down local broker", e);
+      }
+    }
+    servers.clear();
+    if(zkFactory != null)
+      zkFactory.shutdown();
+    for(File dir : dirs)
+      Utils.rm(dir);
+    dirs.clear();
+  }
+
+  /**
+   * @return the brokers as a comma separated list of host:port
+   */
+  public String getBrokerList()
+  {
+    StringBuffer list = new StringBuffer();
+    for(int i = 0; i < numBrokers; i++)
+    {
+      if(i > 0)
+        list.append(",");
+      list.append("localhost:" + (firstBrokerPort + i));
+    }
+    return list.toString();
+  }
+
+  public List<KafkaServer> getServers()
+  {
+    return servers;
+  }
+
+  public String getBrokerStats()
+  {
+    double written = 0, read = 0;
+    for(KafkaServer server : servers)
+    {
+      SocketServerStatsMBean stats = server.getStats();
+      written += stats.getBytesWrittenPerSecond();
+      read += stats.getBytesReadPerSecond();
+    }
+    return written / (1024 * 1024) + "," + read / (1024 * 1024);
+  }
+}
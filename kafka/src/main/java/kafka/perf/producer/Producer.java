@@ -1,4 +1,5 @@
 package kafka.perf.producer;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
@@ -10,6 +11,13 @@ import kafka.producer.SimpleProducer;
 
 public class Producer extends Thread
 {
+  /**
+   * The first bytes of every payload hold the System.nanoTime at which the
+   * message was created, so consumers in the same JVM can compute the end
+   * to end latency.
+   */
+  public static final int TIMESTAMP_SIZE = 8;
+
   private final SimpleProducer producer;
   private final String topic;
   private final int messageSize;
@@ -20,6 +28,7 @@ public class Producer extends Thread
   private String procudername;
   private int batchSize;
   private int numParts;
+  private volatile boolean running = true;
   
 
   public Producer(String topic, String kafkaServerURL, int kafkaServerPort,
@@ -32,7 +41,7 @@ public class Producer extends Thread
                                  connectionTimeOut,
                                  reconnectInterval);
     this.topic = topic; 
-    this.messageSize = messageSize;
+    this.messageSize = Math.max(messageSize, TIMESTAMP_SIZE);
     procudername = name;
     this.batchSize = batchSize;
     this.numParts = numParts;
@@ -41,12 +50,14 @@ public class Producer extends Thread
 
   public void run() {
     Random random = new Random();
-    while(true)
+    while(running)
     {
       List<Message> messageList = new ArrayList<Message>();
       for(int i = 0; i < batchSize; i++)
       {
-        Message message = new Message(new byte[messageSize]);
+        byte[] payload = new byte[messageSize];
+        ByteBuffer.wrap(payload).putLong(System.nanoTime());
+        Message message = new Message(payload);
         messageList.add(message);
       }
       ByteBufferMessageSet set = new ByteBufferMessageSet(messageList);
@@ -54,6 +65,33 @@ public class Producer extends Thread
       bytesSent.getAndAdd(batchSize * messageSize);
       messagesSent.getAndAdd(messageList.size());
     }
+    producer.close();
+  }
+
+  public void shutdown()
+  {
+    running = false;
+  }
+
+  /**
+   * Restart the rate measurements, e.g. at the end of the warmup phase
+   */
+  public void resetStats()
+  {
+    bytesSent.set(0L);
+    messagesSent.set(0L);
+    lastReportMessageSent.set(System.currentTimeMillis());
+    lastReportBytesSent.set(System.currentTimeMillis());
+  }
+
+  public long getMessagesSent()
+  {
+    return messagesSent.get();
+  }
+
+  public long getBytesSent()
+  {
+    return bytesSent.get();
   }
 
   public double getMessagesSentPs()
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2010 LinkedIn
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.api
+
+import java.nio.ByteBuffer
+import java.nio.channels.WritableByteChannel
+import kafka.network.{Send, Request}
+import kafka.utils.nonthreadsafe
+
+object AckedProducerRequest {
+  /** size of an ack response after its size field: error code, correlation id and offset */
+  val AckSize = 2 + 4 + 8
+
+  def readFrom(buffer: ByteBuffer): AckedProducerRequest = {
+    val correlationId = buffer.getInt
+    new AckedProducerRequest(correlationId, ProducerRequest.readFrom(buffer))
+  }
+}
+
+/**
+ * A produce request that the broker answers with a ProducerAckSend once the messages are appended.
+ * The correlation id is echoed back so the client can match acks to requests.
+ */
+class AckedProducerRequest(val correlationId: Int,
+                           val request: ProducerRequest) extends Request(RequestKeys.AckedProduce) {
+
+  def writeTo(buffer: ByteBuffer) {
+    buffer.putInt(correlationId)
+    request.writeTo(buffer)
+  }
+
+  def sizeInBytes(): Int = 4 + request.sizeInBytes
+
+  override def toString: String = "AckedProducerRequest(" + correlationId + "," + request + ")"
+}
+
+/**
+ * The ack for an AckedProducerRequest, carrying the offset the messages were appended at
+ */
+@nonthreadsafe
+class ProducerAckSend(val correlationId: Int, val offset: Long, val errorCode: Int) extends Send {
+  private val buffer = ByteBuffer.allocate(4 + AckedProducerRequest.AckSize)
+  buffer.putInt(AckedProducerRequest.AckSize)
+  buffer.putShort(errorCode.asInstanceOf[Short])
+  buffer.putInt(correlationId)
+  buffer.putLong(offset)
+  buffer.rewind()
+
+  var complete: Boolean = false
+
+  def writeTo(channel: WritableByteChannel): Int = {
+    expectIncomplete()
+    val written = channel.write(buffer)
+    if(!buffer.hasRemaining)
+      complete = true
+    written
+  }
+}
@@ -23,6 +23,7 @@ import kafka.message.InvalidMessageException
  * A bi-directional mapping between error codes and exceptions x  
  */
 object ErrorMapping {
+  val UNKNOWN_CODE = -1
   val NO_ERROR = 0
   val OFFSET_OUT_OF_RANGE_CODE = 1
   val INVALID_MESSAGE_CODE = 2
@@ -51,6 +51,18 @@ class ConsumerConfig(props: Properties) extends ZKConfig(props) {
   /** the frequency in ms that the consumer offsets are committed to zookeeper */
   val autoCommitIntervalMs = Utils.getInt(props, "autocommit.interval.ms", 10 * 1000)
 
+  /** where consumed offsets are committed: zookeeper, file, or the class name of a ConsumerOffsetStore */
+  val offsetStore = Utils.getString(props, "offset.store", "zookeeper")
+
+  /** the directory used by the file offset store */
+  val offsetStoreDir = Utils.getString(props, "offset.store.dir", null)
+
+  /** how partitions are assigned on a rebalance.
+      range : every consumer releases all its partitions and the sorted partitions are range-partitioned again
+      sticky : consumers keep the partitions they own where possible and only the partitions that must move are
+               released and claimed */
+  val rebalanceStrategy = Utils.getString(props, "rebalance.strategy", ZookeeperConsumerConnector.RangeStrategy)
+
   /** max number of messages buffered for consumption */
   val maxQueuedChunks = Utils.getInt(props, "queuedchunks.max", 100)
 
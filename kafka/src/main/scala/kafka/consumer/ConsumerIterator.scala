@@ -19,7 +19,10 @@ package kafka.consumer
 import kafka.utils.IteratorTemplate
 import org.apache.log4j.Logger
 import java.util.concurrent.{TimeUnit, BlockingQueue}
-import kafka.message.{MessageSet, Message}
+import java.nio.ByteBuffer
+import kafka.common.ErrorMapping
+import kafka.message.{ByteBufferMessageSet, MessageSet, Message}
+import kafka.serializer.BufferDecoder
 
 /**
  * An iterator that blocks until a value can be read from the supplied queue.
@@ -42,28 +45,83 @@ class ConsumerIterator(private val channel: BlockingQueue[FetchedDataChunk], con
   protected def makeNext(): Message = {
     // if we don't have an iterator, get one
     if(current == null || !current.hasNext) {
-      var found: FetchedDataChunk = null
-      if (consumerTimeoutMs < 0)
-        found = channel.take
-      else {
-        found = channel.poll(consumerTimeoutMs, TimeUnit.MILLISECONDS)
-        if (found == null) {
-          logger.debug("Consumer iterator timing out..")
-          throw new ConsumerTimeoutException
-        }
-      }
-      if(found eq ZookeeperConsumerConnector.shutdownCommand) {
-        logger.debug("Received the shutdown command")
-    	  channel.offer(found)
+      val found = ConsumerIterator.takeChunk(channel, consumerTimeoutMs)
+      if(found == null)
         return allDone
-      } else {
-        currentTopicInfo = found.topicInfo
-        current = found.messages.iterator
-      }
+      currentTopicInfo = found.topicInfo
+      current = found.messages.iterator
     }
     current.next
   }
   
 }
 
+object ConsumerIterator {
+  private val logger = Logger.getLogger(classOf[ConsumerIterator])
+
+  /**
+   * Take the next chunk off the queue, or return null once the shutdown command is received
+   */
+  private[consumer] def takeChunk(channel: BlockingQueue[FetchedDataChunk], consumerTimeoutMs: Int): FetchedDataChunk = {
+    var found: FetchedDataChunk = null
+    if (consumerTimeoutMs < 0)
+      found = channel.take
+    else {
+      found = channel.poll(consumerTimeoutMs, TimeUnit.MILLISECONDS)
+      if (found == null) {
+        logger.debug("Consumer iterator timing out..")
+        throw new ConsumerTimeoutException
+      }
+    }
+    if(found eq ZookeeperConsumerConnector.shutdownCommand) {
+      logger.debug("Received the shutdown command")
+      channel.offer(found)
+      return null
+    }
+    found
+  }
+}
+
+/**
+ * An iterator over the events of a stream that hands the decoder a view of each payload in the fetched buffer.
+ * One view is reused for all messages of a chunk, so neither a Message nor a copy of the payload is made
+ * per message.
+ */
+class DecodingConsumerIterator[T](private val channel: BlockingQueue[FetchedDataChunk],
+                                  consumerTimeoutMs: Int,
+                                  private val decoder: BufferDecoder[T]) extends IteratorTemplate[T] {
+
+  private var current: ByteBuffer = null
+  private var currentView: ByteBuffer = null
+  private var currentTopicInfo: PartitionTopicInfo = null
+  private var lastEntrySize = 0
+
+  override def next(): T = {
+    val event = super.next
+    currentTopicInfo.consumed(lastEntrySize)
+    event
+  }
+
+  protected def makeNext(): T = {
+    while(current == null || current.remaining < MessageSet.LogOverhead ||
+          current.remaining < MessageSet.LogOverhead + current.getInt(current.position)) {
+      val found = ConsumerIterator.takeChunk(channel, consumerTimeoutMs)
+      if(found == null)
+        return allDone
+      val messages = found.messages.asInstanceOf[ByteBufferMessageSet]
+      ErrorMapping.maybeThrowException(messages.errorCOde)
+      currentTopicInfo = found.topicInfo
+      current = messages.buffer.slice()
+      currentView = current.duplicate
+    }
+    val size = current.getInt()
+    val payloadStart = current.position + Message.HeaderSize
+    current.position(current.position + size)
+    currentView.limit(current.position)
+    currentView.position(payloadStart)
+    lastEntrySize = MessageSet.LogOverhead + size
+    decoder.toEvent(currentView)
+  }
+}
+
 class ConsumerTimeoutException() extends RuntimeException()
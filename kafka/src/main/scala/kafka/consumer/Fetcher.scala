@@ -77,7 +77,65 @@ class Fetcher(val config: ConsumerConfig, val zkClient : ZkClient) {
       fetcherThread.start
       i +=1
     }
-  }    
+  }
+
+  /**
+   *  Move the fetchers over to the given partitions without disturbing the ones that keep theirs.
+   *  Only the fetcher threads of brokers whose partitions changed are restarted, and the
+   *  restarted threads resume from the fetched offset of the partitions they keep. Queued chunks
+   *  of partitions that are no longer fetched are dropped; those of the kept partitions stay.
+   */
+  def updateConnections(topicInfos: Iterable[PartitionTopicInfo], cluster: Cluster) {
+    val newInfosPerBroker = new mutable.HashMap[Int, List[PartitionTopicInfo]]
+    for(info <- topicInfos)
+      newInfosPerBroker.put(info.brokerId, info :: newInfosPerBroker.getOrElse(info.brokerId, Nil))
+
+    val keptThreads = new mutable.ArrayBuffer[FetcherRunnable]
+    val unchangedBrokers = new mutable.HashSet[Int]
+    for (fetcherThread <- fetcherThreads) {
+      val broker = fetcherThread.broker
+      val unchanged = newInfosPerBroker.get(broker.id) match {
+        case Some(infos) =>
+          cluster.getBroker(broker.id) == broker && sameInfos(infos, fetcherThread.partitionTopicInfos)
+        case None => false
+      }
+      if (unchanged) {
+        keptThreads += fetcherThread
+        unchangedBrokers += broker.id
+      }
+      else
+        fetcherThread.shutdown
+    }
+
+    if (currentTopicInfos != null) {
+      val removed = currentTopicInfos.filter(info => !topicInfos.exists(_ eq info))
+      for (info <- removed)
+        removeChunks(info)
+    }
+    currentTopicInfos = topicInfos
+
+    var i = fetcherThreads.size
+    for ((brokerId, infos) <- newInfosPerBroker if !unchangedBrokers.contains(brokerId)) {
+      val fetcherThread = new FetcherRunnable("FetchRunnable-" + i, zkClient, config, cluster.getBroker(brokerId), infos)
+      keptThreads += fetcherThread
+      fetcherThread.start
+      i += 1
+    }
+    fetcherThreads = keptThreads.toArray
+    logger.info("fetcher kept " + unchangedBrokers.size + " and started " + (fetcherThreads.size - unchangedBrokers.size) +
+      " fetcher threads")
+  }
+
+  private def sameInfos(a: List[PartitionTopicInfo], b: List[PartitionTopicInfo]): Boolean =
+    a.size == b.size && a.forall(info => b.exists(_ eq info))
+
+  private def removeChunks(info: PartitionTopicInfo) {
+    val iter = info.chunkQueue.iterator
+    while (iter.hasNext) {
+      if (iter.next.topicInfo eq info)
+        iter.remove()
+    }
+  }
 }
 
 
@@ -19,6 +19,7 @@ package kafka.consumer
 import java.util.concurrent.BlockingQueue
 import org.apache.log4j.Logger
 import kafka.message.Message
+import kafka.serializer.BufferDecoder
 
 
 /**
@@ -34,4 +35,11 @@ class KafkaMessageStream(val queue: BlockingQueue[FetchedDataChunk], consumerTim
     
   /** Iterator factory method for java */
   def iterator(): ConsumerIterator = iter  
+
+  /**
+   * An iterator of the events decoded straight from the fetched buffers. Use either this or iterator()
+   * on a stream, as both take from the same queue.
+   */
+  def decode[T](decoder: BufferDecoder[T]): DecodingConsumerIterator[T] =
+    new DecodingConsumerIterator[T](queue, consumerTimeoutMs, decoder)
 }
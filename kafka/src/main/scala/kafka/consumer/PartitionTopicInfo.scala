@@ -29,6 +29,12 @@ class PartitionTopicInfo(val topic: String,
                          val consumedOffset: AtomicLong,
                          val fetchedOffset: AtomicLong,
                          val fetchSize: AtomicInteger) {
+
+  /**
+   * The offset last committed for this partition. It starts at the offset the partition was
+   * claimed with, which was read from the offset store.
+   */
+  val committedOffset = new AtomicLong(consumedOffset.get)
   
   /**
    * Record the given number of bytes as having been consumed
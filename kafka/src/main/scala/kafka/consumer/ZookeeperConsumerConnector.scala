@@ -21,10 +21,11 @@ import java.util.concurrent.atomic._
 import scala.collection._
 import org.apache.log4j.Logger
 import kafka.cluster._
+import kafka.consumer.storage.ConsumerOffsetStore
 import kafka.utils._
 import org.I0Itec.zkclient.exception.ZkNodeExistsException
 import java.net.InetAddress
-import org.I0Itec.zkclient.{IZkStateListener, IZkChildListener, ZkClient}
+import org.I0Itec.zkclient.{IZkStateListener, IZkChildListener, ZkClient, ZkConnection}
 import org.apache.zookeeper.Watcher.Event.KeeperState
 
 /**
@@ -59,12 +60,72 @@ import org.apache.zookeeper.Watcher.Event.KeeperState
  *
  * 4. Consumer offset tracking:
  * /consumers/[group_id]/offsets/[topic]/[broker_id-partition_id] --> offset_counter_value
- * Each consumer tracks the offset of the latest message consumed for each partition.
+ * Each consumer tracks the offset of the latest message consumed for each partition. Only offsets
+ * that changed since the last commit are written. The offsets can be kept in another
+ * ConsumerOffsetStore instead, selected by offset.store.
+ *
+ * 5. Rebalancing:
+ * With the default range strategy every rebalance releases all owned partitions and range-partitions the sorted
+ * partitions again. With the sticky strategy each consumer reads the current owners, keeps the partitions it may
+ * keep, and only releases and claims the partitions that move, so the fetchers of the kept partitions keep running.
+ * A sticky rebalance waits for every partition to have an owner, and otherwise retries with the partitions it kept.
  *
  */
 object ZookeeperConsumerConnector {
   val MAX_N_RETRIES = 4
   val shutdownCommand: FetchedDataChunk = new FetchedDataChunk(null, null)
+
+  val RangeStrategy = "range"
+  val StickyStrategy = "sticky"
+
+  /**
+   * Assign the partitions of a topic to the consumer threads, moving as few partitions as possible.
+   * Every consumer thread gets the same share as under the range strategy, with the extra partitions going
+   * first to the threads that already own more than the base share. Each thread keeps as many of its current
+   * partitions as its share allows; the rest, along with unowned partitions and those owned by threads that
+   * are gone, are handed out in sorted order to the threads still short of their share.
+   * The result only depends on its arguments, so all consumers reading the same owners agree on it.
+   *
+   * @param owners the current owning consumer thread of each partition
+   * @return the partitions of each consumer thread
+   */
+  def stickyAssignment(partitions: Seq[String], consumers: Seq[String],
+                       owners: Map[String, String]): Map[String, List[String]] = {
+    val sortedConsumers = consumers.toList.sortWith((s,t) => s < t)
+    val sortedPartitions = partitions.toList.sortWith((s,t) => s < t)
+    val nPartsPerConsumer = sortedPartitions.size / sortedConsumers.size
+    var nConsumersWithExtraPart = sortedPartitions.size % sortedConsumers.size
+
+    val owned = new mutable.HashMap[String, List[String]]
+    for (partition <- sortedPartitions.reverse; owner <- owners.get(partition) if sortedConsumers.contains(owner))
+      owned.put(owner, partition :: owned.getOrElse(owner, Nil))
+
+    val (overShare, rest) = sortedConsumers.partition(c => owned.getOrElse(c, Nil).size > nPartsPerConsumer)
+    val share = new mutable.HashMap[String, Int]
+    for (consumer <- overShare ::: rest) {
+      if (nConsumersWithExtraPart > 0) {
+        share.put(consumer, nPartsPerConsumer + 1)
+        nConsumersWithExtraPart -= 1
+      }
+      else
+        share.put(consumer, nPartsPerConsumer)
+    }
+
+    val assignment = new mutable.HashMap[String, List[String]]
+    val kept = new mutable.HashSet[String]
+    for (consumer <- sortedConsumers) {
+      val keep = owned.getOrElse(consumer, Nil).take(share(consumer))
+      assignment.put(consumer, keep)
+      kept ++= keep
+    }
+    var free = sortedPartitions.filter(!kept.contains(_))
+    for (consumer <- sortedConsumers) {
+      val nMissing = share(consumer) - assignment(consumer).size
+      assignment.put(consumer, assignment(consumer) ::: free.take(nMissing))
+      free = free.drop(nMissing)
+    }
+    assignment
+  }
 }
 
 /**
@@ -83,13 +144,17 @@ class ZookeeperConsumerConnector(val config: ConsumerConfig,
   private var isShutdown = false
   private val shutdownLock = new Object
   private val rebalanceLock = new Object
+  private val commitLock = new Object
   private var fetcher: Option[Fetcher] = None
   private var zkClient: ZkClient = null
+  private var zkConnection: ZkConnection = null
+  private var offsetStore: ConsumerOffsetStore = null
   private val topicRegistry = new Pool[String, Pool[Partition, PartitionTopicInfo]]
   // queues : (topic,consumerThreadId) -> queue
   private val queues = new Pool[Tuple2[String,String], BlockingQueue[FetchedDataChunk]]
   private val scheduler = new KafkaScheduler(1, "Kafka-consumer-autocommit-", false)
   connectZk
+  offsetStore = ConsumerOffsetStore(config, zkClient, zkConnection)
   createFetcher
   if (config.autoCommit) {
     logger.info("starting auto committer every " + config.autoCommitIntervalMs + " ms")
@@ -126,7 +191,9 @@ class ZookeeperConsumerConnector(val config: ConsumerConfig,
 
   private def connectZk() {
     logger.info("Connecting to zookeeper instance at " + config.zkConnect)
-    zkClient = new ZkClient(config.zkConnect, config.zkSessionTimeoutMs, config.zkConnectionTimeoutMs, StringSerializer)
+    // the connection is kept, so that the offset store can issue asynchronous calls on the client's session
+    zkConnection = new ZkConnection(config.zkConnect, config.zkSessionTimeoutMs)
+    zkClient = new ZkClient(zkConnection, config.zkConnectionTimeoutMs, StringSerializer)
   }
 
   def shutdown() {
@@ -135,6 +202,9 @@ class ZookeeperConsumerConnector(val config: ConsumerConfig,
         return
       scheduler.shutdown
       sendShudownToAllQueues
+      commitLock synchronized {
+        offsetStore.close()
+      }
       if (zkClient != null) {
         zkClient.close()
         zkClient = null
@@ -219,23 +289,36 @@ class ZookeeperConsumerConnector(val config: ConsumerConfig,
   }
 
   def commitOffsets() {
-    if (zkClient == null)
-      return
-    for ((topic, infos) <- topicRegistry) {
-      val topicDirs = new ZKGroupTopicDirs(config.groupId, topic)
-      for (info <- infos.values) {
-        val newOffset = info.consumedOffset
-        try {
-          ZkUtils.updatePersistentPath(zkClient, topicDirs.consumerOffsetDir + "/" + info.partition.name,
-            newOffset.toString)
-        }
-        catch {
-          case t: Throwable =>
-            // log it and let it go
-            logger.warn("exception during commitOffsets: " + t + Utils.stackTrace(t))
+    commitPartitionOffsets(for ((topic, infos) <- topicRegistry; info <- infos.values) yield info)
+  }
+
+  private[consumer] def commitPartitionOffsets(partitionInfos: Iterable[PartitionTopicInfo]) {
+    commitLock synchronized {
+      if (zkClient == null)
+        return
+      // only commit the offsets that moved since the last commit
+      val changed = new mutable.ListBuffer[(PartitionTopicInfo, Long)]
+      for (info <- partitionInfos) {
+        val newOffset = info.consumedOffset.get
+        if (newOffset != info.committedOffset.get)
+          changed += ((info, newOffset))
+      }
+      if (changed.isEmpty)
+        return
+
+      try {
+        val committed = Set(offsetStore.commit(config.groupId,
+          changed.map{ case (info, offset) => (info.topic, info.partition.name, offset) }): _*)
+        for ((info, offset) <- changed if committed.contains((info.topic, info.partition.name, offset))) {
+          info.committedOffset.set(offset)
+          if(logger.isDebugEnabled)
+            logger.debug("Committed offset " + offset + " for topic " + info.topic)
         }
-        if(logger.isDebugEnabled)
-          logger.debug("Committed offset " + newOffset + " for topic " + info.topic)
+      }
+      catch {
+        case t: Throwable =>
+          // log it and let it go
+          logger.warn("exception during commitOffsets: " + t + Utils.stackTrace(t))
       }
     }
   }
@@ -320,6 +403,16 @@ class ZookeeperConsumerConnector(val config: ConsumerConfig,
       }         
     }
 
+    private def getPartitionOwners(topicDirs: ZKGroupTopicDirs): Map[String, String] = {
+      val owners = new mutable.HashMap[String, String]
+      for (partition <- ZkUtils.getChildrenParentMayNotExist(zkClient, topicDirs.consumerOwnerDir)) {
+        val owner = ZkUtils.readDataMaybeNull(zkClient, topicDirs.consumerOwnerDir + "/" + partition)
+        if (owner != null)
+          owners.put(partition, owner)
+      }
+      owners
+    }
+
     private def getConsumersPerTopic(group: String) : mutable.Map[String, List[String]] = {
       val consumers = ZkUtils.getChildren(zkClient, dirs.consumerRegistryDir)
       val consumersPerTopicMap = new mutable.HashMap[String, List[String]]
@@ -369,9 +462,12 @@ class ZookeeperConsumerConnector(val config: ConsumerConfig,
           logger.info("end rebalancing consumer " + consumerIdString + " try #" + i)
           if (done)
             return
+          // with the sticky strategy keep what was claimed and retry the rest, otherwise
           // release all partitions, reset state and retry
-          releasePartitionOwnership
-          resetState
+          if (config.rebalanceStrategy != ZookeeperConsumerConnector.StickyStrategy) {
+            releasePartitionOwnership
+            resetState
+          }
           Thread.sleep(config.zkSyncTimeMs)
         }
       }
@@ -396,6 +492,14 @@ class ZookeeperConsumerConnector(val config: ConsumerConfig,
         return true
       }
 
+      if (config.rebalanceStrategy == ZookeeperConsumerConnector.StickyStrategy) {
+        if (!stickyRebalance(cluster, relevantTopicThreadIdsMap, consumersPerTopicMap, partitionsPerTopicMap))
+          return false
+        oldPartitionsPerTopicMap = partitionsPerTopicMap
+        oldConsumersPerTopicMap = consumersPerTopicMap
+        return true
+      }
+
       logger.info("Committing all offsets")
       commitOffsets
 
@@ -442,6 +546,97 @@ class ZookeeperConsumerConnector(val config: ConsumerConfig,
       true
     }
 
+    /**
+     * Move only the partitions whose owner changes. Partitions given up are dropped from the fetchers, their
+     * offsets are committed and then their ownership is released, before any new partition is claimed.
+     */
+    private def stickyRebalance(cluster: Cluster,
+                                relevantTopicThreadIdsMap: Map[String, Set[String]],
+                                consumersPerTopicMap: Map[String, List[String]],
+                                partitionsPerTopicMap: Map[String, List[String]]): Boolean = {
+      val released = new mutable.ListBuffer[(ZKGroupTopicDirs, PartitionTopicInfo)]
+      val toClaim = new mutable.ListBuffer[(ZKGroupTopicDirs, String, String, String)]
+
+      for ((topic, consumerThreadIdSet) <- relevantTopicThreadIdsMap) {
+        val topicDirs = new ZKGroupTopicDirs(group, topic)
+        val curConsumers = consumersPerTopicMap.get(topic).get
+        val curPartitions = partitionsPerTopicMap.get(topic).get
+        val owners = getPartitionOwners(topicDirs)
+        val assignment = ZookeeperConsumerConnector.stickyAssignment(curPartitions, curConsumers, owners)
+
+        logger.info("Consumer " + consumerIdString + " sticky rebalancing the following partitions: " + curPartitions +
+          " for topic " + topic + " with consumers: " + curConsumers)
+
+        // partition -> the thread of this consumer that should own it
+        val wanted = new mutable.HashMap[String, String]
+        for (consumerThreadId <- consumerThreadIdSet) {
+          val partitions = assignment.getOrElse(consumerThreadId, Nil)
+          if (partitions.isEmpty)
+            logger.warn("No broker partions consumed by consumer thread " + consumerThreadId + " for topic " + topic)
+          for (partition <- partitions)
+            wanted.put(partition, consumerThreadId)
+        }
+
+        topicRegistry.putIfNotExists(topic, new Pool[Partition, PartitionTopicInfo])
+        val partitionInfos = topicRegistry.get(topic)
+        val retained = new mutable.HashSet[String]
+        for ((partition, info) <- partitionInfos) {
+          if (wanted.get(partition.name).isDefined && wanted.get(partition.name) == owners.get(partition.name))
+            retained += partition.name
+          else {
+            partitionInfos.remove(partition)
+            released += ((topicDirs, info))
+          }
+        }
+        for ((partition, consumerThreadId) <- wanted if !retained.contains(partition))
+          toClaim += ((topicDirs, partition, topic, consumerThreadId))
+      }
+
+      if (!released.isEmpty) {
+        updateFetcher(cluster)
+        commitPartitionOffsets(released.map(_._2))
+        for ((topicDirs, info) <- released) {
+          val znode = topicDirs.consumerOwnerDir + "/" + info.partition.name
+          ZkUtils.deletePath(zkClient, znode)
+          if(logger.isDebugEnabled)
+            logger.debug("Consumer " + consumerIdString + " releasing " + znode)
+        }
+      }
+
+      var claimedAll = true
+      val claims = toClaim.iterator
+      while (claimedAll && claims.hasNext) {
+        val (topicDirs, partition, topic, consumerThreadId) = claims.next
+        logger.info(consumerThreadId + " attempting to claim partition " + partition)
+        claimedAll = processPartition(topicDirs, partition, topic, consumerThreadId)
+      }
+      // the partitions claimed so far stay registered and are fetched once a retry has claimed the rest
+      if (!claimedAll)
+        return false
+      updateFetcher(cluster)
+      waitForOwners(relevantTopicThreadIdsMap.keys, partitionsPerTopicMap)
+    }
+
+    /**
+     * The sticky assignment is computed from owners read while other consumers are still moving partitions, so a
+     * partition is unowned between its release by the old owner and its claim by the new one. Waits for every
+     * partition to have an owner, re-reading the owners every zkSyncTimeMs. Returns false if some partition is
+     * still unowned after that, so the rebalance is retried against the current owners.
+     */
+    private def waitForOwners(topics: Iterable[String], partitionsPerTopicMap: Map[String, List[String]]): Boolean = {
+      for (i <- 0 until ZookeeperConsumerConnector.MAX_N_RETRIES) {
+        val unowned = for (topic <- topics.toList;
+                           owners = getPartitionOwners(new ZKGroupTopicDirs(group, topic));
+                           partition <- partitionsPerTopicMap.get(topic).get if !owners.contains(partition))
+                        yield partition
+        if (unowned.isEmpty)
+          return true
+        logger.info("Consumer " + consumerIdString + " waiting for the unowned partitions " + unowned + " to be claimed")
+        Thread.sleep(config.zkSyncTimeMs)
+      }
+      false
+    }
+
     private def updateFetcher(cluster: Cluster) {
       // update partitions for fetcher
       var allPartitionInfos : List[PartitionTopicInfo] = Nil
@@ -452,7 +647,11 @@ class ZookeeperConsumerConnector(val config: ConsumerConfig,
               allPartitionInfos.sortWith((s,t) => s.partition < t.partition).map(_.toString).mkString(","))
 
       fetcher match {
-        case Some(f) => f.initConnections(allPartitionInfos, cluster)
+        case Some(f) =>
+          if (config.rebalanceStrategy == ZookeeperConsumerConnector.StickyStrategy)
+            f.updateConnections(allPartitionInfos, cluster)
+          else
+            f.initConnections(allPartitionInfos, cluster)
         case None =>
       }
     }
@@ -479,11 +678,9 @@ class ZookeeperConsumerConnector(val config: ConsumerConfig,
       val partition = Partition.parse(partitionString)
       val partitionTopicInfo = topicRegistry.get(topic)
 
-      val znode = topicDirs.consumerOffsetDir + "/" + partition.name
-      val offsetString = ZkUtils.readDataMaybeNull(zkClient, znode)
       // If first time starting a consumer, use default offset.
       // TODO: handle this better (if client doesn't know initial offsets)
-      val offset : Long = if (offsetString == null) 0 else offsetString.toLong
+      val offset : Long = offsetStore.read(group, topic, partition.name).getOrElse(0L)
       val queue = queues.get((topic, consumerThreadId))
       val consumedOffset = new AtomicLong(offset)
       val fetchedOffset = new AtomicLong(offset)
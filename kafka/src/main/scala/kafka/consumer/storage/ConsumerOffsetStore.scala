@@ -0,0 +1,62 @@
+/*
+ * Copyright 2010 LinkedIn
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.consumer.storage
+
+import kafka.consumer.ConsumerConfig
+import org.I0Itec.zkclient.{ZkClient, ZkConnection}
+
+/**
+ * Where a consumer group keeps the offset it has consumed up to in each broker partition.
+ * Unlike OffsetStorage, which hands out offset ranges per node, this is what the
+ * ZookeeperConsumerConnector reads when it claims a partition and writes when it commits.
+ */
+trait ConsumerOffsetStore {
+
+  /**
+   * Read the committed offset of a partition
+   * @param partition The partition name, in the form brokerId-partId
+   * @return The offset, or None if nothing has been committed yet
+   */
+  def read(group: String, topic: String, partition: String): Option[Long]
+
+  /**
+   * Commit a batch of (topic, partition name, offset) entries. Failures are logged, not thrown.
+   * @return The entries that were committed
+   */
+  def commit(group: String, offsets: Seq[(String, String, Long)]): Seq[(String, String, Long)]
+
+  def close()
+}
+
+object ConsumerOffsetStore {
+
+  /**
+   * Create the offset store selected by offset.store: "zookeeper", "file", or the name of a
+   * ConsumerOffsetStore class with a constructor taking a ConsumerConfig
+   */
+  def apply(config: ConsumerConfig, zkClient: ZkClient, zkConnection: ZkConnection): ConsumerOffsetStore = {
+    config.offsetStore match {
+      case "zookeeper" => new ZookeeperOffsetStore(config, zkClient, zkConnection)
+      case "file" =>
+        if(config.offsetStoreDir == null)
+          throw new IllegalArgumentException("offset.store.dir is required for the file offset store")
+        new FileOffsetStore(config.offsetStoreDir)
+      case className =>
+        Class.forName(className).getConstructor(classOf[ConsumerConfig]).newInstance(config).asInstanceOf[ConsumerOffsetStore]
+    }
+  }
+}
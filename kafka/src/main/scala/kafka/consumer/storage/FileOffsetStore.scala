@@ -0,0 +1,89 @@
+/*
+ * Copyright 2010 LinkedIn
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.consumer.storage
+
+import java.io._
+import java.util.Properties
+import scala.collection._
+import org.apache.log4j.Logger
+import kafka.utils.Utils
+
+/**
+ * Keeps offsets in a local file per consumer group, [dir]/[group_id].offsets, for consumers
+ * that don't need to share offsets with other machines. Every commit rewrites the file and
+ * atomically renames it into place.
+ */
+class FileOffsetStore(val dir: String) extends ConsumerOffsetStore {
+  private val logger = Logger.getLogger(getClass())
+  private val offsetsPerGroup = new mutable.HashMap[String, Properties]
+
+  new File(dir).mkdirs()
+
+  private def file(group: String) = new File(dir, group + ".offsets")
+
+  private def key(topic: String, partition: String) = topic + "/" + partition
+
+  private def offsets(group: String): Properties = {
+    offsetsPerGroup.getOrElseUpdate(group, {
+      val props = new Properties
+      val f = file(group)
+      if (f.exists) {
+        val input = new FileInputStream(f)
+        try {
+          props.load(input)
+        } finally {
+          input.close()
+        }
+      }
+      props
+    })
+  }
+
+  def read(group: String, topic: String, partition: String): Option[Long] = synchronized {
+    val offset = offsets(group).getProperty(key(topic, partition))
+    if (offset == null) None else Some(offset.toLong)
+  }
+
+  def commit(group: String, toCommit: Seq[(String, String, Long)]): Seq[(String, String, Long)] = synchronized {
+    val props = offsets(group)
+    val previous = props.clone.asInstanceOf[Properties]
+    for ((topic, partition, offset) <- toCommit)
+      props.setProperty(key(topic, partition), offset.toString)
+
+    val tmp = new File(dir, group + ".offsets.tmp")
+    try {
+      val output = new FileOutputStream(tmp)
+      try {
+        props.store(output, null)
+        output.getFD.sync()
+      } finally {
+        output.close()
+      }
+      if (!tmp.renameTo(file(group)))
+        throw new IOException("Failed to rename " + tmp + " to " + file(group))
+      toCommit
+    }
+    catch {
+      case e: IOException =>
+        logger.warn("exception during commitOffsets: " + e + Utils.stackTrace(e))
+        offsetsPerGroup.put(group, previous)
+        Nil
+    }
+  }
+
+  def close() { }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2010 LinkedIn
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.consumer.storage
+
+import java.util.concurrent.{ConcurrentLinkedQueue, CountDownLatch, TimeUnit}
+import scala.collection._
+import org.apache.log4j.Logger
+import org.apache.zookeeper.{AsyncCallback, KeeperException}
+import org.apache.zookeeper.data.Stat
+import org.I0Itec.zkclient.{ZkClient, ZkConnection}
+import kafka.utils.{Utils, ZKConfig, ZkUtils, ZKGroupTopicDirs}
+
+/**
+ * Keeps offsets in /consumers/[group_id]/offsets/[topic]/[broker_id-partition_id].
+ *
+ * A commit issues all writes asynchronously on the ZooKeeper handle of the ZkClient's connection and
+ * then waits for the whole batch, so a commit of N partitions costs about one round trip instead of N.
+ * The ZkClient replaces that handle when its session expires, and writes failing meanwhile are
+ * committed again next time. Nodes that don't exist yet are created synchronously through the ZkClient.
+ */
+class ZookeeperOffsetStore(val config: ZKConfig, val zkClient: ZkClient, val zkConnection: ZkConnection)
+  extends ConsumerOffsetStore {
+  private val logger = Logger.getLogger(getClass())
+
+  private def path(group: String, topic: String, partition: String) =
+    new ZKGroupTopicDirs(group, topic).consumerOffsetDir + "/" + partition
+
+  def read(group: String, topic: String, partition: String): Option[Long] = {
+    val offsetString = ZkUtils.readDataMaybeNull(zkClient, path(group, topic, partition))
+    if (offsetString == null) None else Some(offsetString.toLong)
+  }
+
+  def commit(group: String, offsets: Seq[(String, String, Long)]): Seq[(String, String, Long)] = {
+    val latch = new CountDownLatch(offsets.size)
+    val missing = new ConcurrentLinkedQueue[(String, String, Long)]
+    val failed = new ConcurrentLinkedQueue[(String, String, Long)]
+    val zookeeper = zkConnection.getZookeeper
+    for (offset <- offsets) {
+      val (topic, partition, value) = offset
+      zookeeper.setData(path(group, topic, partition), value.toString.getBytes("UTF-8"), -1,
+        new AsyncCallback.StatCallback {
+          def processResult(rc: Int, path: String, ctx: Object, stat: Stat) {
+            if (rc == KeeperException.Code.NONODE.intValue)
+              missing.add(offset)
+            else if (rc != KeeperException.Code.OK.intValue) {
+              logger.warn("exception during commitOffsets for " + path + ": " + KeeperException.Code.get(rc))
+              failed.add(offset)
+            }
+            latch.countDown
+          }
+        }, null)
+    }
+
+    if (!latch.await(config.zkSessionTimeoutMs, TimeUnit.MILLISECONDS)) {
+      logger.warn("timed out committing " + offsets.size + " offsets for group " + group)
+      return Nil
+    }
+
+    // the first commit of a partition creates its node and parents
+    val iter = missing.iterator
+    while (iter.hasNext) {
+      val offset = iter.next
+      val (topic, partition, value) = offset
+      try {
+        ZkUtils.updatePersistentPath(zkClient, path(group, topic, partition), value.toString)
+      }
+      catch {
+        case t: Throwable =>
+          logger.warn("exception during commitOffsets: " + t + Utils.stackTrace(t))
+          failed.add(offset)
+      }
+    }
+
+    if (failed.isEmpty)
+      offsets
+    else {
+      val failedSet = new mutable.HashSet[(String, String, Long)]
+      val failedIter = failed.iterator
+      while (failedIter.hasNext)
+        failedSet += failedIter.next
+      offsets.filter(!failedSet.contains(_))
+    }
+  }
+
+  /**
+   * Nothing to do, the session belongs to the ZkClient
+   */
+  def close() { }
+}
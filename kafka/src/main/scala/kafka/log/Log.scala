@@ -31,6 +31,9 @@ import java.util._
 object Log {
   val FILE_SUFFIX = ".kafka"
 
+  /* The file the next segment is preallocated in, until it is renamed after its start offset on roll */
+  val PREALLOCATED_FILE = "next" + FILE_SUFFIX + ".preallocated"
+
   /**
    * Find a given range object in a list of ranges by a value in that range. Does a binary search over the ranges
    * but instead of checking for equality looks within the range. Takes the array size as an option in case
@@ -81,9 +84,19 @@ class LogSegment(val file: File, val messageSet: FileMessageSet, val start: Long
 
 /**
  * An append-only log for storing messages. 
+ *
+ * With preallocation the next segment is created and sized on the given segment scheduler while the current
+ * one fills up, so rolling only flushes the current one, renames the next one and swaps it in. The rolled
+ * segment is then trimmed to its written size on the segment scheduler too.
  */
 @threadsafe
-class Log(val dir: File, val maxSize: Long, val flushInterval: Int) {
+class Log(val dir: File, val maxSize: Long, val flushInterval: Int, val preallocate: Boolean, val pretouch: Boolean,
+          segmentScheduler: KafkaScheduler) {
+
+  def this(dir: File, maxSize: Long, flushInterval: Int) = this(dir, maxSize, flushInterval, false, false, null)
+
+  if(preallocate && segmentScheduler == null)
+    throw new IllegalArgumentException("Preallocating segments needs a segment scheduler")
 
   private val logger = Logger.getLogger(classOf[Log])
 
@@ -102,10 +115,24 @@ class Log(val dir: File, val maxSize: Long, val flushInterval: Int) {
   /* The name of this log */
   val name  = dir.getName()
 
+  /* The byte offset the next append goes to, maintained on append so it can be read without a flush */
+  private val nextOffset = new AtomicLong(segments.view.last.start + segments.view.last.messageSet.sizeInBytes)
+
+  /* The total size of all segments but the active one, maintained on roll and delete */
+  private val closedSegmentsSize = new AtomicLong(segments.view.dropRight(1).foldLeft(0L)(_ + _.size))
+
+  /* The preallocated next segment, if it is ready */
+  private var preallocated: FileMessageSet = null
+  private val preallocating = new AtomicBoolean(false)
+  @volatile private var closed = false
+  maybePreallocate()
+
   /* Load the log segments from the log files on disk */
   private def loadSegments(): SegmentList[LogSegment] = {
     // open all the segments read-only
     val accum = new ArrayList[LogSegment]
+    // a preallocated segment that was never rolled to holds no data
+    new File(dir, Log.PREALLOCATED_FILE).delete()
     val ls = dir.listFiles()
     if(ls != null) {
       for(file <- ls if file.isFile && file.toString.endsWith(Log.FILE_SUFFIX)) {
@@ -133,6 +160,7 @@ class Log(val dir: File, val maxSize: Long, val flushInterval: Int) {
           else 1
         }
       })
+      trimPreallocatedSegments(accum)
       validateSegments(accum)
 
       // run recovery on the final section and make it mutable
@@ -145,6 +173,33 @@ class Log(val dir: File, val maxSize: Long, val flushInterval: Int) {
     new SegmentList(accum.toArray(new Array[LogSegment](accum.size)))
   }
 
+  /**
+   * Cut off the preallocated space of segments that were rolled but not trimmed before a shutdown, and run
+   * recovery on them, so that validation catches any of their messages that didn't make it to disk
+   */
+  private def trimPreallocatedSegments(segments: ArrayList[LogSegment]) {
+    for(i <- 0 until segments.size - 1) {
+      val curr = segments.get(i)
+      val expected = segments.get(i + 1).start - curr.start
+      if(curr.size > expected) {
+        logger.info("Trimming " + (curr.size - expected) + " preallocated bytes off " + curr.file.getAbsolutePath())
+        curr.messageSet.close()
+        val file = new RandomAccessFile(curr.file, "rw")
+        try {
+          file.setLength(expected)
+        } finally {
+          file.close()
+        }
+        val recovered = new FileMessageSet(curr.file, true, new AtomicBoolean(true))
+        if(recovered.sizeInBytes < expected)
+          logger.error("Recovery truncated " + (expected - recovered.sizeInBytes) + " bytes of invalid messages off " +
+                       curr.file.getAbsolutePath())
+        recovered.close()
+        segments.set(i, new LogSegment(curr.file, new FileMessageSet(curr.file, false), curr.start))
+      }
+    }
+  }
+
   /**
    * Check that the ranges and sizes add up, otherwise we have lost some data somewhere
    */
@@ -170,6 +225,8 @@ class Log(val dir: File, val maxSize: Long, val flushInterval: Int) {
    */
   def close() {
     lock synchronized {
+      closed = true
+      discardPreallocated()
       for(seg <- segments.view)
         seg.messageSet.close()
     }
@@ -179,7 +236,7 @@ class Log(val dir: File, val maxSize: Long, val flushInterval: Int) {
    * Append this message set to the active segment of the log, rolling over to a fresh segment if necessary.
    * Returns the offset at which the messages are written.
    */
-  def append(messages: MessageSet): Unit = {
+  def append(messages: MessageSet): Long = {
     // validate the messages
     var numberOfMessages = 0
     for(message <- messages) {
@@ -190,9 +247,12 @@ class Log(val dir: File, val maxSize: Long, val flushInterval: Int) {
     // they are valid, insert them in the log
     lock synchronized {
       val segment = segments.view.last
+      val offset = nextOffset.get
       segment.messageSet.append(messages)
+      nextOffset.set(segment.start + segment.messageSet.sizeInBytes)
       maybeFlush(numberOfMessages)
       maybeRoll(segment)
+      offset
     }
   }
 
@@ -220,24 +280,21 @@ class Log(val dir: File, val maxSize: Long, val flushInterval: Int) {
       // if we are deleting everything, create a new empty segment
       if(numToDelete == view.size)
         roll()
+      closedSegmentsSize.addAndGet(-deletable.foldLeft(0L)(_ + _.messageSet.sizeInBytes))
       segments.trunc(numToDelete)
     }
   }
 
   /**
-   * Get the size of the log in bytes
+   * Get the size of the log in bytes, as far as it has been flushed
    */
   def size: Long =
-    segments.view.foldLeft(0L)(_ + _.size)
+    closedSegmentsSize.get + segments.view.last.size
 
   /**
    * The byte offset of the message that will be appended next.
    */
-  def nextAppendOffset: Long = {
-    flush
-    val last = segments.view.last
-    last.start + last.size
-  }
+  def nextAppendOffset: Long = nextOffset.get
 
   /**
    *  get the current high watermark of the log
@@ -258,12 +315,77 @@ class Log(val dir: File, val maxSize: Long, val flushInterval: Int) {
   def roll() {
     lock synchronized {
       val last = segments.view.last
-      val newOffset = nextAppendOffset
+      // flush the segment being closed before the next one exists, so that a crash can't leave messages of any
+      // but the last segment unflushed
+      last.messageSet.flush()
+      val newOffset = nextOffset.get
       val newFile = new File(dir, nameFromOffset(newOffset))
       if(logger.isDebugEnabled)
         logger.debug("Rolling log '" + name + "' to " + newFile.getName())
-      segments.append(new LogSegment(newFile, new FileMessageSet(newFile, true), newOffset))
+      var set: FileMessageSet = null
+      if(preallocated != null) {
+        if(new File(dir, Log.PREALLOCATED_FILE).renameTo(newFile))
+          set = preallocated
+        else {
+          logger.warn("Could not rename the preallocated segment of log '" + name + "' to " + newFile.getName())
+          discardPreallocated()
+        }
+        preallocated = null
+      }
+      if(set == null)
+        set = new FileMessageSet(newFile, true)
+      segments.append(new LogSegment(newFile, set, newOffset))
+      closedSegmentsSize.addAndGet(last.messageSet.sizeInBytes)
+
+      if(preallocate) {
+        segmentScheduler.submit(() => trimSegment(last))
+        maybePreallocate()
+      }
+    }
+  }
+
+  /**
+   * Cut off the unused preallocated space of a rolled segment
+   */
+  private def trimSegment(segment: LogSegment) {
+    val live = lock synchronized { !segment.deleted && !closed }
+    // the segment may still get deleted or closed while it is trimmed
+    if(live)
+      Utils.swallow(logger.warn, segment.messageSet.trim())
+  }
+
+  /**
+   * Start preparing the next segment in the background, unless it is already prepared or being prepared
+   */
+  private def maybePreallocate() {
+    if(preallocate && preallocated == null && preallocating.compareAndSet(false, true)) {
+      segmentScheduler.submit(() => {
+        try {
+          val set = new FileMessageSet(new File(dir, Log.PREALLOCATED_FILE), maxSize, pretouch)
+          lock synchronized {
+            if(closed) {
+              Utils.swallow(logger.warn, set.close())
+              new File(dir, Log.PREALLOCATED_FILE).delete()
+            }
+            else
+              preallocated = set
+          }
+        } finally {
+          preallocating.set(false)
+        }
+      })
+    }
+  }
+
+  /**
+   * Close and delete the preallocated segment, if there is one
+   */
+  private def discardPreallocated() {
+    if(preallocated != null) {
+      Utils.swallow(logger.warn, preallocated.close())
+      preallocated = null
     }
+    new File(dir, Log.PREALLOCATED_FILE).delete()
   }
 
   /**
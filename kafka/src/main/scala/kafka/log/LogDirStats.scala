@@ -0,0 +1,60 @@
+/*
+ * Copyright 2010 LinkedIn
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.log
+
+import java.io.File
+import kafka.utils._
+
+trait LogDirStatsMBean {
+  def getPath(): String
+  def getNumberOfLogs: Int
+  def getSize(): Long
+  def getUsableSpace(): Long
+  def getFlushesPerSecond: Double
+  def getAvgFlushMs: Double
+  def getMaxFlushMs: Double
+  def getNumFlushes: Long
+}
+
+/**
+ * Size and flush statistics of one log directory
+ */
+@threadsafe
+class LogDirStats(val dir: File, private val logs: Pool[String, Log], monitorDurationNs: Long) extends LogDirStatsMBean {
+
+  private val flushTimeStats = new SnapshotStats(monitorDurationNs)
+
+  def this(dir: File, logs: Pool[String, Log]) = this(dir, logs, 30L * Time.NsPerSec)
+
+  def recordFlush(durationNs: Long) = flushTimeStats.recordRequestMetric(durationNs)
+
+  def getPath(): String = dir.getAbsolutePath
+
+  def getNumberOfLogs: Int = logs.size
+
+  def getSize(): Long = logs.values.foldLeft(0L)(_ + _.size)
+
+  def getUsableSpace(): Long = dir.getUsableSpace
+
+  def getFlushesPerSecond: Double = flushTimeStats.getRequestsPerSecond
+
+  def getAvgFlushMs: Double = flushTimeStats.getAvgMetric / (1000.0 * 1000.0)
+
+  def getMaxFlushMs: Double = flushTimeStats.getMaxMetric / (1000.0 * 1000.0)
+
+  def getNumFlushes: Long = flushTimeStats.getNumRequests
+}
@@ -21,12 +21,15 @@ import org.apache.log4j.Logger
 import kafka.utils._
 import scala.actors.Actor
 import scala.actors.Actor._
-import java.util.concurrent.CountDownLatch
+import java.util.concurrent.{Callable, CountDownLatch, ExecutionException, Executors}
+import scala.collection.mutable.ArrayBuffer
 import kafka.server.{KafkaConfig, KafkaZooKeeper}
 import kafka.common.WrongPartitionException
 
 /**
- * The guy who creates and hands out logs
+ * The guy who creates and hands out logs. Logs may be spread over several log directories, e.g. one per disk;
+ * a new log goes to the directory holding the fewest logs, and each directory has its own flusher thread, and
+ * with preallocation its own thread preparing and trimming the segments of its logs.
  */
 @threadsafe
 class LogManager(val config: KafkaConfig,
@@ -35,10 +38,14 @@ class LogManager(val config: KafkaConfig,
                  val logCleanupIntervalMs: Long,
                  val logCleanupMinAgeMs: Long) {
   
-  val logDir: File = new File(config.logDir)
+  val logDirs: Seq[File] = config.logDirs.map(new File(_).getAbsoluteFile)
+  /* the first log directory */
+  val logDir: File = logDirs.head
   private val numPartitions = config.numPartitions
   private val maxSize: Long = config.logFileSize
   private val flushInterval = config.flushInterval
+  private val preallocate = config.logPreallocate
+  private val pretouch = config.logPreallocateTouch
   private val topicPartitionsMap = config.topicPartitionsMap
   private val logger = Logger.getLogger(classOf[LogManager])
   private val logCreationLock = new Object
@@ -46,36 +53,35 @@ class LogManager(val config: KafkaConfig,
   private var kafkaZookeeper: KafkaZooKeeper = null
   private var zkActor: Actor = null
   private val startupLatch: CountDownLatch = if (config.enableZookeeper) new CountDownLatch(1) else null
-  private val logFlusherScheduler = new KafkaScheduler(1, "kafka-logflusher-", false)
   private val logFlushIntervalMap = config.flushIntervalMap
+  if(logDirs.map(_.getPath).toSet.size != logDirs.size)
+    throw new IllegalArgumentException("Duplicate log directories in " + logDirs.mkString(","))
+  private val logFlusherSchedulers = logDirs.zipWithIndex.map(d => new KafkaScheduler(1, "kafka-logflusher-" + d._2 + "-", false))
+  private val segmentSchedulers: Map[File, KafkaScheduler] =
+    if(!preallocate) Map()
+    else Map(logDirs.zipWithIndex.map(d => (d._1, new KafkaScheduler(1, "kafka-log-segment-" + d._2 + "-", false))): _*)
 
-  /* Initialize a log for each subdirectory of the main log directory */
+  /* The logs by topic and partition, and the logs in each log directory by name */
   private val logs = new Pool[String, Pool[Int, Log]]()
-  if(!logDir.exists()) {
-    logger.info("No log directory found, creating '" + logDir.getAbsolutePath() + "'")
-    logDir.mkdirs()
-  }
-  if(!logDir.isDirectory() || !logDir.canRead())
-    throw new IllegalArgumentException(logDir.getAbsolutePath() + " is not a readable log directory.")
-  val subDirs = logDir.listFiles()
-  if(subDirs != null) {
-    for(dir <- subDirs) {
-      if(!dir.isDirectory()) {
-        logger.warn("Skipping unexplainable file '" + dir.getAbsolutePath() + "'--should it be there?")
-      } else {
-        logger.info("Loading log '" + dir.getName() + "'")
-        val log = new Log(dir, maxSize, flushInterval)
-        val topicPartion = Utils.getTopicPartition(dir.getName)
-        logs.putIfNotExists(topicPartion._1, new Pool[Int, Log]())
-        val parts = logs.get(topicPartion._1)
-        parts.put(topicPartion._2, log)
-      }
+  private val dirLogs = Map(logDirs.map(dir => (dir, new Pool[String, Log]())): _*)
+  private val dirStats = Map(logDirs.map(dir => (dir, new LogDirStats(dir, dirLogs(dir)))): _*)
+  for(dir <- logDirs) {
+    if(!dir.exists()) {
+      logger.info("No log directory found, creating '" + dir.getAbsolutePath() + "'")
+      dir.mkdirs()
     }
+    if(!dir.isDirectory() || !dir.canRead())
+      throw new IllegalArgumentException(dir.getAbsolutePath() + " is not a readable log directory.")
   }
+
+  /* Initialize a log for each subdirectory of the log directories */
+  loadLogs()
   
-  // initialize jmx monitoring for the logs
+  // initialize jmx monitoring for the logs and log directories
   for(log <- getLogIterator)
     Utils.registerMBean(new LogStats(log), "kafka:type=kafka.logs." + log.dir.getName)
+  for((dir, i) <- logDirs.zipWithIndex)
+    Utils.registerMBean(dirStats(dir), "kafka:type=kafka.logdirs." + i)
   
   /* Schedule the cleanup task to delete old logs */
   if(scheduler != null) {
@@ -122,7 +128,73 @@ class LogManager(val config: KafkaConfig,
       startupLatch.countDown
     }
     logger.info("Starting log flusher every " + config.flushSchedulerThreadRate + " ms with the following overrides " + logFlushIntervalMap)
-    logFlusherScheduler.scheduleWithRate(flushAllLogs, 30 * 1000, config.flushSchedulerThreadRate)
+    for((dir, scheduler) <- logDirs.zip(logFlusherSchedulers))
+      scheduler.scheduleWithRate(() => flushLogs(dir), 30 * 1000, config.flushSchedulerThreadRate)
+  }
+
+  /**
+   * Load the logs of all log directories, recovering each directory in its own thread
+   */
+  private def loadLogs() {
+    val executor = Executors.newFixedThreadPool(logDirs.size)
+    try {
+      val loading = logDirs.map(dir => executor.submit(new Callable[Seq[Log]] {
+        def call(): Seq[Log] = loadLogsIn(dir)
+      }))
+      for(loaded <- loading) {
+        val loadedLogs = try {
+          loaded.get
+        } catch {
+          case e: ExecutionException => throw e.getCause
+        }
+        for(log <- loadedLogs)
+          addLog(log)
+      }
+    } finally {
+      executor.shutdown()
+    }
+  }
+
+  private def loadLogsIn(logDir: File): Seq[Log] = {
+    val loaded = new ArrayBuffer[Log]
+    val subDirs = logDir.listFiles()
+    if(subDirs != null) {
+      for(dir <- subDirs) {
+        if(!dir.isDirectory()) {
+          logger.warn("Skipping unexplainable file '" + dir.getAbsolutePath() + "'--should it be there?")
+        } else {
+          logger.info("Loading log '" + dir.getName() + "' from " + logDir.getAbsolutePath)
+          loaded += new Log(dir, maxSize, flushInterval, preallocate, pretouch, segmentSchedulers.getOrElse(logDir, null))
+        }
+      }
+    }
+    loaded
+  }
+
+  /**
+   * Make a log known by its topic and partition and by its log directory
+   */
+  private def addLog(log: Log) {
+    val topicPartition = Utils.getTopicPartition(log.name)
+    logs.putIfNotExists(topicPartition._1, new Pool[Int, Log]())
+    val existing = logs.get(topicPartition._1).putIfNotExists(topicPartition._2, log)
+    if(existing != null)
+      throw new IllegalStateException("Log '" + log.name + "' found in both " + existing.dir.getParent + " and " + log.dir.getParent)
+    dirLogs(log.dir.getParentFile).put(log.name, log)
+  }
+
+  /**
+   * The log directory holding the fewest logs, or the fewest bytes among those holding equally few
+   */
+  private def leastLoadedLogDir(): File = {
+    var best = logDirs.head
+    for(dir <- logDirs.tail) {
+      val numLogs = dirLogs(dir).size
+      val bestNumLogs = dirLogs(best).size
+      if(numLogs < bestNumLogs || (numLogs == bestNumLogs && dirStats(dir).getSize < dirStats(best).getSize))
+        best = dir
+    }
+    best
   }
 
   private def awaitStartup() {
@@ -136,13 +208,14 @@ class LogManager(val config: KafkaConfig,
   }
 
   /**
-   * Create a log for the given topic and the given partition
+   * Create a log for the given topic and the given partition in the least loaded log directory
    */
   private def createLog(topic: String, partition: Int): Log = {
     logCreationLock synchronized {
+      val logDir = leastLoadedLogDir
       val d = new File(logDir, topic + "-" + partition)
       d.mkdirs()
-      new Log(d, maxSize, flushInterval)
+      new Log(d, maxSize, flushInterval, preallocate, pretouch, segmentSchedulers.getOrElse(logDir, null))
     }
   }
   
@@ -171,16 +244,17 @@ class LogManager(val config: KafkaConfig,
     }
     var log = parts.get(partition)
     if(log == null) {
-      log = createLog(topic, partition)
-      Utils.registerMBean(new LogStats(log), "kafka:type=kafka.logs." + log.dir.getName)
-      val found = parts.putIfNotExists(partition, log)
-      if(found != null) {
-        // there was already somebody there
-        log.close()
-        log = found
+      // create under the lock, so that a log is never created in two log directories
+      logCreationLock synchronized {
+        log = parts.get(partition)
+        if(log == null) {
+          log = createLog(topic, partition)
+          Utils.registerMBean(new LogStats(log), "kafka:type=kafka.logs." + log.dir.getName)
+          parts.put(partition, log)
+          dirLogs(log.dir.getParentFile).put(log.name, log)
+          logger.info("Created log for '" + topic + "'-" + partition + " in " + log.dir.getParent)
+        }
       }
-      else
-        logger.info("Created log for '" + topic + "'-" + partition)
     }
 
     if (hasNewTopic)
@@ -217,10 +291,12 @@ class LogManager(val config: KafkaConfig,
    * Close all the logs
    */
   def close() {
-    logFlusherScheduler.shutdown
+    logFlusherSchedulers.foreach(_.shutdown)
     val iter = getLogIterator
     while(iter.hasNext)
       iter.next.close()
+    // the logs are closed, so whatever segment work is left would be skipped anyway
+    segmentSchedulers.values.foreach(_.shutdown)
     if (config.enableZookeeper) {
       zkActor ! StopActor
       kafkaZookeeper.close
@@ -247,9 +323,10 @@ class LogManager(val config: KafkaConfig,
     }
   }
 
-  private def flushAllLogs() = {
-    logger.debug("flushing the high watermark of all logs")
-    for (log <- getLogIterator)
+  private def flushLogs(logDir: File) = {
+    logger.debug("flushing the high watermark of all logs in " + logDir.getAbsolutePath)
+    val stats = dirStats(logDir)
+    for (log <- dirLogs(logDir).values)
     {
       val timeSinceLastFlush = System.currentTimeMillis - log.getLastFlushedTime
       var logFlushInterval = config.defaultFlushIntervalMs
@@ -257,8 +334,11 @@ class LogManager(val config: KafkaConfig,
         logFlushInterval = logFlushIntervalMap(log.getTopicName)
       logger.debug(log.getTopicName + " flush interval  " + logFlushInterval +
         " last flushed " + log.getLastFlushedTime + " timesincelastFlush: " + timeSinceLastFlush)
-      if(timeSinceLastFlush >= logFlushInterval)
+      if(timeSinceLastFlush >= logFlushInterval) {
+        val start = time.nanoseconds
         log.flush
+        stats.recordFlush(time.nanoseconds - start)
+      }
     }
   }
 
@@ -22,8 +22,38 @@ import scala.collection.mutable
 import kafka.message._
 import kafka.utils._
 import kafka.common.ErrorMapping
+import kafka.serializer.BufferEncoder
 import org.apache.log4j.Logger
 
+object ByteBufferMessageSet {
+
+  /**
+   * Build a message set by having the encoder write each payload straight into the set's buffer,
+   * with the message header and checksum filled in around it
+   */
+  def encode[T](events: Seq[T], encoder: BufferEncoder[T]): ByteBufferMessageSet = {
+    var size = 0
+    for(event <- events)
+      size += MessageSet.LogOverhead + Message.HeaderSize + encoder.payloadSize(event)
+    val buffer = ByteBuffer.allocate(size)
+    for(event <- events) {
+      val payloadSize = encoder.payloadSize(event)
+      buffer.putInt(Message.HeaderSize + payloadSize)
+      val messageStart = buffer.position
+      buffer.put(Message.CurrentMagicValue)
+      buffer.position(messageStart + Message.HeaderSize)
+      encoder.writePayload(event, buffer)
+      if(buffer.position != messageStart + Message.HeaderSize + payloadSize)
+        throw new IllegalStateException("Encoder wrote " + (buffer.position - messageStart - Message.HeaderSize) +
+          " bytes for a payload of " + payloadSize + " bytes")
+      val checksum = Utils.crc32(buffer.array, buffer.arrayOffset + messageStart + Message.HeaderSize, payloadSize)
+      Utils.putUnsignedInt(buffer, messageStart + Message.CrcOffset, checksum)
+    }
+    buffer.rewind()
+    new ByteBufferMessageSet(buffer)
+  }
+}
+
 /**
  * A sequence of messages stored in a byte buffer
  */
@@ -26,18 +26,45 @@ import kafka._
 import kafka.message._
 import kafka.utils._
 
+object FileMessageSet {
+  private val PretouchChunkSize = 1024 * 1024
+
+  private[message] def preallocate(file: File, size: Long, pretouch: Boolean): FileChannel = {
+    val channel = Utils.openChannel(file, true)
+    if(pretouch) {
+      val zeros = ByteBuffer.allocate(PretouchChunkSize)
+      var position = 0L
+      while(position < size) {
+        zeros.clear()
+        zeros.limit(scala.math.min(PretouchChunkSize, size - position).asInstanceOf[Int])
+        position += channel.write(zeros, position)
+      }
+      channel.force(true)
+    }
+    else if(channel.size < size) {
+      // extend the file to its full length without writing it
+      channel.write(ByteBuffer.allocate(1), size - 1)
+    }
+    channel
+  }
+}
+
 /**
  * An on-disk message set. The set can be opened either mutably or immutably. Mutation attempts
  * will fail on an immutable message set. An optional limit and offset can be applied to the message set
  * which will control the offset into the file and the effective length into the file from which
  * messages will be read
+ *
+ * A mutable set can be opened over a preallocated file, in which case the file is taken to be empty and
+ * is written from the start. Closing or trimming a mutable set truncates the file to the bytes written.
  */
 @nonthreadsafe
 class FileMessageSet private[message](private[message] val channel: FileChannel, 
                               private[message] val offset: Long, 
                               private[message] val limit: Long,
                               val mutable: Boolean,
-                              val needRecover: AtomicBoolean) extends MessageSet {
+                              val needRecover: AtomicBoolean,
+                              preallocated: Boolean) extends MessageSet {
   
   private val setSize = new AtomicLong()
   private val setHighWaterMark = new AtomicLong()
@@ -46,11 +73,17 @@ class FileMessageSet private[message](private[message] val channel: FileChannel,
   if(mutable) {
     if(limit < Long.MaxValue || offset > 0)
       throw new IllegalArgumentException("Attempt to open a mutable message set with a view or offset, which is not allowed.")
-    // set the file position to the end of the file for appending messages
-   val startMs = System.currentTimeMillis
-   val truncated = recover()
-   logger.info("Recovery succeeded in " + (System.currentTimeMillis - startMs) / 1000 + 
+    if(preallocated) {
+      // nothing has been written to a freshly preallocated file yet
+      channel.position(0)
+      needRecover.set(false)
+    } else {
+      // set the file position to the end of the file for appending messages
+      val startMs = System.currentTimeMillis
+      val truncated = recover()
+      logger.info("Recovery succeeded in " + (System.currentTimeMillis - startMs) / 1000 +
                   " seconds. " + truncated + " bytes truncated.")
+    }
   } else {
     setSize.set(scala.math.min(channel.size(), limit) - offset)
     setHighWaterMark.set(sizeInBytes)
@@ -62,7 +95,7 @@ class FileMessageSet private[message](private[message] val channel: FileChannel,
    * Create a file message set with no limit or offset
    */
   def this(channel: FileChannel, mutable: Boolean) = 
-    this(channel, 0, Long.MaxValue, mutable, new AtomicBoolean(false))
+    this(channel, 0, Long.MaxValue, mutable, new AtomicBoolean(false), false)
   
   /**
    * Create a file message set with no limit or offset
@@ -74,20 +107,28 @@ class FileMessageSet private[message](private[message] val channel: FileChannel,
    * Create a file message set with no limit or offset
    */
   def this(channel: FileChannel, mutable: Boolean, needRecover: AtomicBoolean) = 
-    this(channel, 0, Long.MaxValue, mutable, needRecover)
+    this(channel, 0, Long.MaxValue, mutable, needRecover, false)
   
   /**
    * Create a file message set with no limit or offset
    */
   def this(file: File, mutable: Boolean, needRecover: AtomicBoolean) = 
     this(Utils.openChannel(file, mutable), mutable, needRecover)
+
+  /**
+   * Create a mutable file message set over a file that was preallocated to the given size, optionally
+   * writing it through once so its blocks are allocated before the first append needs them
+   */
+  def this(file: File, preallocateSize: Long, pretouch: Boolean) =
+    this(FileMessageSet.preallocate(file, preallocateSize, pretouch), 0, Long.MaxValue, true,
+      new AtomicBoolean(false), true)
   
   
   /**
    * Return a message set which is a view into this set starting from the given offset and with the given size limit.
    */
   def read(readOffset: Long, size: Long): MessageSet = {
-    new FileMessageSet(channel, this.offset + readOffset, scala.math.min(this.offset + readOffset + size, highWaterMark), false, new AtomicBoolean(false))
+    new FileMessageSet(channel, this.offset + readOffset, scala.math.min(this.offset + readOffset + size, highWaterMark), false, new AtomicBoolean(false), false)
   }
   
   /**
@@ -186,12 +227,23 @@ class FileMessageSet private[message](private[message] val channel: FileChannel,
       logger.debug("flush high water mark:" + highWaterMark)
   }
   
+  /**
+   * Cut off any preallocated space beyond the bytes written
+   */
+  def trim() = {
+    checkMutable()
+    if(channel.size > sizeInBytes)
+      channel.truncate(sizeInBytes)
+  }
+
   /**
    * Close this message set
    */
   def close() = {
-    if(mutable)
+    if(mutable) {
       flush()
+      trim()
+    }
     channel.close()
   }
   
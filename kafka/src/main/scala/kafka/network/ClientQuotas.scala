@@ -0,0 +1,190 @@
+/*
+ * Copyright 2010 LinkedIn
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.network
+
+import java.util.concurrent.atomic._
+import org.apache.log4j.Logger
+import kafka.api.RequestKeys
+import kafka.utils._
+
+trait ClientQuotaStatsMBean {
+  def getProduceBytesPerSecond: Double
+  def getFetchBytesPerSecond: Double
+  def getProduceQuotaBytesPerSecond: Long
+  def getFetchQuotaBytesPerSecond: Long
+  def getNumThrottledProduces: Long
+  def getNumThrottledFetches: Long
+  def getTotalProduceThrottleMs: Long
+  def getTotalFetchThrottleMs: Long
+}
+
+/**
+ * The byte-rate quotas and throttling statistics of a single client
+ */
+@threadsafe
+class ClientQuotaStats(val clientId: String,
+                       val produceQuota: Long,
+                       val fetchQuota: Long,
+                       monitorDurationNs: Long,
+                       time: Time) extends ClientQuotaStatsMBean {
+
+  private val produceThrottler = throttlerFor(produceQuota)
+  private val fetchThrottler = throttlerFor(fetchQuota)
+  private val produceBytesStats = new SnapshotStats(monitorDurationNs)
+  private val fetchBytesStats = new SnapshotStats(monitorDurationNs)
+  private val numThrottledProduces = new AtomicLong(0)
+  private val numThrottledFetches = new AtomicLong(0)
+  private val produceThrottleMs = new AtomicLong(0)
+  private val fetchThrottleMs = new AtomicLong(0)
+
+  /**
+   * Record produced bytes and return the time in ms to hold back this client
+   */
+  def recordProduce(bytes: Int): Long = {
+    produceBytesStats.recordRequestMetric(bytes)
+    delay(produceThrottler, bytes, numThrottledProduces, produceThrottleMs)
+  }
+
+  /**
+   * Record fetched bytes and return the time in ms to hold back this client
+   */
+  def recordFetch(bytes: Int): Long = {
+    fetchBytesStats.recordRequestMetric(bytes)
+    delay(fetchThrottler, bytes, numThrottledFetches, fetchThrottleMs)
+  }
+
+  private def throttlerFor(quota: Long): Option[Throttler] =
+    if(quota > 0) Some(new Throttler(quota, Throttler.DefaultCheckIntervalMs, true, time)) else None
+
+  private def delay(throttler: Option[Throttler], bytes: Int, count: AtomicLong, total: AtomicLong): Long = {
+    throttler match {
+      case Some(t) =>
+        val delayMs = t.throttleDelayMs(bytes)
+        if(delayMs > 0) {
+          count.getAndIncrement
+          total.getAndAdd(delayMs)
+        }
+        delayMs
+      case None => 0L
+    }
+  }
+
+  private def bytesPerSecond(stats: SnapshotStats): Double = {
+    val rate = stats.getRequestsPerSecond * stats.getAvgMetric
+    if(rate.isNaN) 0.0 else rate
+  }
+
+  def getProduceBytesPerSecond: Double = bytesPerSecond(produceBytesStats)
+
+  def getFetchBytesPerSecond: Double = bytesPerSecond(fetchBytesStats)
+
+  def getProduceQuotaBytesPerSecond: Long = produceQuota
+
+  def getFetchQuotaBytesPerSecond: Long = fetchQuota
+
+  def getNumThrottledProduces: Long = numThrottledProduces.get
+
+  def getNumThrottledFetches: Long = numThrottledFetches.get
+
+  def getTotalProduceThrottleMs: Long = produceThrottleMs.get
+
+  def getTotalFetchThrottleMs: Long = fetchThrottleMs.get
+}
+
+/**
+ * Per-client byte-rate quotas for produce and fetch traffic. A client is identified by the address of its host.
+ * A quota of 0 or less means unlimited. The quotas only compute delays; the SocketServer applies them by holding
+ * back the client's connection, so no thread ever sleeps on behalf of a client.
+ *
+ * @param produceQuota: The default produce rate for a client in bytes/sec
+ * @param fetchQuota: The default fetch rate for a client in bytes/sec
+ * @param produceOverrides: Produce rates for specific clients in bytes/sec
+ * @param fetchOverrides: Fetch rates for specific clients in bytes/sec
+ */
+@threadsafe
+class ClientQuotas(val produceQuota: Long,
+                   val fetchQuota: Long,
+                   val produceOverrides: Map[String, Int],
+                   val fetchOverrides: Map[String, Int],
+                   monitoringPeriodSecs: Int,
+                   time: Time) {
+
+  private val logger = Logger.getLogger(classOf[ClientQuotas])
+  private val clients = new Pool[String, ClientQuotaStats]
+  private val monitorDurationNs = Time.NsPerSec.toLong * monitoringPeriodSecs
+
+  def this(produceQuota: Long, fetchQuota: Long, produceOverrides: Map[String, Int], fetchOverrides: Map[String, Int],
+           monitoringPeriodSecs: Int) =
+    this(produceQuota, fetchQuota, produceOverrides, fetchOverrides, monitoringPeriodSecs, SystemTime)
+
+  /**
+   * Record the bytes of a request and return the time in ms to hold back the client. Only produce requests count.
+   */
+  def recordRequest(clientId: String, requestTypeId: Short, bytes: Int): Long = {
+    requestTypeId match {
+      case r if r == RequestKeys.Produce || r == RequestKeys.MultiProduce || r == RequestKeys.AckedProduce =>
+        statsFor(clientId).recordProduce(bytes)
+      case _ => 0L
+    }
+  }
+
+  /**
+   * Record the bytes of a response and return the time in ms to hold back the client. Only fetch responses count.
+   */
+  def recordResponse(clientId: String, requestTypeId: Short, bytes: Int): Long = {
+    requestTypeId match {
+      case r if r == RequestKeys.Fetch || r == RequestKeys.MultiFetch =>
+        statsFor(clientId).recordFetch(bytes)
+      case _ => 0L
+    }
+  }
+
+  def stats(clientId: String): Option[ClientQuotaStats] = {
+    val stats = clients.get(clientId)
+    if(stats == null) None else Some(stats)
+  }
+
+  /**
+   * Unregister the JMX beans of all clients seen so far
+   */
+  def close() {
+    for(clientId <- clients.keys)
+      Utils.swallow(logger.warn, Utils.unregisterMBean(ClientQuotas.mbeanName(clientId)))
+    clients.clear
+  }
+
+  private def statsFor(clientId: String): ClientQuotaStats = {
+    var stats = clients.get(clientId)
+    if(stats == null) {
+      val created = new ClientQuotaStats(clientId,
+                                         produceOverrides.get(clientId).map(_.toLong).getOrElse(produceQuota),
+                                         fetchOverrides.get(clientId).map(_.toLong).getOrElse(fetchQuota),
+                                         monitorDurationNs,
+                                         time)
+      stats = clients.putIfNotExists(clientId, created)
+      if(stats == null) {
+        stats = created
+        Utils.swallow(logger.warn, Utils.registerMBean(stats, ClientQuotas.mbeanName(clientId)))
+      }
+    }
+    stats
+  }
+}
+
+object ClientQuotas {
+  def mbeanName(clientId: String) = "kafka:type=kafka.ClientQuotas." + clientId.replace(':', '_')
+}
@@ -31,24 +31,29 @@ import org.apache.log4j.Logger
  * An NIO socket server. The thread model is
  *   1 Acceptor thread that handles new connections
  *   N Processor threads that each have their own selectors and handle all requests from their connections synchronously
+ * If client quotas are given, a client over its quota has its connection held back by its processor, without blocking it.
  */
 class SocketServer(val port: Int, 
                    val numProcessorThreads: Int, 
                    monitoringPeriodSecs: Int,
-                   private val handlerFactory: Handler.HandlerMapping) {
+                   private val handlerFactory: Handler.HandlerMapping,
+                   val quotas: Option[ClientQuotas]) {
  
   private val logger = Logger.getLogger(classOf[SocketServer])
   private val time = SystemTime
   private val processors = new Array[Processor](numProcessorThreads)
   private var acceptor: Acceptor = new Acceptor(port, processors)
   val stats: SocketServerStats = new SocketServerStats(1000L * 1000L * 1000L * monitoringPeriodSecs)
+
+  def this(port: Int, numProcessorThreads: Int, monitoringPeriodSecs: Int, handlerFactory: Handler.HandlerMapping) =
+    this(port, numProcessorThreads, monitoringPeriodSecs, handlerFactory, None)
   
   /**
    * Start the socket server
    */
   def startup() {
     for(i <- 0 until numProcessorThreads) {
-      processors(i) = new Processor(handlerFactory, time, stats)
+      processors(i) = new Processor(handlerFactory, time, stats, quotas)
       Utils.newThread("kafka-processor-" + i, processors(i), false).start()
     }
     Utils.newThread("kafka-acceptor", acceptor, false).start()
@@ -172,23 +177,47 @@ class Acceptor(val port: Int, private val processors: Array[Processor]) extends
   
 }
 
+/**
+ * A response in flight, along with the type of the request it answers
+ */
+private[network] class Response(val requestTypeId: Short, val send: Send) {
+  var written = 0
+}
+
+/**
+ * A connection held back until its client is within quota, with the response to send once it is released
+ */
+private[network] class DelayedConnection(val key: SelectionKey, 
+                                         val response: Option[Response], 
+                                         val releaseMs: Long) extends Comparable[DelayedConnection] {
+  def compareTo(other: DelayedConnection): Int = 
+    if(releaseMs < other.releaseMs) -1 else if(releaseMs > other.releaseMs) 1 else 0
+}
+
 /**
  * Thread that processes all requests from a single connection. There are N of these running in parallel
  * each of which has its own selectors
  */
 class Processor(val handlerMapping: Handler.HandlerMapping, 
                 val time: Time, 
-                val stats: SocketServerStats) extends AbstractServerThread {
+                val stats: SocketServerStats,
+                val quotas: Option[ClientQuotas]) extends AbstractServerThread {
   
   private val newConnections = new ConcurrentLinkedQueue[SocketChannel]();
+  private val delayed = new java.util.PriorityQueue[DelayedConnection]()
+
+  def this(handlerMapping: Handler.HandlerMapping, time: Time, stats: SocketServerStats) = 
+    this(handlerMapping, time, stats, None)
   
   override def run() {
     startupComplete()
     while(isRunning) {
       // setup any new connections that have been queued up
       configureNewConnections()
+      // resume any connections whose clients are back within quota
+      releaseDelayed()
       
-      val ready = selector.select(500)
+      val ready = selector.select(selectTimeoutMs)
       if(ready > 0) {
 		    val keys = selector.selectedKeys()
 		    val iter = keys.iterator()
@@ -254,6 +283,47 @@ class Processor(val handlerMapping: Handler.HandlerMapping,
     }
   }
   
+  /**
+   * Wait no longer than the next held back connection is due
+   */
+  private def selectTimeoutMs: Long = {
+    if(delayed.isEmpty)
+      500L
+    else
+      scala.math.max(1L, scala.math.min(500L, delayed.peek.releaseMs - time.milliseconds))
+  }
+
+  /**
+   * Hold back a connection for the given time: it is neither read from nor written to until released
+   */
+  private def hold(key: SelectionKey, response: Option[Response], delayMs: Long) {
+    if(logger.isDebugEnabled)
+      logger.debug("Holding back " + channelFor(key).socket.getRemoteSocketAddress + " for " + delayMs + " ms to keep it within quota")
+    key.interestOps(0)
+    delayed.add(new DelayedConnection(key, response, time.milliseconds + delayMs))
+  }
+
+  /**
+   * Release the held back connections that are due, sending their response if they have one
+   */
+  private def releaseDelayed() {
+    val now = time.milliseconds
+    while(!delayed.isEmpty && delayed.peek.releaseMs <= now) {
+      val connection = delayed.poll()
+      if(connection.key.isValid) {
+        connection.response match {
+          case Some(response) =>
+            connection.key.attach(response)
+            connection.key.interestOps(SelectionKey.OP_WRITE)
+          case None =>
+            connection.key.interestOps(SelectionKey.OP_READ)
+        }
+      }
+    }
+  }
+
+  private def clientFor(key: SelectionKey): String = channelFor(key).socket.getInetAddress.getHostAddress
+
   /**
    * Handle a completed request producing an optional response
    */
@@ -288,11 +358,19 @@ class Processor(val handlerMapping: Handler.HandlerMapping,
       close(key)
       return
     } else if(request.complete) {
-      val maybeResponse = handle(key, request)
+      val requestTypeId = request.buffer.getShort(request.buffer.position)
+      val requestSize = request.buffer.limit
+      val maybeResponse = handle(key, request).map(new Response(requestTypeId, _))
       key.attach(null)
-      // if there is a response, send it, otherwise do nothing
-      if(maybeResponse.isDefined) {
-        key.attach(maybeResponse.getOrElse(None))
+      val delayMs = quotas match {
+        case Some(q) => q.recordRequest(clientFor(key), requestTypeId, requestSize)
+        case None => 0L
+      }
+      // if the client is over quota, hold back the response; otherwise if there is one, send it
+      if(delayMs > 0) {
+        hold(key, maybeResponse, delayMs)
+      } else if(maybeResponse.isDefined) {
+        key.attach(maybeResponse.get)
         key.interestOps(SelectionKey.OP_WRITE)
       }
     } else {
@@ -306,15 +384,24 @@ class Processor(val handlerMapping: Handler.HandlerMapping,
    * Process writes to ready sockets
    */
   def write(key: SelectionKey) {
-    val response = key.attachment().asInstanceOf[Send]
+    val response = key.attachment().asInstanceOf[Response]
     val socketChannel = channelFor(key)
-    val written = response.writeTo(socketChannel)
+    val written = response.send.writeTo(socketChannel)
+    response.written += written
     stats.recordBytesWritten(written)
     if(logger.isTraceEnabled)
       logger.trace(written + " bytes written to " + socketChannel.socket.getRemoteSocketAddress())
-    if(response.complete) {
+    if(response.send.complete) {
       key.attach(null)
-      key.interestOps(SelectionKey.OP_READ)
+      val delayMs = quotas match {
+        case Some(q) => q.recordResponse(clientFor(key), response.requestTypeId, response.written)
+        case None => 0L
+      }
+      // a client over its fetch quota is not read from again until it is back within quota
+      if(delayMs > 0)
+        hold(key, None, delayMs)
+      else
+        key.interestOps(SelectionKey.OP_READ)
     } else {
       key.interestOps(SelectionKey.OP_WRITE)
       selector.wakeup()
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2010 LinkedIn
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.producer
+
+import kafka.cluster.{Broker, Partition}
+
+/**
+ * Tells a producer which brokers host the partitions of a topic
+ */
+trait BrokerPartitionInfo {
+  /**
+   * @return the partitions of the topic, ordered by broker id and partition id, or Nil if no broker
+   *         has registered the topic yet
+   */
+  def getBrokerPartitionInfo(topic: String): Seq[Partition]
+
+  /**
+   * @return the broker with the given id, if it is registered
+   */
+  def getBroker(brokerId: Int): Option[Broker]
+
+  /**
+   * @return all registered brokers
+   */
+  def getAllBrokers: Seq[Broker]
+
+  def close()
+}
+
+/**
+ * A single broker given in the config, hosting numPartitions partitions of every topic
+ */
+class ConfigBrokerPartitionInfo(host: String, port: Int, numPartitions: Int) extends BrokerPartitionInfo {
+  private val broker = new Broker(0, host, host, port)
+  private val partitions = (0 until numPartitions).map(new Partition(broker.id, _)).toList
+
+  def getBrokerPartitionInfo(topic: String): Seq[Partition] = partitions
+
+  def getBroker(brokerId: Int): Option[Broker] = if (brokerId == broker.id) Some(broker) else None
+
+  def getAllBrokers: Seq[Broker] = List(broker)
+
+  def close() { }
+}
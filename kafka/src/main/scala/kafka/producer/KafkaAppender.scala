@@ -22,15 +22,20 @@ import kafka.message.ByteBufferMessageSet
 import java.util.Date
 import org.apache.log4j.{Logger, AppenderSkeleton}
 import kafka.utils.Utils
-import kafka.serializer.Encoder
+import kafka.serializer.{BufferEncoder, Encoder}
 
 class KafkaAppender extends AppenderSkeleton {
   var port:Int = 0
   var host:String = null
   var topic:String = null
   var encoderClass:String = null
+  var zkConnect:String = null
+  var partitionerClass:String = null
+  var numPartitions:Int = 1
+  var partitionKey:String = null
   
   private var producer:SimpleProducer = null
+  private var partitionedProducer:PartitionedProducer[String] = null
   private val logger = Logger.getLogger(classOf[KafkaAppender])
   private var encoder: Encoder[AnyRef] = null
   
@@ -45,12 +50,24 @@ class KafkaAppender extends AppenderSkeleton {
 
   def getEncoder:String = encoderClass
   def setEncoder(encoder: String) = { this.encoderClass = encoder }
+
+  def getZkConnect:String = zkConnect
+  def setZkConnect(zkConnect: String) = { this.zkConnect = zkConnect }
+
+  def getPartitioner:String = partitionerClass
+  def setPartitioner(partitioner: String) = { this.partitionerClass = partitioner }
+
+  def getNumPartitions:Int = numPartitions
+  def setNumPartitions(numPartitions: Int) = { this.numPartitions = numPartitions }
+
+  def getPartitionKey:String = partitionKey
+  def setPartitionKey(partitionKey: String) = { this.partitionKey = partitionKey }
   
   override def activateOptions = {
     // check for config parameter validity
-    if(host == null)
+    if(host == null && zkConnect == null)
       throw new MissingConfigException("Broker Host must be specified by the Kafka log4j appender")
-    if(port == 0)
+    if(port == 0 && zkConnect == null)
       throw new MissingConfigException("Broker Port must be specified by the Kafka log4j appender") 
     if(topic == null)
       throw new MissingConfigException("topic must be specified by the Kafka log4j appender")
@@ -58,8 +75,20 @@ class KafkaAppender extends AppenderSkeleton {
       throw new MissingConfigException("Encoder must be specified by the Kafka log4j appender")
     // instantiate the encoder, if present
     encoder = Utils.getObject(encoderClass)    
-    producer = new SimpleProducer(host, port, 100*1024, 30000, 10000)
-    logger.info("Kafka producer connected to " + host + "," + port)
+    if(zkConnect != null || partitionerClass != null) {
+      // route each event to the partition the partitioner picks for its key
+      val partitioner: Partitioner[String] =
+        if(partitionerClass == null) new DefaultPartitioner[String] else Utils.getObject(partitionerClass)
+      val brokerPartitionInfo =
+        if(zkConnect != null) new ZKBrokerPartitionInfo(zkConnect, 6000, 6000)
+        else new ConfigBrokerPartitionInfo(host, port, numPartitions)
+      partitionedProducer = new PartitionedProducer[String](brokerPartitionInfo, partitioner, 100*1024, 30000, 10000)
+      logger.info("Kafka producer routing through " + (if(zkConnect != null) zkConnect else host + "," + port))
+    }
+    else {
+      producer = new SimpleProducer(host, port, 100*1024, 30000, 10000)
+      logger.info("Kafka producer connected to " + host + "," + port)
+    }
     logger.info("Logging for topic: " + topic)
   }
   
@@ -68,14 +97,37 @@ class KafkaAppender extends AppenderSkeleton {
       logger.debug("[" + new Date(event.getTimeStamp).toString + "]" + event.getRenderedMessage +
             " for " + host + "," + port)
     }
-    val message = encoder.toMessage(event)
-    producer.send(topic, new ByteBufferMessageSet(message))
+    val messages = encoder match {
+      case bufferEncoder: BufferEncoder[_] =>
+        ByteBufferMessageSet.encode(List(event), bufferEncoder.asInstanceOf[BufferEncoder[AnyRef]])
+      case _ => new ByteBufferMessageSet(encoder.toMessage(event))
+    }
+    if(partitionedProducer != null)
+      partitionedProducer.send(topic, keyOf(event), messages)
+    else
+      producer.send(topic, messages)
+  }
+
+  /**
+   * The key of an event is the value of the partitionKey MDC entry if one is configured, otherwise the
+   * logger name, so the events of one logger stay in order on one partition
+   */
+  private def keyOf(event: LoggingEvent): String = {
+    if(partitionKey == null)
+      event.getLoggerName
+    else {
+      val value = event.getMDC(partitionKey)
+      if(value == null) null else value.toString
+    }
   }
 
   override def close = {
     if(!this.closed) {
       this.closed = true
-      producer.close
+      if(partitionedProducer != null)
+        partitionedProducer.close()
+      if(producer != null)
+        producer.close
     }
   }
 
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2010 LinkedIn
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.producer
+
+import java.util.Random
+import scala.collection._
+import org.apache.log4j.Logger
+import kafka.api.ProducerRequest
+import kafka.cluster.Partition
+import kafka.message.{Message, ByteBufferMessageSet}
+import kafka.utils.{threadsafe, Utils}
+
+/**
+ * Sends keyed data straight to the broker that owns its partition. The partitioner picks one of all the
+ * partitions of a topic, as registered by the brokers, and the data is sent with that partition's id to
+ * that partition's broker over one SimpleProducer per broker.
+ *
+ * Topics that no broker has registered yet go to a random broker, which picks the partition itself.
+ */
+@threadsafe
+class PartitionedProducer[K](val brokerPartitionInfo: BrokerPartitionInfo,
+                             val partitioner: Partitioner[K],
+                             val bufferSize: Int,
+                             val connectTimeoutMs: Int,
+                             val reconnectInterval: Int) {
+
+  private val logger = Logger.getLogger(getClass())
+  private val random = new Random
+  private val producers = new mutable.HashMap[Int, SimpleProducer]
+
+  /**
+   * Choose the partition the key goes to
+   */
+  def selectPartition(topic: String, key: K): Partition = {
+    val partitions = brokerPartitionInfo.getBrokerPartitionInfo(topic)
+    if (partitions.isEmpty) {
+      val brokers = brokerPartitionInfo.getAllBrokers
+      if (brokers.isEmpty)
+        throw new IllegalStateException("No brokers registered to send topic " + topic + " to")
+      return new Partition(brokers(random.nextInt(brokers.size)).id, ProducerRequest.RandomPartition)
+    }
+    val index = partitioner.partition(key, partitions.size)
+    if (index < 0 || index >= partitions.size)
+      throw new IllegalArgumentException("Partitioner returned invalid partition " + index + " for topic " + topic +
+        " with " + partitions.size + " partitions")
+    partitions(index)
+  }
+
+  def send(topic: String, key: K, messages: ByteBufferMessageSet) {
+    val partition = selectPartition(topic, key)
+    producerFor(partition.brokerId).send(topic, partition.partId, messages)
+  }
+
+  /**
+   * Send a batch of (topic, key, message), with one multi-produce request per broker
+   */
+  def send(events: Seq[(String, K, Message)]) {
+    sendEncoded[Message](events, messages => new ByteBufferMessageSet(messages: _*))
+  }
+
+  /**
+   * Send a batch of (topic, key, event), with one multi-produce request per broker. The events of each
+   * partition are turned into one message set by encode.
+   */
+  def sendEncoded[E](events: Seq[(String, K, E)], encode: Seq[E] => ByteBufferMessageSet) {
+    val eventsPerPartition = new mutable.HashMap[(String, Int, Int), mutable.ListBuffer[E]]
+    for ((topic, key, event) <- events) {
+      val partition = selectPartition(topic, key)
+      eventsPerPartition.getOrElseUpdate((topic, partition.brokerId, partition.partId),
+        new mutable.ListBuffer[E]) += event
+    }
+
+    val requestsPerBroker = new mutable.HashMap[Int, mutable.ListBuffer[ProducerRequest]]
+    for (((topic, brokerId, partId), partitionEvents) <- eventsPerPartition)
+      requestsPerBroker.getOrElseUpdate(brokerId, new mutable.ListBuffer[ProducerRequest]) +=
+        new ProducerRequest(topic, partId, encode(partitionEvents))
+
+    for ((brokerId, requests) <- requestsPerBroker) {
+      producerFor(brokerId).multiSend(requests.toArray)
+      if(logger.isDebugEnabled)
+        logger.debug("kafka producer sent " + requests.size + " requests to broker " + brokerId)
+    }
+  }
+
+  def close() {
+    producers synchronized {
+      for (producer <- producers.values)
+        Utils.swallow(logger.warn, producer.close())
+      producers.clear
+    }
+    brokerPartitionInfo.close()
+  }
+
+  private def producerFor(brokerId: Int): SimpleProducer = {
+    producers synchronized {
+      val broker = brokerPartitionInfo.getBroker(brokerId) match {
+        case Some(b) => b
+        case None => throw new IllegalStateException("Broker " + brokerId + " is not registered")
+      }
+      producers.get(brokerId) match {
+        case Some(producer) if producer.host == broker.host && producer.port == broker.port => producer
+        case old =>
+          for (producer <- old)
+            Utils.swallow(logger.warn, producer.close())
+          val producer = new SimpleProducer(broker.host, broker.port, bufferSize, connectTimeoutMs, reconnectInterval)
+          producers.put(brokerId, producer)
+          producer
+      }
+    }
+  }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2010 LinkedIn
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.producer
+
+import java.util.Random
+
+/**
+ * Picks the partition a keyed piece of data is sent to, so that data with the same key always lands
+ * in the same partition
+ */
+trait Partitioner[T] {
+  /**
+   * @param key the key, or the event itself, to partition on
+   * @param numPartitions the total number of partitions of the topic, across all brokers
+   * @return a partition between 0 and numPartitions - 1
+   */
+  def partition(key: T, numPartitions: Int): Int
+}
+
+/**
+ * Partitions by the hash code of the key. Null keys are spread randomly.
+ */
+class DefaultPartitioner[T] extends Partitioner[T] {
+  private val random = new Random
+
+  def partition(key: T, numPartitions: Int): Int = {
+    if (key == null)
+      random.nextInt(numPartitions)
+    else
+      (key.hashCode & Int.MaxValue) % numPartitions
+  }
+}
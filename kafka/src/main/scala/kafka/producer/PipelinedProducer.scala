@@ -0,0 +1,406 @@
+/*
+ * Copyright 2010 LinkedIn
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.producer
+
+import java.io.IOException
+import java.net.InetSocketAddress
+import java.nio.channels._
+import java.util.LinkedList
+import java.util.concurrent._
+import java.util.concurrent.atomic._
+import scala.collection.JavaConversions
+import kafka.api.{AckedProducerRequest, ProducerRequest}
+import kafka.common.{ErrorMapping, UnknownException}
+import kafka.message.ByteBufferMessageSet
+import kafka.network.{BoundedByteBufferReceive, BoundedByteBufferSend}
+import kafka.utils._
+import org.apache.log4j.Logger
+
+/**
+ * The result of a send on a PipelinedProducer. It completes when the broker acked the request or, for
+ * unacked sends, once the request is written to the socket.
+ */
+@threadsafe
+class SendFuture {
+  private val latch = new CountDownLatch(1)
+  @volatile
+  private var offset = -1L
+  @volatile
+  private var error: Throwable = null
+
+  private[producer] def complete(offset: Long) {
+    this.offset = offset
+    latch.countDown
+  }
+
+  private[producer] def fail(e: Throwable) {
+    error = e
+    latch.countDown
+  }
+
+  def isDone: Boolean = latch.getCount == 0
+
+  /**
+   * Wait for the send to complete
+   * @return the offset the messages were appended at, or -1 if the send was not acked
+   */
+  def get(): Long = {
+    latch.await
+    result
+  }
+
+  /**
+   * Wait at most timeoutMs for the send to complete
+   * @return the offset the messages were appended at, or -1 if the send was not acked
+   */
+  def get(timeoutMs: Long): Long = {
+    if (!latch.await(timeoutMs, TimeUnit.MILLISECONDS))
+      throw new TimeoutException("send not completed after " + timeoutMs + " ms")
+    result
+  }
+
+  private def result: Long = {
+    if (error != null)
+      throw new RuntimeException("send failed", error)
+    offset
+  }
+}
+
+/**
+ * A non-blocking producer client. All connections are served by a single NIO thread, callers only
+ * enqueue requests and get a SendFuture back.
+ *
+ * Each broker gets a pool of connectionsPerBroker connections that callers are spread over round robin.
+ * A connection pipelines up to maxInFlightRequests requests before callers block, so the latency of a
+ * round trip is not paid per request. With requireAcks the broker answers every request with the offset
+ * it appended the messages at; the broker handles the requests of a connection in order, so acks are matched
+ * to requests by their position and checked against the correlation id.
+ *
+ * A connection that fails fails all its outstanding sends and is replaced on the next send to that broker.
+ */
+@threadsafe
+class PipelinedProducer(val bufferSize: Int,
+                        val connectTimeoutMs: Int,
+                        val connectionsPerBroker: Int,
+                        val maxInFlightRequests: Int,
+                        val requireAcks: Boolean) {
+
+  private val logger = Logger.getLogger(getClass())
+  private val selector = Selector.open()
+  private val pools = new ConcurrentHashMap[String, AtomicReferenceArray[ProducerConnection]]
+  private val nextConnection = new AtomicInteger(0)
+  private val nextCorrelationId = new AtomicInteger(0)
+  // connections with new sends, or not yet connected, for the I/O thread to pick up
+  private val readyConnections = new ConcurrentLinkedQueue[ProducerConnection]
+  private val connecting = new LinkedList[ProducerConnection]
+  private val shutdownLatch = new CountDownLatch(1)
+  @volatile
+  private var running = true
+  private val ioThread = Utils.newThread("kafka-pipelined-producer", new Runnable() {
+    def run() = runIO()
+  }, true)
+  ioThread.start
+
+  def this(config: PipelinedProducerConfig) = this(config.bufferSize, config.connectTimeoutMs,
+    config.connectionsPerBroker, config.maxInFlightRequests, config.requireAcks)
+
+  /**
+   * Send a message set to the given broker. Blocks only while the connection already has
+   * maxInFlightRequests outstanding requests.
+   */
+  def send(host: String, port: Int, topic: String, partition: Int, messages: ByteBufferMessageSet): SendFuture = {
+    if (!running)
+      throw new IllegalStateException("producer is closed")
+    val connection = connectionFor(host, port)
+    connection.permits.acquire
+    val request = new ProducerRequest(topic, partition, messages)
+    val correlationId = nextCorrelationId.getAndIncrement
+    val send =
+      if (requireAcks)
+        new PendingSend(new BoundedByteBufferSend(new AckedProducerRequest(correlationId, request)), correlationId, true)
+      else
+        new PendingSend(new BoundedByteBufferSend(request), correlationId, false)
+    if(logger.isTraceEnabled)
+      logger.trace("Queued " + messages.sizeInBytes + " bytes for " + topic + "-" + partition + " to " + host + ":" + port)
+    connection.sendQueue.add(send)
+    readyConnections.add(connection)
+    selector.wakeup
+    send.future
+  }
+
+  def send(host: String, port: Int, topic: String, messages: ByteBufferMessageSet): SendFuture =
+    send(host, port, topic, ProducerRequest.RandomPartition, messages)
+
+  /**
+   * Stop the I/O thread and fail whatever has not completed yet
+   */
+  def close() {
+    if (!running)
+      return
+    running = false
+    selector.wakeup
+    shutdownLatch.await
+  }
+
+  private def connectionFor(host: String, port: Int): ProducerConnection = {
+    val key = host + ":" + port
+    var pool = pools.get(key)
+    if (pool == null) {
+      pools.putIfAbsent(key, new AtomicReferenceArray[ProducerConnection](connectionsPerBroker))
+      pool = pools.get(key)
+    }
+    val slot = (nextConnection.getAndIncrement & Int.MaxValue) % connectionsPerBroker
+    var connection = pool.get(slot)
+    while (connection == null || connection.closed) {
+      val fresh = new ProducerConnection(new InetSocketAddress(host, port))
+      if (pool.compareAndSet(slot, connection, fresh)) {
+        readyConnections.add(fresh)
+        selector.wakeup
+      }
+      connection = pool.get(slot)
+    }
+    connection
+  }
+
+  private def runIO() {
+    while (running) {
+      try {
+        processReadyConnections()
+        checkConnectTimeouts()
+        selector.select(500)
+        val iter = selector.selectedKeys.iterator
+        while (iter.hasNext) {
+          val key = iter.next
+          iter.remove()
+          val connection = key.attachment.asInstanceOf[ProducerConnection]
+          try {
+            if (key.isConnectable)
+              finishConnect(connection)
+            if (key.isValid && key.isReadable)
+              read(connection)
+            if (key.isValid && key.isWritable)
+              write(connection)
+          }
+          catch {
+            case e: Exception =>
+              logger.warn("Closing connection to " + connection.address + ": " + e)
+              close(connection, e)
+          }
+        }
+      }
+      catch {
+        case e: Throwable => logger.error("Error in pipelined producer I/O thread", e)
+      }
+    }
+
+    val closed = new IllegalStateException("producer is closed")
+    for (pool <- JavaConversions.asIterable(pools.values); i <- 0 until pool.length) {
+      val connection = pool.get(i)
+      if (connection != null)
+        close(connection, closed)
+    }
+    failQueued(readyConnections.poll, closed)
+    Utils.swallow(logger.warn, selector.close())
+    shutdownLatch.countDown
+  }
+
+  private def failQueued(connection: ProducerConnection, e: Throwable) {
+    var c = connection
+    while (c != null) {
+      close(c, e)
+      c = readyConnections.poll
+    }
+  }
+
+  private def processReadyConnections() {
+    var connection = readyConnections.poll
+    while (connection != null) {
+      if (connection.closed)
+        connection.failAll(new IOException("connection to " + connection.address + " is closed"))
+      else if (connection.channel == null)
+        connect(connection)
+      else if (connection.connected)
+        connection.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE)
+      connection = readyConnections.poll
+    }
+  }
+
+  private def connect(connection: ProducerConnection) {
+    try {
+      val channel = SocketChannel.open()
+      connection.channel = channel
+      channel.configureBlocking(false)
+      channel.socket.setSendBufferSize(bufferSize)
+      channel.socket.setTcpNoDelay(true)
+      connection.connectStartMs = SystemTime.milliseconds
+      if (logger.isDebugEnabled)
+        logger.debug("Connecting to " + connection.address + " for producing")
+      if (channel.connect(connection.address)) {
+        connection.key = channel.register(selector, SelectionKey.OP_READ | SelectionKey.OP_WRITE, connection)
+        connection.connected = true
+      }
+      else {
+        connection.key = channel.register(selector, SelectionKey.OP_CONNECT, connection)
+        connecting.add(connection)
+      }
+    }
+    catch {
+      case e: IOException =>
+        logger.warn("Connection attempt to " + connection.address + " failed: " + e)
+        close(connection, e)
+    }
+  }
+
+  private def finishConnect(connection: ProducerConnection) {
+    if (connection.channel.finishConnect) {
+      connecting.remove(connection)
+      connection.connected = true
+      connection.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE)
+    }
+  }
+
+  private def checkConnectTimeouts() {
+    val now = SystemTime.milliseconds
+    val iter = connecting.iterator
+    while (iter.hasNext) {
+      val connection = iter.next
+      if (now - connection.connectStartMs > connectTimeoutMs) {
+        iter.remove()
+        logger.error("Producer connection to " + connection.address + " timing out after " + connectTimeoutMs + " ms")
+        close(connection, new IOException("connection to " + connection.address + " timed out"))
+      }
+    }
+  }
+
+  private def write(connection: ProducerConnection) {
+    var blocked = false
+    while (!blocked) {
+      if (connection.current == null)
+        connection.current = connection.sendQueue.poll
+      val pending = connection.current
+      if (pending == null) {
+        connection.key.interestOps(SelectionKey.OP_READ)
+        // a send may have slipped in after the poll; it re-registers the connection as ready
+        return
+      }
+      pending.send.writeTo(connection.channel)
+      if (pending.send.complete) {
+        connection.current = null
+        if (pending.acked)
+          connection.inFlight.add(pending)
+        else
+          connection.finish(pending, -1L)
+      }
+      else
+        blocked = true
+    }
+  }
+
+  private def read(connection: ProducerConnection) {
+    var done = false
+    while (!done) {
+      connection.receive.readFrom(connection.channel)
+      if (connection.receive.complete) {
+        val buffer = connection.receive.buffer
+        val errorCode = buffer.getShort
+        val correlationId = buffer.getInt
+        val offset = buffer.getLong
+        val pending = connection.inFlight.poll
+        if (pending == null || pending.correlationId != correlationId)
+          throw new IOException("unexpected ack " + correlationId + " from " + connection.address)
+        if (errorCode == ErrorMapping.NO_ERROR)
+          connection.finish(pending, offset)
+        else if (errorCode < 0)
+          connection.fail(pending, new UnknownException)
+        else {
+          val e: Throwable =
+            try {
+              ErrorMapping.maybeThrowException(errorCode)
+              null
+            }
+            catch {
+              case t: Throwable => t
+            }
+          connection.fail(pending, e)
+        }
+        connection.receive = new BoundedByteBufferReceive(AckedProducerRequest.AckSize)
+      }
+      else
+        done = true
+    }
+  }
+
+  private def close(connection: ProducerConnection, e: Throwable) {
+    connection.closed = true
+    connecting.remove(connection)
+    if (connection.key != null)
+      Utils.swallow(logger.warn, connection.key.cancel())
+    if (connection.channel != null) {
+      Utils.swallow(logger.warn, connection.channel.socket.close())
+      Utils.swallow(logger.warn, connection.channel.close())
+    }
+    connection.failAll(e)
+  }
+
+  private class PendingSend(val send: BoundedByteBufferSend, val correlationId: Int, val acked: Boolean) {
+    val future = new SendFuture
+    val startNs = SystemTime.nanoseconds
+  }
+
+  private class ProducerConnection(val address: InetSocketAddress) {
+    val permits = new Semaphore(maxInFlightRequests)
+    val sendQueue = new ConcurrentLinkedQueue[PendingSend]
+    // the rest is only touched by the I/O thread
+    val inFlight = new LinkedList[PendingSend]
+    var current: PendingSend = null
+    var receive = new BoundedByteBufferReceive(AckedProducerRequest.AckSize)
+    var channel: SocketChannel = null
+    var key: SelectionKey = null
+    var connectStartMs = 0L
+    var connected = false
+    @volatile
+    var closed = false
+
+    def finish(pending: PendingSend, offset: Long) {
+      KafkaProducerStats.recordProduceRequest(SystemTime.nanoseconds - pending.startNs)
+      permits.release
+      pending.future.complete(offset)
+    }
+
+    def fail(pending: PendingSend, e: Throwable) {
+      permits.release
+      pending.future.fail(e)
+    }
+
+    def failAll(e: Throwable) {
+      if (current != null) {
+        fail(current, e)
+        current = null
+      }
+      var pending = inFlight.poll
+      while (pending != null) {
+        fail(pending, e)
+        pending = inFlight.poll
+      }
+      pending = sendQueue.poll
+      while (pending != null) {
+        fail(pending, e)
+        pending = sendQueue.poll
+      }
+    }
+  }
+}
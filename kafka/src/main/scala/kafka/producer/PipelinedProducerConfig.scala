@@ -0,0 +1,36 @@
+/*
+ * Copyright 2010 LinkedIn
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.producer
+
+import java.util.Properties
+import kafka.utils.Utils
+
+class PipelinedProducerConfig(props: Properties) {
+
+  val bufferSize = Utils.getInt(props, "buffer.size", 100*1024)
+
+  val connectTimeoutMs = Utils.getInt(props, "connect.timeout.ms", 5000)
+
+  /** the number of connections kept to each broker */
+  val connectionsPerBroker = Utils.getInt(props, "connections.per.broker", 2)
+
+  /** the number of requests sent on a connection before the senders wait for them to complete */
+  val maxInFlightRequests = Utils.getInt(props, "max.inflight.requests", 16)
+
+  /** if true, the broker acks every request with the offset the messages were appended at */
+  val requireAcks = Utils.getBoolean(props, "request.acks", false)
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2010 LinkedIn
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.producer
+
+import scala.collection._
+import org.apache.log4j.Logger
+import org.I0Itec.zkclient.{IZkChildListener, ZkClient}
+import kafka.cluster.{Broker, Partition}
+import kafka.utils.{StringSerializer, ZkUtils, Utils}
+
+/**
+ * Reads the broker and partition registry from zookeeper:
+ *   /brokers/ids/[broker_id] --> host:port
+ *   /brokers/topics/[topic]/[broker_id] --> number of partitions
+ * The registry is cached and refreshed by child watches, so brokers coming and going, or registering
+ * a topic, are picked up without polling.
+ */
+class ZKBrokerPartitionInfo(zkConnect: String, zkSessionTimeoutMs: Int, zkConnectionTimeoutMs: Int)
+        extends BrokerPartitionInfo {
+  private val logger = Logger.getLogger(classOf[ZKBrokerPartitionInfo])
+  private val zkClient = new ZkClient(zkConnect, zkSessionTimeoutMs, zkConnectionTimeoutMs, StringSerializer)
+  private val lock = new Object
+  private var brokers: Map[Int, Broker] = readBrokers()
+  private val partitionsPerTopic = new mutable.HashMap[String, List[Partition]]
+
+  zkClient.subscribeChildChanges(ZkUtils.brokerIdsPath, new IZkChildListener() {
+    def handleChildChange(parentPath: String, curChilds: java.util.List[String]) {
+      lock synchronized {
+        logger.info("brokers changed, refreshing broker registry")
+        brokers = readBrokers()
+      }
+    }
+  })
+
+  private val topicListener = new IZkChildListener() {
+    def handleChildChange(parentPath: String, curChilds: java.util.List[String]) {
+      val topic = ZkUtils.getLastPart(parentPath)
+      lock synchronized {
+        logger.info("brokers for topic " + topic + " changed, refreshing partitions")
+        partitionsPerTopic.put(topic, readPartitions(topic))
+      }
+    }
+  }
+
+  def getBrokerPartitionInfo(topic: String): Seq[Partition] = {
+    lock synchronized {
+      partitionsPerTopic.get(topic) match {
+        case Some(partitions) => partitions
+        case None =>
+          zkClient.subscribeChildChanges(ZkUtils.brokerTopicsPath + "/" + topic, topicListener)
+          val partitions = readPartitions(topic)
+          partitionsPerTopic.put(topic, partitions)
+          partitions
+      }
+    }
+  }
+
+  def getBroker(brokerId: Int): Option[Broker] = lock synchronized { brokers.get(brokerId) }
+
+  def getAllBrokers: Seq[Broker] = lock synchronized { brokers.values.toList.sortWith((s,t) => s.id < t.id) }
+
+  def close() {
+    Utils.swallow(logger.warn, zkClient.close())
+  }
+
+  private def readBrokers(): Map[Int, Broker] = {
+    val ret = new mutable.HashMap[Int, Broker]
+    for (node <- ZkUtils.getChildrenParentMayNotExist(zkClient, ZkUtils.brokerIdsPath)) {
+      val brokerZKString = ZkUtils.readDataMaybeNull(zkClient, ZkUtils.brokerIdsPath + "/" + node)
+      if (brokerZKString != null)
+        ret.put(node.toInt, Broker.createBroker(node.toInt, brokerZKString))
+    }
+    ret
+  }
+
+  private def readPartitions(topic: String): List[Partition] = {
+    val topicPath = ZkUtils.brokerTopicsPath + "/" + topic
+    var partitions: List[Partition] = Nil
+    for (brokerId <- ZkUtils.getChildrenParentMayNotExist(zkClient, topicPath)) {
+      val nParts = ZkUtils.readDataMaybeNull(zkClient, topicPath + "/" + brokerId)
+      if (nParts != null)
+        for (partId <- 0 until nParts.toInt)
+          partitions ::= new Partition(brokerId.toInt, partId)
+    }
+    partitions.sortWith((s,t) => s < t)
+  }
+}
@@ -19,30 +19,53 @@ package kafka.producer.async
 import java.util.concurrent.LinkedBlockingQueue
 import kafka.utils.Utils
 import java.util.concurrent.atomic.AtomicBoolean
-import kafka.producer.SimpleProducer
+import kafka.producer._
 import kafka.serializer.SerDeser
 import org.apache.log4j.{Level, Logger}
 
 object AsyncKafkaProducer {
   val shutdown = new Object
+
+  /**
+   * The partitioned producer to route events with, if zk.connect or partitioner.class is set
+   */
+  def partitionedProducer[T](config: ProducerConfig): Option[PartitionedProducer[T]] = {
+    if (config.zkConnect == null && config.partitionerClass == null)
+      return None
+    val partitioner: Partitioner[T] =
+      if (config.partitionerClass == null) new DefaultPartitioner[T] else Utils.getObject(config.partitionerClass)
+    val brokerPartitionInfo =
+      if (config.zkConnect != null)
+        new ZKBrokerPartitionInfo(config.zkConnect, config.zkSessionTimeoutMs, config.zkConnectionTimeoutMs)
+      else
+        new ConfigBrokerPartitionInfo(config.host, config.port, config.numPartitions)
+    Some(new PartitionedProducer[T](brokerPartitionInfo, partitioner, config.bufferSize, config.connectTimeoutMs,
+      config.reconnectInterval))
+  }
 }
 
 class AsyncKafkaProducer[T](config: ProducerConfig,
                             producer: SimpleProducer,
-                            serializer: SerDeser[T]) {
+                            serializer: SerDeser[T],
+                            partitionedProducer: Option[PartitionedProducer[T]]) {
 
   private val logger = Logger.getLogger(classOf[AsyncKafkaProducer[T]])
   private val closed = new AtomicBoolean(false)
   private val queue = new LinkedBlockingQueue[T](config.queueSize)
-  private val handler = new EventHandler[T](producer, serializer)
+  private val handler = new EventHandler[T](producer, serializer, partitionedProducer)
   private val sendThread = new ProducerSendThread(queue, serializer, handler,
     config.queueTime, config.batchSize, AsyncKafkaProducer.shutdown)
   sendThread.setDaemon(false)
 
+  def this(config: ProducerConfig, producer: SimpleProducer, serializer: SerDeser[T]) =
+    this(config, producer, serializer, None)
+
   def this(config: ProducerConfig) {
     this(config,
-      new SimpleProducer(config.host, config.port, config.bufferSize, config.connectTimeoutMs,config.reconnectInterval),
-      Utils.getObject(config.serializerClass))
+      if (config.zkConnect != null) null
+      else new SimpleProducer(config.host, config.port, config.bufferSize, config.connectTimeoutMs,config.reconnectInterval),
+      Utils.getObject(config.serializerClass),
+      AsyncKafkaProducer.partitionedProducer[T](config))
   }
   
   def start = sendThread.start
@@ -16,21 +16,32 @@
 
 package kafka.producer.async
                                 
-import kafka.serializer.SerDeser
+import kafka.serializer.{BufferEncoder, SerDeser}
 import kafka.message.ByteBufferMessageSet
 import collection.mutable.HashMap
 import collection.mutable.Map
 import org.apache.log4j.Logger
 import kafka.api.ProducerRequest
-import kafka.producer.SimpleProducer
+import kafka.producer.{PartitionedProducer, SimpleProducer}
 
+/**
+ * Sends batches of events. Without a partitioned producer the events of each topic go to the one broker
+ * in a single message set, and the broker picks a random partition. With one, each event is sent to the
+ * partition its partitioner picks, on the broker owning that partition.
+ */
 class EventHandler[T](val producer: SimpleProducer,
-                      val serializer: SerDeser[T]) {
+                      val serializer: SerDeser[T],
+                      val partitionedProducer: Option[PartitionedProducer[T]]) {
 
   private val logger = Logger.getLogger(classOf[EventHandler[T]])
+
+  def this(producer: SimpleProducer, serializer: SerDeser[T]) = this(producer, serializer, None)
   
   def handle(events: Seq[T]) {
-    send(serialize(collate(events)))        
+    partitionedProducer match {
+      case Some(p) => p.sendEncoded[T](events.map(e => (serializer.getTopic(e), e, e)), encode)
+      case None => send(serialize(collate(events)))
+    }
   }
 
   def send(messagesPerTopic: Map[String, ByteBufferMessageSet]) {
@@ -42,10 +53,20 @@ class EventHandler[T](val producer: SimpleProducer,
     }
   }
 
-  def serialize(eventsPerTopic: Map[String, Seq[T]]): Map[String, ByteBufferMessageSet] = {
-    import scala.collection.JavaConversions._
-    val eventsPerTopicMap = eventsPerTopic.map(e => (e._1, e._2.map(l => serializer.toMessage(l))))
-    eventsPerTopicMap.map(e => (e._1, new ByteBufferMessageSet(asList(e._2))))
+  def serialize(eventsPerTopic: Map[String, Seq[T]]): Map[String, ByteBufferMessageSet] =
+    eventsPerTopic.map(e => (e._1, encode(e._2)))
+
+  /**
+   * Turn events into a message set. A BufferEncoder writes the payloads straight into the set's buffer,
+   * otherwise a Message is made for each event and copied into the set.
+   */
+  private def encode(events: Seq[T]): ByteBufferMessageSet = {
+    serializer match {
+      case bufferEncoder: BufferEncoder[_] =>
+        ByteBufferMessageSet.encode(events, bufferEncoder.asInstanceOf[BufferEncoder[T]])
+      case _ =>
+        new ByteBufferMessageSet(events.map(serializer.toMessage(_)): _*)
+    }
   }
 
   def collate(events: Seq[T]): Map[String, Seq[T]] = {
@@ -62,6 +83,8 @@ class EventHandler[T](val producer: SimpleProducer,
   }
   
   def close = {
-    producer.close
+    if (producer != null)
+      producer.close
+    partitionedProducer.foreach(_.close())
   }
 }
\ No newline at end of file
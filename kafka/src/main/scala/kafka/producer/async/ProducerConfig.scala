@@ -22,10 +22,10 @@ import java.util.Properties
 class ProducerConfig(props: Properties) {
 
   /** the broker to which the producer sends events */
-  val host = Utils.getString(props, "host")
+  val host = Utils.getString(props, "host", null)
 
   /** the port on which the broker is running */
-  val port = Utils.getInt(props, "port")
+  val port = Utils.getInt(props, "port", 0)
 
   val bufferSize = Utils.getInt(props, "buffer.size", 100*1024)
 
@@ -44,5 +44,23 @@ class ProducerConfig(props: Properties) {
 
   /** the serializer class for events */
   val serializerClass = Utils.getString(props, "serializer.class")
+
+  /** the partitioner class for events. If set, events are sent to the partition it picks rather than
+      to a random partition */
+  val partitionerClass = Utils.getString(props, "partitioner.class", null)
+
+  /** if set, the brokers and partitions of each topic are read from zookeeper, and events are sent straight
+      to the broker owning their partition; host and port are not needed */
+  val zkConnect = Utils.getString(props, "zk.connect", null)
+
+  val zkSessionTimeoutMs = Utils.getInt(props, "zk.sessiontimeout.ms", 6000)
+
+  val zkConnectionTimeoutMs = Utils.getInt(props, "zk.connectiontimeout.ms", 6000)
+
+  /** the number of partitions on the broker given by host and port, used by the partitioner without zookeeper */
+  val numPartitions = Utils.getInt(props, "num.partitions", 1)
+
+  if (zkConnect == null && (host == null || port == 0))
+    throw new MissingConfigException("host and port must be specified when zk.connect is not")
   
 }
\ No newline at end of file
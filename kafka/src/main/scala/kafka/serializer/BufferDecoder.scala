@@ -0,0 +1,33 @@
+/*
+ * Copyright 2010 LinkedIn
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.serializer
+
+import java.nio.ByteBuffer
+import kafka.message.Message
+
+/**
+ * A decoder that reads an event from a view of the payload in the fetched buffer, without copying it out.
+ * The view is reused for the next message, so the decoder must not hold on to it.
+ */
+trait BufferDecoder[T] extends Decoder[T] {
+  /**
+   * Decode the event from the payload between the position and the limit of the view
+   */
+  def toEvent(payload: ByteBuffer): T
+
+  def toEvent(message: Message): T = toEvent(message.payload)
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2010 LinkedIn
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.serializer
+
+import java.nio.ByteBuffer
+import kafka.message.{ByteBufferMessageSet, Message}
+
+/**
+ * An encoder that writes the payload of an event straight into the buffer of the outgoing message set,
+ * instead of building a byte array and a Message for every event
+ */
+trait BufferEncoder[T] extends Encoder[T] {
+  /**
+   * The exact number of payload bytes writePayload will write for the event
+   */
+  def payloadSize(event: T): Int
+
+  /**
+   * Write the payload of the event at the position of the buffer, advancing it by payloadSize(event)
+   */
+  def writePayload(event: T, buffer: ByteBuffer)
+
+  def toMessage(event: T): Message = {
+    val buffer = ByteBufferMessageSet.encode(List(event), this).buffer
+    buffer.position(4)
+    new Message(buffer.slice())
+  }
+}
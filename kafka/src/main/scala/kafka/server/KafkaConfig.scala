@@ -51,11 +51,23 @@ class KafkaConfig(props: Properties) extends ZKConfig(props) {
   /* the default number of log partitions per topic */
   val numPartitions = Utils.getIntInRange(props, "num.partitions", 1, (1, Int.MaxValue))
   
-  /* the directory in which the log data is kept */
-  val logDir = Utils.getString(props, "log.dir")
+  /* the directories in which the log data is kept, e.g., /disk1/kafka-logs,/disk2/kafka-logs; defaults to log.dir */
+  val logDirs: Seq[String] = {
+    val dirs = Utils.getString(props, "log.dirs", "").split(",").map(_.trim).filter(_.length > 0)
+    if(dirs.isEmpty) List(Utils.getString(props, "log.dir")) else dirs.toList
+  }
+
+  /* the directory in which the log data is kept; the first of the log directories */
+  val logDir = logDirs.head
   
   /* the maximum size of a single log file */
   val logFileSize = Utils.getIntInRange(props, "log.file.size", 1*1024*1024*1024, (Message.HeaderSize, Int.MaxValue))
+
+  /* if true, the next log file is created at full size in the background so that rolling over to it is cheap */
+  val logPreallocate = Utils.getBoolean(props, "log.preallocate", false)
+
+  /* if true, preallocated log files are also written through once so that their blocks are allocated up front */
+  val logPreallocateTouch = Utils.getBoolean(props, "log.preallocate.touch", false)
   
   /* the number of messages accumulated on a log partition before messages are flushed to disk */
   val flushInterval = Utils.getIntInRange(props, "log.flush.interval", 500, (1, Int.MaxValue))
@@ -80,4 +92,16 @@ class KafkaConfig(props: Properties) extends ZKConfig(props) {
 
    /* the number of partitions for selected topics, e.g., topic1:8,topic2:16 */
   val topicPartitionsMap = Utils.getTopicPartitions(Utils.getString(props, "topic.partition.count.map", ""))
+
+  /* the maximum rate in bytes/sec at which any one client host may produce; 0 means unlimited */
+  val produceQuotaBytesPerSec = Utils.getIntInRange(props, "quota.produce.bytes.per.sec", 0, (0, Int.MaxValue))
+
+  /* the maximum rate in bytes/sec at which any one client host may fetch; 0 means unlimited */
+  val fetchQuotaBytesPerSec = Utils.getIntInRange(props, "quota.fetch.bytes.per.sec", 0, (0, Int.MaxValue))
+
+  /* the produce rate in bytes/sec for selected client hosts, e.g., 10.0.0.1:1048576,10.0.0.2:0 */
+  val produceQuotaOverrides = Utils.getClientQuotas(Utils.getString(props, "quota.produce.overrides", ""))
+
+  /* the fetch rate in bytes/sec for selected client hosts, e.g., 10.0.0.1:1048576,10.0.0.2:0 */
+  val fetchQuotaOverrides = Utils.getClientQuotas(Utils.getString(props, "quota.fetch.overrides", ""))
 }
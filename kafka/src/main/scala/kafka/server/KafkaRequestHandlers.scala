@@ -42,6 +42,7 @@ class KafkaRequestHandlers(val logManager: LogManager) {
       case RequestKeys.MultiFetch => handleMultiFetchRequest _
       case RequestKeys.MultiProduce => handleMultiProducerRequest _
       case RequestKeys.Offsets => handleOffsetRequest _
+      case RequestKeys.AckedProduce => handleAckedProducerRequest _
       case _ => throw new IllegalStateException("No mapping found for handler id " + requestTypeId)
     }
   }
@@ -65,6 +66,28 @@ class KafkaRequestHandlers(val logManager: LogManager) {
     None
   }
   
+  def handleAckedProducerRequest(receive: Receive): Option[Send] = {
+    if(logger.isTraceEnabled)
+      logger.trace("Handling acked producer request")
+    val ackedRequest = AckedProducerRequest.readFrom(receive.buffer)
+    val request = ackedRequest.request
+    val partition = request.getTranslatedPartition(logManager.chooseRandomPartition)
+    try {
+      val offset = logManager.getOrCreateLog(request.topic, partition).append(request.messages)
+      if(logger.isTraceEnabled)
+        logger.trace(request.messages.sizeInBytes + " bytes written to logs at offset " + offset)
+      Some(new ProducerAckSend(ackedRequest.correlationId, offset, ErrorMapping.NO_ERROR))
+    }
+    catch {
+      case e: RuntimeException =>
+        val code = ErrorMapping.codeFor(e.getClass.asInstanceOf[Class[Exception]])
+        if (code == ErrorMapping.NO_ERROR)
+          logger.error("error handling acked producer request for topic " + request.topic, e)
+        Some(new ProducerAckSend(ackedRequest.correlationId, -1L,
+          if (code == ErrorMapping.NO_ERROR) ErrorMapping.UNKNOWN_CODE else code))
+    }
+  }
+
   def handleMultiProducerRequest(receive: Receive): Option[Send] = {
     if(logger.isTraceEnabled)
       logger.trace("Handling multiproducer request")
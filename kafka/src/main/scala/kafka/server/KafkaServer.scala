@@ -22,7 +22,7 @@ import kafka.log.LogManager
 import java.util.concurrent.CountDownLatch
 import java.util.concurrent.atomic.AtomicBoolean
 import kafka.utils.{Utils, SystemTime, KafkaScheduler}
-import kafka.network.{SocketServerStats, SocketServer}
+import kafka.network.{ClientQuotas, SocketServerStats, SocketServer}
 
 class KafkaServer(val config: KafkaConfig) {
   
@@ -34,6 +34,17 @@ class KafkaServer(val config: KafkaConfig) {
   
   @BeanProperty
   var socketServer: SocketServer = null
+
+  private val quotas: Option[ClientQuotas] =
+    if(config.produceQuotaBytesPerSec > 0 || config.fetchQuotaBytesPerSec > 0 ||
+       !config.produceQuotaOverrides.isEmpty || !config.fetchQuotaOverrides.isEmpty)
+      Some(new ClientQuotas(config.produceQuotaBytesPerSec,
+                            config.fetchQuotaBytesPerSec,
+                            config.produceQuotaOverrides,
+                            config.fetchQuotaOverrides,
+                            config.monitoringPeriodSecs))
+    else
+      None
   
   @BeanProperty
   val scheduler = new KafkaScheduler(1, "kafka-logcleaner-", false)
@@ -52,7 +63,8 @@ class KafkaServer(val config: KafkaConfig) {
       socketServer = new SocketServer(config.port,
                                       config.numThreads,
                                       config.monitoringPeriodSecs,
-                                      handlers.handlerFor)
+                                      handlers.handlerFor,
+                                      quotas)
       Utils.swallow(logger.warn, Utils.registerMBean(socketServer.stats, statsMBeanName))
       socketServer.startup
       /**
@@ -75,6 +87,7 @@ class KafkaServer(val config: KafkaConfig) {
     scheduler.shutdown
     socketServer.shutdown()
     Utils.swallow(logger.warn, Utils.unregisterMBean(statsMBeanName))
+    quotas.foreach(_.close())
     logManager.close()
     shutdownLatch.countDown()
     logger.info("shut down completed")
@@ -0,0 +1,274 @@
+/*
+ * Copyright 2010 LinkedIn
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.tools
+
+import java.io._
+import java.nio._
+import java.nio.channels.FileChannel
+import java.util.concurrent.{Callable, Executors}
+import java.util.zip.CRC32
+import joptsimple._
+import scala.collection.mutable.ArrayBuffer
+import kafka.log.Log
+import kafka.message._
+import kafka.utils._
+
+/**
+ * The result of verifying one log segment
+ */
+class SegmentReport(val file: File, val startOffset: Long, val sizeInBytes: Long) {
+  /* the number of messages with a valid checksum */
+  var validMessages = 0L
+  /* the number of messages whose checksum does not match their payload */
+  var invalidMessages = 0L
+  /* the log offset of the first message with a bad checksum, or -1 */
+  var firstInvalidOffset = -1L
+  /* the log offset at which the framing is broken and scanning had to stop, or -1 */
+  var corruptOffset = -1L
+  /* the bytes covered by complete messages */
+  var validBytes = 0L
+  /* the zeroed bytes after the last message, e.g. the unused end of a preallocated segment; only the last
+     segment of a partition may have them, a rolled segment is trimmed to its messages */
+  var zeroTailBytes = 0L
+  var minMessageSize = Int.MaxValue
+  var maxMessageSize = 0
+  var totalMessageSize = 0L
+  /* message counts by size, where bucket i holds sizes in (2^(i-1), 2^i] */
+  val sizeHistogram = new Array[Long](33)
+  var error: Option[String] = None
+
+  def numMessages = validMessages + invalidMessages
+
+  def isClean = error.isEmpty && invalidMessages == 0 && corruptOffset < 0
+
+  def record(messageSize: Int) {
+    minMessageSize = scala.math.min(minMessageSize, messageSize)
+    maxMessageSize = scala.math.max(maxMessageSize, messageSize)
+    totalMessageSize += messageSize
+    sizeHistogram(32 - Integer.numberOfLeadingZeros(messageSize - 1)) += 1
+  }
+
+  override def toString(): String = {
+    val status = 
+      if(error.isDefined) "error: " + error.get
+      else if(corruptOffset >= 0) "CORRUPT at offset " + corruptOffset
+      else if(invalidMessages > 0) "INVALID CRC from offset " + firstInvalidOffset
+      else "ok"
+    file.getPath + "\t" + status + "\tmessages: " + numMessages + "\tinvalid: " + invalidMessages + 
+      "\tvalid bytes: " + validBytes + "/" + sizeInBytes + "\tzeroed tail: " + zeroTailBytes
+  }
+}
+
+/**
+ * Command line program to verify the log segments of a whole log directory in parallel. Each segment is
+ * memory-mapped and scanned in place: the framing of every message is checked, the checksum of every
+ * message is recomputed, and message counts and sizes are reported. Nothing is printed per message.
+ */
+object VerifyLogSegments {
+
+  private val ScratchSize = 64 * 1024
+
+  def main(args: Array[String]): Unit = {
+    val parser = new OptionParser
+    val threadsOpt = parser.accepts("threads", "The number of segments to verify in parallel.")
+                           .withRequiredArg
+                           .describedAs("threads")
+                           .ofType(classOf[java.lang.Integer])
+                           .defaultsTo(Runtime.getRuntime.availableProcessors)
+    val onlyBadOpt = parser.accepts("only-bad", "Only print the segments that are not clean.")
+    val histogramOpt = parser.accepts("histogram", "Print the distribution of message sizes.")
+
+    val options = parser.parse(args : _*)
+    val paths = options.nonOptionArguments
+    if(paths.isEmpty) {
+      System.err.println("USAGE: VerifyLogSegments [options] <log dir, partition dir or segment file>...")
+      parser.printHelpOn(System.err)
+      System.exit(1)
+    }
+
+    val segments = new ArrayBuffer[File]
+    for(i <- 0 until paths.size)
+      segments ++= findSegments(new File(paths.get(i)))
+    val threads = options.valueOf(threadsOpt).intValue
+    val onlyBad = options.has(onlyBadOpt)
+    println("Verifying " + segments.size + " segments with " + threads + " threads")
+
+    val startMs = SystemTime.milliseconds
+    val reports = verifyAll(segments, threads)
+    val totals = new SegmentReport(new File("total"), 0, reports.foldLeft(0L)(_ + _.sizeInBytes))
+    for(report <- reports) {
+      if(!onlyBad || !report.isClean)
+        println(report)
+      totals.validMessages += report.validMessages
+      totals.invalidMessages += report.invalidMessages
+      totals.validBytes += report.validBytes
+      totals.zeroTailBytes += report.zeroTailBytes
+      totals.totalMessageSize += report.totalMessageSize
+      if(report.numMessages > 0) {
+        totals.minMessageSize = scala.math.min(totals.minMessageSize, report.minMessageSize)
+        totals.maxMessageSize = scala.math.max(totals.maxMessageSize, report.maxMessageSize)
+      }
+      for(i <- 0 until totals.sizeHistogram.length)
+        totals.sizeHistogram(i) += report.sizeHistogram(i)
+    }
+    val elapsedMs = scala.math.max(1L, SystemTime.milliseconds - startMs)
+
+    val bad = reports.filter(!_.isClean)
+    println("----------------------------------------------")
+    println("segments: " + reports.size + "\tbad segments: " + bad.size)
+    println("messages: " + totals.numMessages + "\tinvalid: " + totals.invalidMessages)
+    println("bytes: " + totals.sizeInBytes + "\tvalid bytes: " + totals.validBytes + "\tzeroed tail: " + totals.zeroTailBytes)
+    if(totals.numMessages > 0)
+      println("message size min/avg/max: " + totals.minMessageSize + "/" + 
+              totals.totalMessageSize / totals.numMessages + "/" + totals.maxMessageSize)
+    println("scanned " + totals.sizeInBytes / (1024 * 1024) + " MB in " + elapsedMs + " ms (" + 
+            (totals.sizeInBytes * 1000 / elapsedMs) / (1024 * 1024) + " MB/sec)")
+    if(options.has(histogramOpt)) {
+      for(i <- 0 until totals.sizeHistogram.length; if totals.sizeHistogram(i) > 0)
+        println("size <= " + (1L << i) + ":\t" + totals.sizeHistogram(i))
+    }
+    if(!bad.isEmpty)
+      System.exit(2)
+  }
+
+  /**
+   * Find the segment files under the given file, which may be a segment, a partition directory or a log directory
+   */
+  def findSegments(file: File): Seq[File] = {
+    if(file.isDirectory) {
+      val children = file.listFiles
+      if(children == null)
+        Nil
+      else
+        children.sortBy(_.getName).flatMap(findSegments(_))
+    } else if(file.getName.endsWith(Log.FILE_SUFFIX)) {
+      List(file)
+    } else {
+      Nil
+    }
+  }
+
+  /**
+   * Verify the given segments using the given number of threads, returning the reports in the same order
+   */
+  def verifyAll(segments: Seq[File], threads: Int): Seq[SegmentReport] = {
+    val executor = Executors.newFixedThreadPool(threads)
+    try {
+      val futures = segments.map(segment => executor.submit(new Callable[SegmentReport] {
+        def call(): SegmentReport = verify(segment)
+      }))
+      futures.map(_.get)
+    } finally {
+      executor.shutdown()
+    }
+  }
+
+  /**
+   * Whether the segment is the newest one of its partition directory, the only one that may still be preallocated
+   */
+  def isLastSegment(file: File): Boolean = {
+    val siblings = file.getAbsoluteFile.getParentFile.listFiles
+    siblings == null || siblings.forall(f => !f.getName.endsWith(Log.FILE_SUFFIX) || f.getName <= file.getName)
+  }
+
+  /**
+   * Verify a single segment by scanning a read-only memory map of it
+   */
+  def verify(file: File): SegmentReport = {
+    val startOffset = 
+      try { file.getName.split("\\.")(0).toLong } catch { case e: NumberFormatException => 0L }
+    val report = new SegmentReport(file, startOffset, file.length)
+    if(report.sizeInBytes > Int.MaxValue) {
+      report.error = Some("segment is too large to map")
+      return report
+    }
+    val channel = new RandomAccessFile(file, "r").getChannel
+    try {
+      scan(channel.map(FileChannel.MapMode.READ_ONLY, 0, report.sizeInBytes), report, isLastSegment(file))
+    } catch {
+      case e: IOException => report.error = Some(e.toString)
+    } finally {
+      channel.close()
+    }
+    report
+  }
+
+  private def scan(buffer: ByteBuffer, report: SegmentReport, lastSegment: Boolean) {
+    val scratch = new Array[Byte](ScratchSize)
+    val crc = new CRC32
+    val limit = buffer.limit
+    var position = 0
+    var done = false
+    while(!done && position + MessageSet.LogOverhead <= limit) {
+      val size = buffer.getInt(position)
+      if(size == 0 && isZeroed(buffer, position)) {
+        // the unused end of a preallocated segment, which a segment that has been rolled no longer has
+        report.zeroTailBytes = limit - position
+        if(!lastSegment)
+          report.corruptOffset = report.startOffset + position
+        done = true
+      } else if(size < Message.HeaderSize || size > limit - position - MessageSet.LogOverhead) {
+        report.corruptOffset = report.startOffset + position
+        done = true
+      } else {
+        val messageStart = position + MessageSet.LogOverhead
+        val checksum = Utils.getUnsignedInt(buffer, messageStart + Message.CrcOffset)
+        val payloadSize = size - Message.HeaderSize
+        if(checksum == crc32(buffer, messageStart + Message.PayloadOffset, payloadSize, crc, scratch)) {
+          report.validMessages += 1
+        } else {
+          report.invalidMessages += 1
+          if(report.firstInvalidOffset < 0)
+            report.firstInvalidOffset = report.startOffset + position
+        }
+        report.record(size)
+        position = messageStart + size
+        report.validBytes = position
+      }
+    }
+    if(!done && position < limit)
+      report.corruptOffset = report.startOffset + position
+  }
+
+  private def isZeroed(buffer: ByteBuffer, from: Int): Boolean = {
+    var i = from
+    while(i < buffer.limit) {
+      if(buffer.get(i) != 0)
+        return false
+      i += 1
+    }
+    true
+  }
+
+  /**
+   * Compute the CRC32 of part of a buffer that has no backing array, copying it through a scratch array
+   */
+  private def crc32(buffer: ByteBuffer, offset: Int, size: Int, crc: CRC32, scratch: Array[Byte]): Long = {
+    crc.reset()
+    val view = buffer.duplicate
+    view.position(offset)
+    var remaining = size
+    while(remaining > 0) {
+      val n = scala.math.min(remaining, scratch.length)
+      view.get(scratch, 0, n)
+      crc.update(scratch, 0, n)
+      remaining -= n
+    }
+    crc.getValue
+  }
+
+}
@@ -39,6 +39,9 @@ class KafkaScheduler(val numThreads: Int, val baseThreadName: String, isDaemon:
   def scheduleWithRate(fun: () => Unit, delayMs: Long, periodMs: Long) =
     executor.scheduleAtFixedRate(Utils.loggedRunnable(fun), delayMs, periodMs, TimeUnit.MILLISECONDS)
 
+  def submit(fun: () => Unit) =
+    executor.submit(Utils.loggedRunnable(fun))
+
   def shutdown() = {
     executor.shutdownNow
     logger.info("shutdown scheduler " + baseThreadName)
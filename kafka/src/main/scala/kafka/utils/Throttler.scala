@@ -51,7 +51,22 @@ class Throttler(val desiredRatePerSec: Double,
     this(desiredRatePerSec, Throttler.DefaultCheckIntervalMs, true, SystemTime)
   
   def maybeThrottle(observed: Double) {
+    // sleep holding the lock, so every thread sharing the throttler is paused
     lock synchronized {
+      val sleepTime = throttleDelayMs(observed)
+      if(sleepTime > 0)
+        time.sleep(sleepTime)
+    }
+  }
+
+  /**
+   * Record the observed amount and return how long, in ms, the caller should pause to attain the
+   * desired rate. Unlike maybeThrottle() this never sleeps, so the pause can be applied elsewhere;
+   * other threads sharing the throttler are not held back by it.
+   */
+  def throttleDelayMs(observed: Double): Long = {
+    lock synchronized {
+      var sleepTime = 0L
       observedSoFar += observed
       val now = time.nanoseconds
       val ellapsedNs = now - periodStartNs
@@ -64,17 +79,15 @@ class Throttler(val desiredRatePerSec: Double,
           // solve for the amount of time to sleep to make us hit the desired rate
           val desiredRateMs = desiredRatePerSec / Time.MsPerSec.asInstanceOf[Double]
           val ellapsedMs = ellapsedNs / Time.NsPerMs
-          val sleepTime = round(observedSoFar / desiredRateMs - ellapsedMs)
-          if(sleepTime > 0) {
-            if(Throttler.logger.isDebugEnabled)
-              Throttler.logger.debug("Natural rate is " + rateInSecs + " per second but desired rate is " + desiredRatePerSec + 
-                                     ", sleeping for " + sleepTime + " ms to compensate.")
-            time.sleep(sleepTime)
-          }
+          sleepTime = round(observedSoFar / desiredRateMs - ellapsedMs)
+          if(sleepTime > 0 && Throttler.logger.isDebugEnabled)
+            Throttler.logger.debug("Natural rate is " + rateInSecs + " per second but desired rate is " + desiredRatePerSec + 
+                                   ", sleeping for " + sleepTime + " ms to compensate.")
         }
         periodStartNs = now
         observedSoFar = 0
       }
+      sleepTime
     }
   }
   
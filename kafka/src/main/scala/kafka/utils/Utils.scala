@@ -502,6 +502,12 @@ object Utils {
     getCSVMap(allPartitions, exceptionMsg, successMsg)
   }
 
+  def getClientQuotas(allQuotas: String) : Map[String, Int] = {
+    val exceptionMsg = "Malformed token for client quota overrides in server.properties: "
+    val successMsg =  "The quota in bytes/sec for client "
+    getCSVMap(allQuotas, exceptionMsg, successMsg)
+  }
+
   def getObject[T<:AnyRef](className: String): T = {
     val clazz = Class.forName(className)
     val clazzT = clazz.asInstanceOf[Class[T]]
@@ -172,6 +172,15 @@ object ZkUtils {
     client.getChildren(path)
   }
 
+  def getChildrenParentMayNotExist(client: ZkClient, path: String): Seq[String] = {
+    try {
+      getChildren(client, path)
+    }
+    catch {
+      case e: ZkNoNodeException => Nil
+    }
+  }
+
   /**
    * Check if the given path exists
    */
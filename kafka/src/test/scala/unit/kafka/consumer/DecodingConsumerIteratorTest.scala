@@ -0,0 +1,70 @@
+/*
+ * Copyright 2010 LinkedIn
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.consumer
+
+import java.nio.ByteBuffer
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.atomic.{AtomicInteger, AtomicLong}
+import junit.framework.TestCase
+import junit.framework.Assert._
+import kafka.cluster.Partition
+import kafka.message.{Message, MessageSet, ByteBufferMessageSet}
+import kafka.serializer.{BufferDecoder, BufferEncoder}
+
+class StringBufferSerializer extends BufferEncoder[String] with BufferDecoder[String] {
+  def payloadSize(event: String): Int = event.getBytes("UTF-8").length
+
+  def writePayload(event: String, buffer: ByteBuffer) {
+    buffer.put(event.getBytes("UTF-8"))
+  }
+
+  def toEvent(payload: ByteBuffer): String = {
+    val bytes = new Array[Byte](payload.remaining)
+    payload.get(bytes)
+    new String(bytes, "UTF-8")
+  }
+}
+
+class DecodingConsumerIteratorTest extends TestCase {
+
+  private val serializer = new StringBufferSerializer
+  private val events = List("a", "", "hello", "there")
+
+  def testEncodeMatchesMessages() {
+    val encoded = ByteBufferMessageSet.encode(events, serializer)
+    val expected = new ByteBufferMessageSet(events.map(e => new Message(e.getBytes("UTF-8"))): _*)
+    assertEquals(expected, encoded)
+    for (message <- encoded)
+      assertTrue(message.isValid)
+    assertEquals(new Message("hello".getBytes("UTF-8")), serializer.toMessage("hello"))
+  }
+
+  def testDecodeFromChunks() {
+    val queue = new LinkedBlockingQueue[FetchedDataChunk]
+    val consumedOffset = new AtomicLong(0)
+    val info = new PartitionTopicInfo("topic", 0, new Partition(0, 0), queue, consumedOffset,
+      new AtomicLong(0), new AtomicInteger(1024))
+    val set = ByteBufferMessageSet.encode(events, serializer)
+    queue.put(new FetchedDataChunk(set, info))
+    queue.put(new FetchedDataChunk(ByteBufferMessageSet.encode(List("last"), serializer), info))
+    queue.put(ZookeeperConsumerConnector.shutdownCommand)
+
+    val iter = new DecodingConsumerIterator[String](queue, -1, serializer)
+    assertEquals(events ::: List("last"), iter.toList)
+    assertEquals(set.sizeInBytes + MessageSet.LogOverhead + Message.HeaderSize + 4, consumedOffset.get)
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2010 LinkedIn
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.consumer
+
+import junit.framework.TestCase
+import junit.framework.Assert._
+
+class StickyAssignmentTest extends TestCase {
+
+  private val partitions = List("0-0", "0-1", "0-2", "1-0", "1-1", "1-2", "2-0")
+
+  private def owners(assignment: scala.collection.Map[String, List[String]]): Map[String, String] =
+    Map((for ((consumer, parts) <- assignment.toList; part <- parts) yield (part, consumer)): _*)
+
+  private def checkBalanced(assignment: scala.collection.Map[String, List[String]], nConsumers: Int) {
+    val all = assignment.values.toList.flatten
+    assertEquals(partitions.size, all.size)
+    assertEquals(partitions.sortWith((s,t) => s < t), all.sortWith((s,t) => s < t))
+    val sizes = assignment.values.map(_.size)
+    assertTrue(sizes.max - sizes.min <= 1)
+    assertEquals(nConsumers, assignment.size)
+  }
+
+  def testInitialAssignment() {
+    val assignment = ZookeeperConsumerConnector.stickyAssignment(partitions, List("c1", "c2", "c3"), Map())
+    checkBalanced(assignment, 3)
+    assertEquals(List("0-0", "0-1", "0-2"), assignment("c1"))
+  }
+
+  def testConsumerLeavingOnlyMovesItsPartitions() {
+    val before = ZookeeperConsumerConnector.stickyAssignment(partitions, List("c1", "c2", "c3"), Map())
+    val after = ZookeeperConsumerConnector.stickyAssignment(partitions, List("c1", "c3"), owners(before))
+    checkBalanced(after, 2)
+    for (consumer <- List("c1", "c3"))
+      assertTrue(before(consumer).forall(after(consumer).contains(_)))
+  }
+
+  def testConsumerJoiningOnlyTakesWhatItNeeds() {
+    val before = ZookeeperConsumerConnector.stickyAssignment(partitions, List("c1", "c2"), Map())
+    val after = ZookeeperConsumerConnector.stickyAssignment(partitions, List("c1", "c2", "c3"), owners(before))
+    checkBalanced(after, 3)
+    val moved = partitions.filter(p => owners(before)(p) != owners(after)(p))
+    assertEquals(after("c3").size, moved.size)
+  }
+
+  def testStableWhenNothingChanges() {
+    val before = ZookeeperConsumerConnector.stickyAssignment(partitions, List("c1", "c2", "c3"), Map())
+    val after = ZookeeperConsumerConnector.stickyAssignment(partitions, List("c1", "c2", "c3"), owners(before))
+    assertEquals(owners(before), owners(after))
+  }
+}
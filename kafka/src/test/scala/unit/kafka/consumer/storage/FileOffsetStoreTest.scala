@@ -0,0 +1,47 @@
+/*
+ * Copyright 2010 LinkedIn
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.consumer.storage
+
+import junit.framework.TestCase
+import junit.framework.Assert._
+import kafka.TestUtils
+import kafka.utils.Utils
+
+class FileOffsetStoreTest extends TestCase {
+
+  def testCommitAndRead() {
+    val dir = TestUtils.tempDir()
+    try {
+      val store = new FileOffsetStore(dir.getAbsolutePath)
+      assertEquals(None, store.read("group1", "topic1", "0-0"))
+
+      val offsets = List(("topic1", "0-0", 10L), ("topic1", "0-1", 20L))
+      assertEquals(offsets, store.commit("group1", offsets))
+      assertEquals(Some(10L), store.read("group1", "topic1", "0-0"))
+      assertEquals(None, store.read("group2", "topic1", "0-0"))
+
+      // a new store over the same directory sees the committed offsets
+      val reopened = new FileOffsetStore(dir.getAbsolutePath)
+      assertEquals(Some(20L), reopened.read("group1", "topic1", "0-1"))
+      reopened.commit("group1", List(("topic1", "0-1", 30L)))
+      assertEquals(Some(30L), new FileOffsetStore(dir.getAbsolutePath).read("group1", "topic1", "0-1"))
+      assertEquals(Some(10L), new FileOffsetStore(dir.getAbsolutePath).read("group1", "topic1", "0-0"))
+    } finally {
+      Utils.rm(dir)
+    }
+  }
+}
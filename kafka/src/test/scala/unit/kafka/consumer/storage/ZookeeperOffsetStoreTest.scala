@@ -0,0 +1,67 @@
+/*
+ * Copyright 2010 LinkedIn
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.consumer.storage
+
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.atomic.{AtomicInteger, AtomicLong}
+import junit.framework.TestCase
+import junit.framework.Assert._
+import org.apache.zookeeper.data.Stat
+import org.I0Itec.zkclient.ZkClient
+import kafka.cluster.Partition
+import kafka.consumer.{ConsumerConfig, FetchedDataChunk, PartitionTopicInfo, ZookeeperConsumerConnector}
+import kafka.utils.{StringSerializer, ZKGroupTopicDirs}
+import kafka.zk.ZooKeeperTestHarness
+import kafka.{TestZKUtils, TestUtils}
+
+class ZookeeperOffsetStoreTest extends TestCase with ZooKeeperTestHarness {
+  val zkConnect = TestZKUtils.zookeeperConnect
+  val group = "group1"
+  val topic = "topic1"
+
+  def testOnlyChangedOffsetsAreWritten() {
+    val config = new ConsumerConfig(TestUtils.createConsumerProperties(zkConnect, group, "consumer0")) {
+      override val autoCommit = false
+    }
+    val connector = new ZookeeperConsumerConnector(config, false)
+    val zkClient = new ZkClient(zkConnect, 6000, 6000, StringSerializer)
+    try {
+      val info = new PartitionTopicInfo(topic, 0, new Partition(0, 0), new LinkedBlockingQueue[FetchedDataChunk],
+                                        new AtomicLong(0), new AtomicLong(0), new AtomicInteger(1024))
+      val path = new ZKGroupTopicDirs(group, topic).consumerOffsetDir + "/" + info.partition.name
+
+      info.consumedOffset.set(10)
+      connector.commitPartitionOffsets(List(info))
+      val stat = new Stat
+      assertEquals("10", zkClient.readData[String](path, stat))
+      val version = stat.getVersion
+
+      // nothing moved, so nothing is written
+      connector.commitPartitionOffsets(List(info))
+      zkClient.readData[String](path, stat)
+      assertEquals(version, stat.getVersion)
+
+      info.consumedOffset.set(20)
+      connector.commitPartitionOffsets(List(info))
+      assertEquals("20", zkClient.readData[String](path, stat))
+      assertEquals(version + 1, stat.getVersion)
+    } finally {
+      zkClient.close()
+      connector.shutdown
+    }
+  }
+}
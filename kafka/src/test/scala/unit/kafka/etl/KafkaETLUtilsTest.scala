@@ -0,0 +1,36 @@
+/*
+ * Copyright 2010 LinkedIn
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.etl
+
+import junit.framework.TestCase
+import junit.framework.Assert._
+import org.apache.hadoop.conf.Configuration
+
+class KafkaETLUtilsTest extends TestCase {
+
+  def testCompactPropsRoundTripThroughJob() {
+    val props = Props.of("kafka.etl.topic", "test",
+                         "output.path", "/user/${user.name}/kafka",
+                         "client.buffer.size", "1048576")
+    val conf = new Configuration(false)
+    KafkaETLUtils.setPropsInJob(conf, props)
+    val read = KafkaETLUtils.getPropsFromJob(conf)
+    assertEquals("test", read.getProperty("kafka.etl.topic"))
+    assertEquals("/user/${user.name}/kafka", read.getProperty("output.path"))
+    assertEquals("1048576", read.getProperty("client.buffer.size"))
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2010 LinkedIn
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.integration
+
+import junit.framework.TestCase
+import junit.framework.Assert._
+import kafka.TestUtils
+import kafka.api.FetchRequest
+import kafka.consumer.SimpleConsumer
+import kafka.message.{Message, ByteBufferMessageSet}
+import kafka.producer.PipelinedProducer
+import kafka.server.KafkaConfig
+
+/**
+ * End to end tests of the pipelined producer against a local server
+ */
+class PipelinedProducerTest extends TestCase with KafkaServerTestHarness {
+
+  val port = 9999
+  val host = "localhost"
+  val props = TestUtils.createBrokerConfig(0, port)
+  val config = new KafkaConfig(props) {
+                 override val enableZookeeper = false
+               }
+  val configs = List(config)
+
+  def testAckedSendsReturnOffsets() {
+    val producer = new PipelinedProducer(64*1024, 10000, 2, 4, true)
+    val consumer = new SimpleConsumer(host, port, 1000000, 64*1024)
+    try {
+      val topic = "test"
+      val sets = (0 until 10).map(i => new ByteBufferMessageSet(new Message(("message" + i).getBytes)))
+      val futures = sets.map(set => producer.send(host, port, topic, 0, set))
+      val offsets = futures.map(_.get(5000)).sortWith((s,t) => s < t)
+
+      // every set lands right after the previous one, whichever connection carried it
+      var expected = 0L
+      for ((offset, set) <- offsets.zip(sets)) {
+        assertEquals(expected, offset)
+        expected += set.sizeInBytes
+      }
+
+      var fetched: ByteBufferMessageSet = null
+      while(fetched == null || fetched.validBytes < expected)
+        fetched = consumer.fetch(new FetchRequest(topic, 0, 0, 10000))
+      assertEquals(10, fetched.iterator.toList.size)
+    } finally {
+      producer.close()
+      consumer.close()
+    }
+  }
+
+  def testUnackedSendsComplete() {
+    val producer = new PipelinedProducer(64*1024, 10000, 1, 2, false)
+    try {
+      val futures = (0 until 10).map(i =>
+        producer.send(host, port, "test", new ByteBufferMessageSet(new Message(("message" + i).getBytes))))
+      for (future <- futures)
+        assertEquals(-1L, future.get(5000))
+    } finally {
+      producer.close()
+    }
+  }
+}
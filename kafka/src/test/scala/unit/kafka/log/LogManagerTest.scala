@@ -129,4 +129,63 @@ class LogManagerTest extends TestCase {
        case _ =>
     }
   }
+
+  def testMultipleLogDirs() {
+    logManager.close
+    val dirs = List(TestUtils.tempDir(), TestUtils.tempDir())
+    val props = TestUtils.createBrokerConfig(0, -1)
+    props.put("log.dirs", dirs.map(_.getAbsolutePath).mkString(","))
+    config = new KafkaConfig(props) {
+                   override val logFileSize = 1024
+                   override val enableZookeeper = false
+                   override val numPartitions = 4
+                 }
+    logManager = new LogManager(config, null, time, -1, maxLogAge)
+    logManager.startup
+    Utils.rm(logDir)
+    logDir = dirs.head
+    assertEquals(dirs.map(_.getAbsoluteFile), logManager.logDirs.toList)
+
+    for(i <- 0 until 4)
+      logManager.getOrCreateLog("multidir", i).append(TestUtils.singleMessageSet("test".getBytes()))
+    for(dir <- dirs)
+      assertEquals("Each log directory should get half the partitions", 2, dir.listFiles.length)
+
+    // reloading finds every log in the directory it was created in
+    val placement = (0 until 4).map(i => logManager.getOrCreateLog("multidir", i).dir.getParentFile)
+    logManager.close
+    logManager = new LogManager(config, null, time, -1, maxLogAge)
+    logManager.startup
+    for(i <- 0 until 4) {
+      val log = logManager.getOrCreateLog("multidir", i)
+      assertEquals(placement(i), log.dir.getParentFile)
+      assertTrue(log.size > 0)
+    }
+    Utils.rm(dirs(1))
+  }
+
+  def testLogInTwoLogDirsIsRejected() {
+    logManager.close
+    val dirs = List(TestUtils.tempDir(), TestUtils.tempDir())
+    for(dir <- dirs)
+      new File(dir, "twice-0").mkdirs()
+    val props = TestUtils.createBrokerConfig(0, -1)
+    props.put("log.dirs", dirs.map(_.getAbsolutePath).mkString(","))
+    config = new KafkaConfig(props) {
+                   override val enableZookeeper = false
+                 }
+    try {
+      logManager = new LogManager(config, null, time, -1, maxLogAge)
+      fail("A log found in two log directories should be rejected")
+    } catch {
+      case e: IllegalStateException => // this is good
+    }
+    for(dir <- dirs)
+      Utils.rm(dir)
+    logManager = new LogManager(new KafkaConfig(TestUtils.createBrokerConfig(0, -1)) {
+                                  override val enableZookeeper = false
+                                }, null, time, -1, maxLogAge)
+    Utils.rm(logDir)
+    logDir = logManager.logDir
+  }
 }
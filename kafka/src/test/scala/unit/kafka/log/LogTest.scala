@@ -73,6 +73,86 @@ class LogTest extends TestCase {
     assertEquals(10, current)
   }
   
+  def testSizeAndOffsetTrackedWithoutFlush() {
+    val log = new Log(logDir, 100, 1000)
+    val set = TestUtils.singleMessageSet("test".getBytes())
+    var expectedOffset = 0L
+    for(i <- 0 until 20) {
+      assertEquals(expectedOffset, log.append(set))
+      expectedOffset += set.sizeInBytes
+      set.buffer.rewind
+      assertEquals(expectedOffset, log.nextAppendOffset)
+    }
+    assertTrue("Log should have rolled", log.numberOfSegments > 1)
+    // only the active segment is unflushed
+    assertEquals(log.segments.view.dropRight(1).foldLeft(0L)(_ + _.messageSet.sizeInBytes), log.size)
+    log.flush()
+    assertEquals(expectedOffset, log.size)
+
+    log.markDeletedWhile(_.start == 0)
+    assertEquals(log.segments.view.foldLeft(0L)(_ + _.size), log.size)
+    assertEquals(expectedOffset, log.nextAppendOffset)
+  }
+  
+  def testPreallocatedRollAndReload() {
+    val segmentScheduler = new KafkaScheduler(1, "kafka-log-segment-test-", true)
+    val log = new Log(logDir, 100, 1000, true, false, segmentScheduler)
+    val preallocatedFile = new File(logDir, Log.PREALLOCATED_FILE)
+    val set = TestUtils.singleMessageSet("test".getBytes())
+    var total = 0L
+    for(i <- 0 until 30) {
+      // give the background preparation a chance before each roll
+      var waited = 0
+      while(!preallocatedFile.exists && waited < 100) {
+        Thread.sleep(10)
+        waited += 1
+      }
+      log.append(set)
+      set.buffer.rewind
+      total += set.sizeInBytes
+    }
+    assertTrue("Log should have rolled", log.numberOfSegments > 1)
+    assertEquals(total, log.nextAppendOffset)
+    log.close()
+    segmentScheduler.shutdown()
+    assertFalse("Preallocated file should be removed on close", preallocatedFile.exists)
+
+    // every segment was trimmed to its data, so the log loads and reads back fully
+    val reloaded = new Log(logDir, 100, 1000)
+    assertEquals(total, reloaded.nextAppendOffset)
+    var count = 0
+    var offset = 0L
+    while(offset < total) {
+      val messages = reloaded.read(offset, 1000)
+      for(message <- messages) {
+        assertEquals(new Message("test".getBytes()), message)
+        count += 1
+        offset += MessageSet.entrySize(message)
+      }
+    }
+    assertEquals(30, count)
+  }
+
+  def testUnflushedTailOfUntrimmedSegmentFailsLoad() {
+    // a rolled segment that was never trimmed, whose second message didn't make it to disk before a crash
+    val set = TestUtils.singleMessageSet("test".getBytes())
+    val size = set.sizeInBytes.asInstanceOf[Int]
+    val segment = new FileOutputStream(new File(logDir, "0" + Log.FILE_SUFFIX))
+    try {
+      segment.write(set.buffer.array, set.buffer.arrayOffset, size)
+      segment.write(new Array[Byte](size + 100))
+    } finally {
+      segment.close()
+    }
+    createEmptyLogs(logDir, 2 * size)
+    try {
+      new Log(logDir, 1024, 1000)
+      fail("Allowed load of a segment with lost messages without complaint.")
+    } catch {
+      case e: IllegalStateException => "This is good"
+    }
+  }
+
   def testReadOutOfRange() {
     createEmptyLogs(logDir, 1024)
     val log = new Log(logDir, 1024, 1000)
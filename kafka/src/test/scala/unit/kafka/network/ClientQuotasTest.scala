@@ -0,0 +1,77 @@
+/*
+ * Copyright 2010 LinkedIn
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.network
+
+import junit.framework.TestCase
+import junit.framework.Assert._
+import kafka.api.RequestKeys
+import kafka.utils.MockTime
+
+class ClientQuotasTest extends TestCase {
+
+  val time = new MockTime()
+  var quotas: ClientQuotas = null
+
+  override def setUp() {
+    super.setUp()
+    quotas = new ClientQuotas(1000, 1000, Map("unlimited" -> 0), Map("fast" -> 100000), 30, time)
+  }
+
+  override def tearDown() {
+    quotas.close()
+    super.tearDown()
+  }
+
+  def testProduceOverQuotaIsDelayed() {
+    assertEquals(0L, quotas.recordRequest("client", RequestKeys.Produce, 500))
+    time.sleep(200)
+    // 2000 bytes in 200 ms should take 2000 ms at 1000 bytes/sec
+    assertEquals(1800L, quotas.recordRequest("client", RequestKeys.MultiProduce, 1500))
+    val stats = quotas.stats("client").get
+    assertEquals(1L, stats.getNumThrottledProduces)
+    assertEquals(1800L, stats.getTotalProduceThrottleMs)
+    assertEquals(0L, stats.getNumThrottledFetches)
+  }
+
+  def testWithinQuotaIsNotDelayed() {
+    for(i <- 0 until 10) {
+      time.sleep(200)
+      assertEquals(0L, quotas.recordRequest("client", RequestKeys.Produce, 100))
+    }
+    assertEquals(0L, quotas.stats("client").get.getNumThrottledProduces)
+  }
+
+  def testOnlyFetchResponsesCountAgainstFetchQuota() {
+    assertEquals(0L, quotas.recordRequest("client", RequestKeys.Fetch, 100000))
+    assertEquals(0L, quotas.recordResponse("client", RequestKeys.Offsets, 100000))
+    time.sleep(200)
+    assertEquals(0L, quotas.recordResponse("client", RequestKeys.AckedProduce, 100000))
+    assertTrue(quotas.recordResponse("client", RequestKeys.Fetch, 2000) > 0)
+    assertEquals(1L, quotas.stats("client").get.getNumThrottledFetches)
+  }
+
+  def testOverrides() {
+    assertEquals(0L, quotas.recordRequest("unlimited", RequestKeys.Produce, 100000))
+    time.sleep(200)
+    assertEquals(0L, quotas.recordRequest("unlimited", RequestKeys.Produce, 100000))
+    assertEquals(0L, quotas.stats("unlimited").get.getProduceQuotaBytesPerSecond)
+    quotas.recordResponse("fast", RequestKeys.Fetch, 10)
+    assertEquals(100000L, quotas.stats("fast").get.getFetchQuotaBytesPerSecond)
+    assertEquals(None, quotas.stats("unknown"))
+  }
+
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2010 LinkedIn
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.producer
+
+import junit.framework.TestCase
+import junit.framework.Assert._
+import kafka.api.ProducerRequest
+import kafka.cluster.{Broker, Partition}
+
+class PartitionerTest extends TestCase {
+
+  def testDefaultPartitionerIsStable() {
+    val partitioner = new DefaultPartitioner[String]
+    for (key <- List("a", "b", "some-longer-key", "")) {
+      val partition = partitioner.partition(key, 7)
+      assertTrue(partition >= 0 && partition < 7)
+      assertEquals(partition, partitioner.partition(key, 7))
+    }
+    val partition = partitioner.partition(null, 3)
+    assertTrue(partition >= 0 && partition < 3)
+  }
+
+  def testRoutesToOwningBroker() {
+    val info = new BrokerPartitionInfo {
+      private val brokers = List(new Broker(0, "h0", "h0", 9092), new Broker(1, "h1", "h1", 9092))
+      def getBrokerPartitionInfo(topic: String) =
+        if (topic == "known") List(new Partition(0, 0), new Partition(0, 1), new Partition(1, 0)) else Nil
+      def getBroker(brokerId: Int) = brokers.find(_.id == brokerId)
+      def getAllBrokers = brokers
+      def close() { }
+    }
+    val partitioner = new Partitioner[Int] {
+      def partition(key: Int, numPartitions: Int) = key % numPartitions
+    }
+    val producer = new PartitionedProducer[Int](info, partitioner, 1024, 1000, 1000)
+
+    val second = producer.selectPartition("known", 1)
+    assertEquals(0, second.brokerId)
+    assertEquals(1, second.partId)
+    val third = producer.selectPartition("known", 5)
+    assertEquals(1, third.brokerId)
+    assertEquals(0, third.partId)
+
+    // topics without registered partitions go to some broker, which picks the partition
+    val unknown = producer.selectPartition("unknown", 1)
+    assertEquals(ProducerRequest.RandomPartition, unknown.partId)
+    assertTrue(unknown.brokerId == 0 || unknown.brokerId == 1)
+  }
+}
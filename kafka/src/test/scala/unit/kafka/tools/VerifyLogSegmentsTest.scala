@@ -0,0 +1,119 @@
+/*
+ * Copyright 2010 LinkedIn
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.tools
+
+import java.io._
+import junit.framework.TestCase
+import junit.framework.Assert._
+import kafka.TestUtils
+import kafka.message._
+import kafka.utils.Utils
+
+class VerifyLogSegmentsTest extends TestCase {
+
+  var logDir: File = null
+  val messages = new ByteBufferMessageSet(new Message("hello".getBytes), 
+                                          new Message("a somewhat longer message".getBytes),
+                                          new Message("bye".getBytes))
+
+  override def setUp() {
+    logDir = TestUtils.tempDir()
+  }
+
+  override def tearDown() {
+    Utils.rm(logDir)
+  }
+
+  private def writeSegment(name: String, bytes: Array[Byte]): File = {
+    val partitionDir = new File(logDir, "test-0")
+    partitionDir.mkdirs()
+    val file = new File(partitionDir, name)
+    val out = new FileOutputStream(file)
+    try {
+      out.write(bytes)
+    } finally {
+      out.close()
+    }
+    file
+  }
+
+  private def messageBytes: Array[Byte] = {
+    val bytes = new Array[Byte](messages.sizeInBytes.toInt)
+    messages.buffer.duplicate.get(bytes)
+    bytes
+  }
+
+  def testCleanSegment() {
+    val report = VerifyLogSegments.verify(writeSegment("00000000000000000000.kafka", messageBytes))
+    assertTrue(report.isClean)
+    assertEquals(3L, report.validMessages)
+    assertEquals(messages.sizeInBytes, report.validBytes)
+    assertEquals(Message.HeaderSize + 3, report.minMessageSize)
+    assertEquals(Message.HeaderSize + 25, report.maxMessageSize)
+  }
+
+  def testZeroedTailIsNotCorruption() {
+    val bytes = messageBytes ++ new Array[Byte](100)
+    val report = VerifyLogSegments.verify(writeSegment("00000000000000000000.kafka", bytes))
+    assertTrue(report.isClean)
+    assertEquals(3L, report.validMessages)
+    assertEquals(100L, report.zeroTailBytes)
+  }
+
+  def testZeroedTailOfRolledSegmentIsCorruption() {
+    val bytes = messageBytes ++ new Array[Byte](100)
+    val rolled = writeSegment("00000000000000000000.kafka", bytes)
+    writeSegment("00000000000000000200.kafka", bytes)
+    val report = VerifyLogSegments.verify(rolled)
+    assertFalse(report.isClean)
+    assertEquals(3L, report.validMessages)
+    assertEquals(report.validBytes, report.corruptOffset)
+    assertTrue(VerifyLogSegments.verify(new File(rolled.getParentFile, "00000000000000000200.kafka")).isClean)
+  }
+
+  def testBadChecksumIsFound() {
+    val bytes = messageBytes
+    // flip a payload byte of the second message
+    val second = MessageSet.LogOverhead + Message.HeaderSize + 5 + MessageSet.LogOverhead + Message.HeaderSize
+    bytes(second) = (bytes(second) + 1).toByte
+    val report = VerifyLogSegments.verify(writeSegment("00000000000000000100.kafka", bytes))
+    assertFalse(report.isClean)
+    assertEquals(2L, report.validMessages)
+    assertEquals(1L, report.invalidMessages)
+    assertEquals(100L + MessageSet.LogOverhead + Message.HeaderSize + 5, report.firstInvalidOffset)
+  }
+
+  def testTruncatedMessageIsCorruption() {
+    val bytes = messageBytes.take(messages.sizeInBytes.toInt - 2)
+    val report = VerifyLogSegments.verify(writeSegment("00000000000000000000.kafka", bytes))
+    assertFalse(report.isClean)
+    assertEquals(2L, report.validMessages)
+    assertEquals(report.validBytes, report.corruptOffset)
+  }
+
+  def testVerifyAllScansWholeLogDirectory() {
+    writeSegment("00000000000000000000.kafka", messageBytes)
+    writeSegment("00000000000000000200.kafka", messageBytes)
+    writeSegment("notes.txt", "not a segment".getBytes)
+    val segments = VerifyLogSegments.findSegments(logDir)
+    assertEquals(2, segments.size)
+    val reports = VerifyLogSegments.verifyAll(segments, 2)
+    assertEquals(List(0L, 200L), reports.map(_.startOffset).toList)
+    assertEquals(6L, reports.foldLeft(0L)(_ + _.validMessages))
+  }
+
+}
@@ -109,6 +109,70 @@ class ZKLoadBalanceTest extends TestCase with ZooKeeperTestHarness {
     ZKConsumerConnector2.shutdown
   }
 
+  def testStickyLoadBalance() {
+    for (brokerID <- List(100, 200, 300))
+      ZkUtils.setupPartition(zookeeper.client, brokerID, "broker" + brokerID, 1111, topic, 2)
+    val partitions = List("100-0", "100-1", "200-0", "200-1", "300-0", "300-1")
+
+    val consumer1 = createStickyConsumer(firstConsumer)
+    val owners1 = waitForBalancedOwners(partitions, List("group1_consumer1-0"))
+
+    // a joining consumer only takes partitions from the consumer that has more than its share
+    val consumer2 = createStickyConsumer(secondConsumer)
+    val owners2 = waitForBalancedOwners(partitions, List("group1_consumer1-0", "group1_consumer2-0"))
+    checkKept(owners1, owners2, "group1_consumer1-0")
+
+    val consumer3 = createStickyConsumer("consumer3")
+    val owners3 = waitForBalancedOwners(partitions,
+      List("group1_consumer1-0", "group1_consumer2-0", "group1_consumer3-0"))
+    checkKept(owners2, owners3, "group1_consumer1-0")
+    checkKept(owners2, owners3, "group1_consumer2-0")
+
+    // the partitions of a leaving consumer are handed to the others, which keep their own
+    consumer2.shutdown
+    val owners4 = waitForBalancedOwners(partitions, List("group1_consumer1-0", "group1_consumer3-0"))
+    checkKept(owners3, owners4, "group1_consumer1-0")
+    checkKept(owners3, owners4, "group1_consumer3-0")
+
+    consumer1.shutdown
+    consumer3.shutdown
+  }
+
+  private def createStickyConsumer(consumerId: String): ZookeeperConsumerConnector = {
+    val props = TestUtils.createConsumerProperties(zkConnect, group, consumerId)
+    props.put("rebalance.strategy", ZookeeperConsumerConnector.StickyStrategy)
+    val connector = new ZookeeperConsumerConnector(new ConsumerConfig(props), false)
+    connector.createMessageStreams(Map(topic -> 1))
+    connector
+  }
+
+  /**
+   * Waits until every partition is owned by one of the consumer threads and each owns its share, and returns the owners
+   */
+  private def waitForBalancedOwners(partitions: Seq[String], consumerThreads: Seq[String]): Map[String, String] = {
+    val deadline = System.currentTimeMillis + 5000
+    var owners = Map(getZKChildrenValues(dirs.consumerOwnerDir): _*)
+    def balanced = {
+      val counts = consumerThreads.map(thread => owners.values.filter(_ == thread).size)
+      partitions.forall(p => owners.get(p).exists(consumerThreads.contains(_))) && counts.max - counts.min <= 1
+    }
+    while (!balanced && System.currentTimeMillis < deadline) {
+      Thread.sleep(100)
+      owners = Map(getZKChildrenValues(dirs.consumerOwnerDir): _*)
+    }
+    assertTrue("partitions not balanced over " + consumerThreads + ": " + owners, balanced)
+    owners
+  }
+
+  /**
+   * Checks that the consumer thread still owns all the partitions it had, or all but those beyond its new share
+   */
+  private def checkKept(before: Map[String, String], after: Map[String, String], consumerThread: String) {
+    val had = before.filter(_._2 == consumerThread).keySet
+    val has = after.filter(_._2 == consumerThread).keySet
+    assertEquals("partitions moved away from " + consumerThread, scala.math.min(had.size, has.size), (had & has).size)
+  }
+
   private def getZKChildrenValues(path : String) : Seq[Tuple2[String,String]] = {
     import scala.collection.JavaConversions
     val children = zookeeper.client.getChildren(path)